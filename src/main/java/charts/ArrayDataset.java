@@ -0,0 +1,215 @@
+package charts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.jfree.data.time.TimeSeries;
+import org.jfree.data.time.TimeSeriesDataItem;
+import org.jfree.data.xy.AbstractIntervalXYDataset;
+
+import covid.CalendarUtils;
+
+/**
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * -----
+ * 
+ * A dataset for the time series charts that's just arrays: x as millis, y, and
+ * a low/high interval for the DeviationRenderer.
+ * 
+ * TimeSeries and YIntervalSeries make objects for every point, keep it sorted
+ * as they go, and tell every listener about every add. None of that is needed
+ * to build a chart once and throw it away, so this just fills the arrays and
+ * doesn't notify anyone. Series have to be filled in before the chart is made
+ * from them.
+ * 
+ * Points are kept in x order, like the JFreeChart series do, but adding them
+ * in order (as nearly everything does) is just an append.
+ * 
+ * @author jdorje@gmail.com
+ */
+public class ArrayDataset extends AbstractIntervalXYDataset {
+
+	private static final long serialVersionUID = 1L;
+
+	public static class Series {
+		private final Comparable<?> key;
+		private long[] x = new long[16];
+		private double[] y = new double[16];
+		private double[] low = new double[16];
+		private double[] high = new double[16];
+		private int count = 0;
+
+		public Series(Comparable<?> key) {
+			this.key = key;
+		}
+
+		public Comparable<?> getKey() {
+			return key;
+		}
+
+		public int getItemCount() {
+			return count;
+		}
+
+		/**
+		 * Adds a point with no interval.
+		 */
+		public void add(long time, double value) {
+			add(time, value, value, value);
+		}
+
+		/**
+		 * Adds a point with an interval, same as YIntervalSeries.
+		 */
+		public void add(long time, double value, double lowValue, double highValue) {
+			if (count == x.length) {
+				int capacity = 2 * count;
+				x = Arrays.copyOf(x, capacity);
+				y = Arrays.copyOf(y, capacity);
+				low = Arrays.copyOf(low, capacity);
+				high = Arrays.copyOf(high, capacity);
+			}
+			int index = count;
+			if (count > 0 && time < x[count - 1]) {
+				// after any points with the same time
+				index = Arrays.binarySearch(x, 0, count, time);
+				if (index < 0) {
+					index = -index - 1;
+				}
+				while (index < count && x[index] == time) {
+					index++;
+				}
+				System.arraycopy(x, index, x, index + 1, count - index);
+				System.arraycopy(y, index, y, index + 1, count - index);
+				System.arraycopy(low, index, low, index + 1, count - index);
+				System.arraycopy(high, index, high, index + 1, count - index);
+			}
+			x[index] = time;
+			y[index] = value;
+			low[index] = lowValue;
+			high[index] = highValue;
+			count++;
+		}
+
+		/**
+		 * Adds a point for the day, where a TimeSeries of Days would put it
+		 * (the start of the day).
+		 */
+		public void addDay(int day, double value) {
+			add(CalendarUtils.dayToDay(day).getFirstMillisecond(), value);
+		}
+	}
+
+	private final ArrayList<Series> series = new ArrayList<>();
+
+	public Series addSeries(Comparable<?> key) {
+		Series s = new Series(key);
+		series.add(s);
+		return s;
+	}
+
+	public void addSeries(Series s) {
+		series.add(s);
+	}
+
+	/**
+	 * Copies a TimeSeries in, with each point at the start of its period like
+	 * a TimeSeriesCollection would put it.
+	 */
+	public void addSeries(TimeSeries timeSeries) {
+		Series s = addSeries(timeSeries.getKey());
+		for (int i = 0; i < timeSeries.getItemCount(); i++) {
+			TimeSeriesDataItem item = timeSeries.getDataItem(i);
+			if (item.getValue() != null) {
+				s.add(item.getPeriod().getFirstMillisecond(), item.getValue().doubleValue());
+			}
+		}
+	}
+
+	@Override
+	public int getSeriesCount() {
+		return series.size();
+	}
+
+	@Override
+	public Comparable<?> getSeriesKey(int s) {
+		return series.get(s).key;
+	}
+
+	@Override
+	public int getItemCount(int s) {
+		return series.get(s).count;
+	}
+
+	@Override
+	public double getXValue(int s, int item) {
+		return series.get(s).x[item];
+	}
+
+	@Override
+	public Number getX(int s, int item) {
+		return series.get(s).x[item];
+	}
+
+	@Override
+	public double getYValue(int s, int item) {
+		return series.get(s).y[item];
+	}
+
+	@Override
+	public Number getY(int s, int item) {
+		return series.get(s).y[item];
+	}
+
+	@Override
+	public double getStartXValue(int s, int item) {
+		return series.get(s).x[item];
+	}
+
+	@Override
+	public Number getStartX(int s, int item) {
+		return series.get(s).x[item];
+	}
+
+	@Override
+	public double getEndXValue(int s, int item) {
+		return series.get(s).x[item];
+	}
+
+	@Override
+	public Number getEndX(int s, int item) {
+		return series.get(s).x[item];
+	}
+
+	@Override
+	public double getStartYValue(int s, int item) {
+		return series.get(s).low[item];
+	}
+
+	@Override
+	public Number getStartY(int s, int item) {
+		return series.get(s).low[item];
+	}
+
+	@Override
+	public double getEndYValue(int s, int item) {
+		return series.get(s).high[item];
+	}
+
+	@Override
+	public Number getEndY(int s, int item) {
+		return series.get(s).high[item];
+	}
+}
@@ -1,15 +1,12 @@
 package charts;
 
 import java.awt.image.BufferedImage;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
 
-import org.jfree.chart.encoders.EncoderUtil;
-import org.jfree.chart.encoders.ImageFormat;
+import javax.imageio.ImageIO;
 
 /**
  * This program is free software: you can redistribute it and/or modify it under
@@ -46,20 +43,21 @@ public class Chart {
 		fileNames.add(fileName);
 	}
 
-	public void saveAsPNG() {
-		for (String fileName : fileNames) {
-			File file = new File(fileName);
-			try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
-				EncoderUtil.writeBufferedImage(image, ImageFormat.PNG, out);
-			} catch (IOException e) {
-				e.printStackTrace();
+	/**
+	 * Queues the image to be written to all its files (see ChartPipeline).
+	 * 
+	 * @return A future completed once they're written.
+	 */
+	public CompletableFuture<Void> saveAsPNG() {
+		return ChartPipeline.save(image, fileNames.toArray(new String[0])).thenRun(() -> {
+			synchronized (this) {
+				saved = true;
+				if (openQueued) {
+					open();
+					openQueued = false;
+				}
 			}
-		}
-		saved = true;
-		if (openQueued) {
-			open();
-			openQueued = false;
-		}
+		});
 	}
 
 	public String getFileName() {
@@ -69,7 +67,7 @@ public class Chart {
 		return null;
 	}
 
-	public void open() {
+	public synchronized void open() {
 		if (!saved) {
 			openQueued = true;
 			return;
@@ -85,7 +83,19 @@ public class Chart {
 		library.OpenImage.openImage(fName);
 	}
 
-	public BufferedImage getImage() {
+	/**
+	 * A chart that wasn't drawn this time because it's unchanged (see
+	 * ChartManifest) has no image until it's needed, then it's read back from
+	 * the file.
+	 */
+	public synchronized BufferedImage getImage() {
+		if (image == null) {
+			try {
+				image = ImageIO.read(new File(getFileName()));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
 		return image;
 	}
 }
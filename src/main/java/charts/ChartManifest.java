@@ -0,0 +1,239 @@
+package charts;
+
+import java.awt.Paint;
+import java.awt.Stroke;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.plot.IntervalMarker;
+import org.jfree.chart.plot.Marker;
+import org.jfree.chart.plot.Plot;
+import org.jfree.chart.plot.ValueMarker;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.xy.XYItemRenderer;
+import org.jfree.chart.title.TextTitle;
+import org.jfree.chart.ui.Layer;
+import org.jfree.data.xy.IntervalXYDataset;
+import org.jfree.data.xy.XYDataset;
+
+import library.Fingerprint;
+
+/**
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * -----
+ * 
+ * Remembers what every chart image was drawn from, so a chart whose inputs
+ * haven't changed since the last run doesn't have to be drawn and saved again.
+ * 
+ * The fingerprint is a hash of everything that goes into the picture: the
+ * title, the axes and their ranges, the markers, the series colors and
+ * strokes, and every value in every dataset. Building the JFreeChart is cheap;
+ * it's drawing and encoding it that isn't.
+ * 
+ * The manifest is saved next to the chart folders. If the drawing code changes
+ * in a way the fingerprint can't see (fonts, sizes), bump VERSION.
+ * 
+ * @author jdorje@gmail.com
+ */
+public class ChartManifest {
+
+	private static final int VERSION = 1;
+
+	private static final String MANIFEST_FILE = Charts.TOP_FOLDER + "\\charts.manifest";
+
+	private static final Map<String, Long> fingerprints = new ConcurrentHashMap<>();
+	private static boolean loaded = false, changed = false;
+
+	private static long mixMarkers(long hash, Collection<?> markers) {
+		if (markers == null) {
+			return Fingerprint.mix(hash, 0);
+		}
+		for (Object o : markers) {
+			Marker marker = (Marker) o;
+			hash = Fingerprint.mix(hash, marker.getClass().getName());
+			hash = Fingerprint.mix(hash, marker.getLabel());
+			hash = Fingerprint.mix(hash, marker.getPaint());
+			if (marker instanceof ValueMarker) {
+				hash = Fingerprint.mix(hash, ((ValueMarker) marker).getValue());
+			} else if (marker instanceof IntervalMarker) {
+				hash = Fingerprint.mix(hash, ((IntervalMarker) marker).getStartValue());
+				hash = Fingerprint.mix(hash, ((IntervalMarker) marker).getEndValue());
+			}
+		}
+		return hash;
+	}
+
+	private static long mixAxis(long hash, ValueAxis axis) {
+		if (axis == null) {
+			return Fingerprint.mix(hash, 0);
+		}
+		hash = Fingerprint.mix(hash, axis.getClass().getName());
+		hash = Fingerprint.mix(hash, axis.getLabel());
+		hash = Fingerprint.mix(hash, axis.getLowerBound());
+		return Fingerprint.mix(hash, axis.getUpperBound());
+	}
+
+	private static long mixDataset(long hash, XYDataset dataset) {
+		if (dataset == null) {
+			return Fingerprint.mix(hash, 0);
+		}
+		boolean interval = dataset instanceof IntervalXYDataset;
+		for (int s = 0; s < dataset.getSeriesCount(); s++) {
+			hash = Fingerprint.mix(hash, dataset.getSeriesKey(s));
+			int count = dataset.getItemCount(s);
+			hash = Fingerprint.mix(hash, count);
+			for (int i = 0; i < count; i++) {
+				hash = Fingerprint.mix(hash, dataset.getXValue(s, i));
+				hash = Fingerprint.mix(hash, dataset.getYValue(s, i));
+				if (interval) {
+					hash = Fingerprint.mix(hash, ((IntervalXYDataset) dataset).getStartYValue(s, i));
+					hash = Fingerprint.mix(hash, ((IntervalXYDataset) dataset).getEndYValue(s, i));
+				}
+			}
+		}
+		return hash;
+	}
+
+	private static long mixRenderer(long hash, XYItemRenderer renderer, int seriesCount) {
+		if (renderer == null) {
+			return Fingerprint.mix(hash, 0);
+		}
+		hash = Fingerprint.mix(hash, renderer.getClass().getName());
+		for (int s = 0; s < seriesCount; s++) {
+			Paint paint = renderer.getSeriesPaint(s);
+			Stroke stroke = renderer.getSeriesStroke(s);
+			hash = Fingerprint.mix(hash, paint);
+			hash = Fingerprint.mix(hash, stroke);
+		}
+		return hash;
+	}
+
+	/**
+	 * @return A hash of everything that goes into drawing the chart.
+	 */
+	public static long fingerprint(JFreeChart chart, int width, int height) {
+		long hash = Fingerprint.mix(Fingerprint.START, VERSION);
+		hash = Fingerprint.mix(hash, width);
+		hash = Fingerprint.mix(hash, height);
+		TextTitle title = chart.getTitle();
+		hash = Fingerprint.mix(hash, title == null ? null : title.getText());
+		hash = Fingerprint.mix(hash, chart.getSubtitleCount());
+
+		Plot plot = chart.getPlot();
+		hash = Fingerprint.mix(hash, plot.getClass().getName());
+		if (plot instanceof XYPlot) {
+			XYPlot xyPlot = (XYPlot) plot;
+			hash = mixAxis(hash, xyPlot.getDomainAxis());
+			hash = mixAxis(hash, xyPlot.getRangeAxis());
+			hash = mixMarkers(hash, xyPlot.getDomainMarkers(Layer.FOREGROUND));
+			hash = mixMarkers(hash, xyPlot.getDomainMarkers(Layer.BACKGROUND));
+			hash = mixMarkers(hash, xyPlot.getRangeMarkers(Layer.FOREGROUND));
+			hash = mixMarkers(hash, xyPlot.getRangeMarkers(Layer.BACKGROUND));
+			for (int d = 0; d < xyPlot.getDatasetCount(); d++) {
+				XYDataset dataset = xyPlot.getDataset(d);
+				hash = mixDataset(hash, dataset);
+				hash = mixRenderer(hash, xyPlot.getRenderer(d), dataset == null ? 0 : dataset.getSeriesCount());
+			}
+		} else {
+			// nothing else is fingerprinted, so never match
+			hash = Fingerprint.mix(hash, System.nanoTime());
+		}
+		return hash;
+	}
+
+	private static synchronized void load() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		File file = new File(MANIFEST_FILE);
+		if (!file.exists()) {
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != VERSION) {
+				return;
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String fileName = in.readUTF();
+				fingerprints.put(fileName, in.readLong());
+			}
+		} catch (IOException e) {
+			System.out.println("Failed to read chart manifest; all charts will be rebuilt.");
+			fingerprints.clear();
+		}
+	}
+
+	/**
+	 * @return true if the file exists and was last saved from a chart with
+	 *         this same fingerprint.
+	 */
+	public static boolean isUnchanged(String fileName, long fingerprint) {
+		load();
+		Long previous = fingerprints.get(fileName);
+		return previous != null && previous == fingerprint && new File(fileName).exists();
+	}
+
+	/**
+	 * Records that the file was just saved from a chart with this
+	 * fingerprint.
+	 */
+	public static void update(String fileName, long fingerprint) {
+		load();
+		Long previous = fingerprints.put(fileName, fingerprint);
+		if (previous == null || previous != fingerprint) {
+			synchronized (ChartManifest.class) {
+				changed = true;
+			}
+		}
+	}
+
+	/**
+	 * Saves the manifest, if anything changed. Call this when all charts are
+	 * done.
+	 */
+	public static synchronized void save() {
+		if (!changed) {
+			return;
+		}
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(MANIFEST_FILE)))) {
+			Map<String, Long> copy = new HashMap<>(fingerprints);
+			out.writeInt(VERSION);
+			out.writeInt(copy.size());
+			for (Map.Entry<String, Long> entry : copy.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeLong(entry.getValue());
+			}
+			changed = false;
+		} catch (IOException e) {
+			e.printStackTrace();
+			new File(MANIFEST_FILE).delete();
+		}
+	}
+}
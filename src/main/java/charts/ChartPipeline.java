@@ -0,0 +1,290 @@
+package charts;
+
+import java.awt.image.BufferedImage;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jfree.chart.JFreeChart;
+
+/**
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * -----
+ * 
+ * Getting a chart onto disk is three steps: render it to a BufferedImage,
+ * encode that as a PNG, and write the PNG out. They used to all happen one
+ * after the other on a code pool thread, which left that thread (and a core)
+ * sitting idle while the file was written.
+ * 
+ * Now rendering still happens on whatever code thread built the chart, but
+ * the image is then handed to its own encoder threads, and the PNG bytes on to
+ * writer threads. The queues between them are small, so if encoding falls
+ * behind, renderers wait to hand off their image instead of piling up more
+ * of them. That keeps the images in flight bounded by the queue sizes plus one
+ * per thread.
+ * 
+ * Each chart is encoded once no matter how many files it's saved to, by
+ * PngEncoder.
+ * 
+ * Nothing here waits for the writes; call flush() when everything is done,
+ * or wait on the future from save() if a file is needed right away.
+ * 
+ * @author jdorje@gmail.com
+ */
+public class ChartPipeline {
+
+	private static final int processors = Runtime.getRuntime().availableProcessors();
+	private static final int ENCODERS = Math.max(processors / 2, 1);
+	private static final int WRITERS = 4;
+
+	/*
+	 * About the same size as ImageIO made them, in a fraction of the time.
+	 * PngEncoder.DEFAULT is ~10% smaller and SMALL ~20%, but much slower.
+	 */
+	private static final int PNG_LEVEL = PngEncoder.FAST;
+
+	private static class Stage {
+		final String name;
+		final AtomicLong items = new AtomicLong();
+		final AtomicLong busyNanos = new AtomicLong();
+		final AtomicLong stalledNanos = new AtomicLong();
+		final AtomicLong bytes = new AtomicLong();
+
+		Stage(String name) {
+			this.name = name;
+		}
+
+		void done(long startNanos, long size) {
+			busyNanos.addAndGet(System.nanoTime() - startNanos);
+			bytes.addAndGet(size);
+			items.incrementAndGet();
+		}
+
+		/*
+		 * Busy time is summed over all threads in the stage; stalled is time
+		 * spent waiting for room in the next stage's queue.
+		 */
+		void report(double seconds) {
+			long n = items.get();
+			double busy = busyNanos.get() / 1e9;
+			System.out.println(name + ": " + n + " charts, " + Math.round(n / seconds) + "/s, "
+					+ Math.round(busy * 10) / 10.0 + "s busy ("
+					+ (n == 0 ? 0 : Math.round(busy * 1000 / n)) + " ms each), "
+					+ Math.round(stalledNanos.get() / 1e8) / 10.0 + "s stalled"
+					+ (bytes.get() == 0 ? "" : ", " + bytes.get() / (1024 * 1024) + " MB"));
+		}
+	}
+
+	private static class Job {
+		BufferedImage image;
+		byte[] png;
+		final String[] fileNames;
+		final CompletableFuture<Void> done = new CompletableFuture<>();
+
+		Job(BufferedImage image, String[] fileNames) {
+			this.image = image;
+			this.fileNames = fileNames;
+		}
+	}
+
+	private static final Stage render = new Stage("Render"), encode = new Stage("Encode"),
+			write = new Stage("Write");
+
+	private static final BlockingQueue<Job> toEncode = new ArrayBlockingQueue<>(ENCODERS);
+	private static final BlockingQueue<Job> toWrite = new ArrayBlockingQueue<>(2 * WRITERS);
+
+	private static final Object lock = new Object();
+	private static int pending = 0;
+	private static long firstNanos = 0;
+
+	static {
+		for (int i = 0; i < ENCODERS; i++) {
+			startThread("Chart encoder " + i, ChartPipeline::encodeLoop);
+		}
+		for (int i = 0; i < WRITERS; i++) {
+			startThread("Chart writer " + i, ChartPipeline::writeLoop);
+		}
+	}
+
+	private static void startThread(String name, Runnable loop) {
+		// daemons, so they never hold up exit; flush() is what waits for them
+		Thread thread = new Thread(loop, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private static void put(BlockingQueue<Job> queue, Job job, Stage stage) throws InterruptedException {
+		if (!queue.offer(job)) {
+			long start = System.nanoTime();
+			queue.put(job);
+			stage.stalledNanos.addAndGet(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Every job taken off a queue has to be either handed on or finished,
+	 * whatever gets thrown - even an Error - or pending never gets back to 0
+	 * and flush() waits forever.
+	 */
+	private static void finish(Job job, Throwable e) {
+		if (e == null) {
+			job.done.complete(null);
+		} else {
+			job.done.completeExceptionally(e);
+		}
+		synchronized (lock) {
+			pending--;
+			lock.notifyAll();
+		}
+	}
+
+	private static void encodeLoop() {
+		while (true) {
+			Job job;
+			try {
+				job = toEncode.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			long start = System.nanoTime();
+			Throwable failure = null;
+			boolean queued = false;
+			try {
+				job.png = PngEncoder.encode(job.image, PNG_LEVEL);
+				job.image = null;
+				encode.done(start, 0);
+				put(toWrite, job, encode);
+				queued = true;
+			} catch (InterruptedException e) {
+				failure = e;
+				return;
+			} catch (Throwable e) {
+				e.printStackTrace();
+				System.out.println("Fail on encoding '" + job.fileNames[0] + "'.");
+				failure = e;
+			} finally {
+				if (!queued) {
+					finish(job, failure);
+				}
+			}
+		}
+	}
+
+	private static void writeLoop() {
+		while (true) {
+			Job job;
+			try {
+				job = toWrite.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			long start = System.nanoTime();
+			Throwable failure = null;
+			try {
+				for (String fileName : job.fileNames) {
+					try (OutputStream out = new FileOutputStream(fileName)) {
+						out.write(job.png);
+					} catch (IOException e) {
+						e.printStackTrace();
+						System.out.println("Fail on file '" + fileName + "'.");
+						failure = e;
+					}
+				}
+				write.done(start, (long) job.png.length * job.fileNames.length);
+			} catch (Throwable e) {
+				e.printStackTrace();
+				System.out.println("Fail on writing '" + job.fileNames[0] + "'.");
+				failure = e;
+			} finally {
+				finish(job, failure);
+			}
+		}
+	}
+
+	/**
+	 * Renders the chart. This is the same as chart.createBufferedImage, but
+	 * it's counted for report().
+	 */
+	public static BufferedImage render(JFreeChart chart, int width, int height) {
+		synchronized (lock) {
+			if (firstNanos == 0) {
+				firstNanos = System.nanoTime();
+			}
+		}
+		long start = System.nanoTime();
+		BufferedImage image = chart.createBufferedImage(width, height);
+		render.done(start, 0);
+		return image;
+	}
+
+	/**
+	 * Queues the image to be saved as a PNG to each of the files. This waits
+	 * if the encoders are behind.
+	 * 
+	 * @return A future completed once all the files are written, or
+	 *         exceptionally if any of them couldn't be.
+	 */
+	public static CompletableFuture<Void> save(BufferedImage image, String... fileNames) {
+		Job job = new Job(image, fileNames);
+		synchronized (lock) {
+			pending++;
+			if (firstNanos == 0) {
+				firstNanos = System.nanoTime();
+			}
+		}
+		try {
+			put(toEncode, job, render);
+		} catch (InterruptedException e) {
+			finish(job, e);
+			throw new RuntimeException(e);
+		}
+		return job.done;
+	}
+
+	/**
+	 * Waits until every chart that's been saved is written.
+	 */
+	public static void flush() {
+		synchronized (lock) {
+			while (pending > 0) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Prints how much each stage did since the first chart.
+	 */
+	public static void report() {
+		double seconds;
+		synchronized (lock) {
+			if (firstNanos == 0) {
+				return;
+			}
+			seconds = Math.max((System.nanoTime() - firstNanos) / 1e9, 1e-3);
+		}
+		render.report(seconds);
+		encode.report(seconds);
+		write.report(seconds);
+	}
+}
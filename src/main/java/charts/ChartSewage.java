@@ -8,6 +8,7 @@ import java.io.File;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.JFreeChart;
@@ -25,10 +26,9 @@ import org.jfree.chart.renderer.xy.DeviationRenderer;
 import org.jfree.chart.ui.TextAnchor;
 import org.jfree.data.category.DefaultCategoryDataset;
 import org.jfree.data.time.TimeSeries;
-import org.jfree.data.time.TimeSeriesCollection;
 
 import covid.CalendarUtils;
-import library.ASync;
+import library.TaskGroup;
 import myjfreechart.LogitAxis;
 import sewage.Abstract;
 import sewage.All;
@@ -83,14 +83,19 @@ public class ChartSewage {
 		new File(COUNTIES_FOLDER + "\\" + state).mkdir();
 	}
 
-	public static BufferedImage buildSewageTimeseriesChart(Abstract sewage, Integer maxChildren, boolean latest,
-			boolean yearlyAverage) {
+	/**
+	 * @return A future completed once the chart is written, or right away if
+	 *         there's nothing to chart or the chart hasn't changed since it was
+	 *         last saved.
+	 */
+	public static CompletableFuture<Void> buildSewageTimeseriesChart(Abstract sewage, Integer maxChildren,
+			boolean latest, boolean yearlyAverage) {
 
 		if (sewage.getTotalSewage() <= 0) {
-			return null;
+			return CompletableFuture.completedFuture(null);
 		}
 
-		TimeSeriesCollection collection = new TimeSeriesCollection();
+		ArrayDataset collection = new ArrayDataset();
 
 		DeviationRenderer renderer = new DeviationRenderer(true, false);
 		int seriesCount = 0;
@@ -102,7 +107,7 @@ public class ChartSewage {
 		seriesCount++;
 
 		if (!yearlyAverage) {
-			TimeSeries series2 = sewage.makeFitSeries(28);
+			ArrayDataset.Series series2 = sewage.makeFitSeries(28);
 			if (series2 != null) {
 				collection.addSeries(series2);
 				renderer.setSeriesStroke(seriesCount,
@@ -152,29 +157,41 @@ public class ChartSewage {
 		if (latest) {
 			ValueAxis xaxis = plot.getDomainAxis();
 
-			long earliest = System.currentTimeMillis() - 180l * 24 * 60 * 60 * 1000;
+			/*
+			 * Whole days, so that the chart doesn't change (and need drawing
+			 * again) every time it's built.
+			 */
+			long now = CalendarUtils.dayToTime(CalendarUtils.timeToDay(System.currentTimeMillis()));
+			long earliest = now - 180l * 24 * 60 * 60 * 1000;
 			Long last = sewage.getLastInflection();
 			if (last != null) {
 				earliest = Math.min(earliest, last);
 			}
 			xaxis.setLowerBound(earliest);
-			xaxis.setUpperBound(System.currentTimeMillis());
+			xaxis.setUpperBound(now);
 		}
 
-		BufferedImage image = chart.createBufferedImage(Charts.WIDTH, Charts.HEIGHT);
-		Charts.saveBufferedImageAsPNG(SEWAGE_FOLDER, fileName, image);
+		CompletableFuture<Void> saved = CompletableFuture.completedFuture(null);
+		String pngName = Charts.pngFileName(SEWAGE_FOLDER, fileName);
+		long fingerprint = ChartManifest.fingerprint(chart, Charts.WIDTH, Charts.HEIGHT);
+		if (!ChartManifest.isUnchanged(pngName, fingerprint)) {
+			BufferedImage image = ChartPipeline.render(chart, Charts.WIDTH, Charts.HEIGHT);
+			saved = Charts.saveBufferedImageAsPNG(SEWAGE_FOLDER, fileName, image)
+					.thenRun(() -> ChartManifest.update(pngName, fingerprint));
+		}
 
 		fileName = SEWAGE_FOLDER + "\\" + fileName + ".png";
 
 		if (sewage instanceof sewage.All || sewage instanceof sewage.Geo
 				|| sewage.getName().equalsIgnoreCase("Colorado")) {
+			saved.join();
 			library.OpenImage.openImage(fileName);
 			library.OpenImage.open();
 		}
 
 		// System.out.println("Created : " + sewage.id + " for " +
 		// series.getItemCount() + " => " + fileName);
-		return image;
+		return saved;
 	}
 
 	public static BufferedImage buildAbsolute(VocSewage vocSewage, Variant targetVariant, boolean fit, boolean legend,
@@ -185,7 +202,7 @@ public class ChartSewage {
 		if (vocSewage.sewage.getTotalSewage() <= 0) {
 			return null;
 		}
-		TimeSeriesCollection collection = new TimeSeriesCollection();
+		ArrayDataset collection = new ArrayDataset();
 
 		DeviationRenderer renderer = new DeviationRenderer(true, false);
 		int seriesCount = 0;
@@ -201,8 +218,7 @@ public class ChartSewage {
 			}
 		}
 
-		series = vocSewage.sewage.makeTimeSeries("Actual sewage", false);
-		collection.addSeries(series);
+		collection.addSeries(vocSewage.sewage.makeTimeSeries("Actual sewage", false));
 		renderer.setSeriesStroke(seriesCount, new BasicStroke(4.0f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
 		seriesCount++;
 
@@ -319,9 +335,10 @@ public class ChartSewage {
 		marker.setLabelTextAnchor(TextAnchor.TOP_CENTER);
 		plot.addDomainMarker(marker);
 
-		BufferedImage image = chart.createBufferedImage(Charts.WIDTH, Charts.HEIGHT * 3 / 2);
+		BufferedImage image = ChartPipeline.render(chart, Charts.WIDTH, Charts.HEIGHT * 3 / 2);
+		CompletableFuture<Void> saved = null;
 		try {
-			Charts.saveBufferedImageAsPNG(folder, fileName, image);
+			saved = Charts.saveBufferedImageAsPNG(folder, fileName, image);
 		} catch (Exception e) {
 			e.printStackTrace();
 			System.exit(1);
@@ -330,6 +347,7 @@ public class ChartSewage {
 		fileName = folder + "\\" + fileName + ".png";
 
 		if (!vocSewage.isMerger && targetVariant == null && legend && fit) {
+			saved.join();
 			library.OpenImage.openImage(fileName);
 			library.OpenImage.open();
 		}
@@ -350,7 +368,7 @@ public class ChartSewage {
 		if (vocSewage.getNumVariants() <= 1) {
 			return null;
 		}
-		TimeSeriesCollection collection = new TimeSeriesCollection();
+		ArrayDataset collection = new ArrayDataset();
 
 		DeviationRenderer renderer = new DeviationRenderer(true, false);
 		int seriesCount = 0;
@@ -470,12 +488,13 @@ public class ChartSewage {
 			xAxis.setUpperBound(CalendarUtils.dayToTime(vocSewage.getLastDay()));
 		}
 
-		BufferedImage image = chart.createBufferedImage(Charts.WIDTH, Charts.HEIGHT * 3 / 2);
-		Charts.saveBufferedImageAsPNG(SEWAGE_FOLDER, fileName, image);
+		BufferedImage image = ChartPipeline.render(chart, Charts.WIDTH, Charts.HEIGHT * 3 / 2);
+		CompletableFuture<Void> saved = Charts.saveBufferedImageAsPNG(SEWAGE_FOLDER, fileName, image);
 
 		fileName = SEWAGE_FOLDER + "\\" + fileName + ".png";
 
 		if (!vocSewage.isMerger && legend && fit) {
+			saved.join();
 			library.OpenImage.openImage(fileName);
 			library.OpenImage.open();
 		}
@@ -547,16 +566,17 @@ public class ChartSewage {
 					new ItemLabelPosition(ItemLabelAnchor.CENTER, TextAnchor.CENTER, TextAnchor.CENTER, -0 / 2));
 		}
 
-		BufferedImage image = chart.createBufferedImage(Charts.WIDTH, Charts.HEIGHT * 3 / 2);
+		BufferedImage image = ChartPipeline.render(chart, Charts.WIDTH, Charts.HEIGHT * 3 / 2);
 
 		String fileName = vocSewage.sewage.getChartFilename() + "-" + vocSewage.vocId + "-cumulative"
 				+ (vocSewage.isMerger ? "-merger" : "");
 		fileName += strains ? "-strain" : "-variant";
 		// fileName += vocSewage.voc.exclusions ? "-exc" : "-nxc";
-		Charts.saveBufferedImageAsPNG(SEWAGE_FOLDER, fileName, image);
+		CompletableFuture<Void> saved = Charts.saveBufferedImageAsPNG(SEWAGE_FOLDER, fileName, image);
 		fileName = SEWAGE_FOLDER + "\\" + fileName + ".png";
 
 		if (!vocSewage.isMerger) {
+			saved.join();
 			library.OpenImage.openImage(fileName);
 			library.OpenImage.open();
 		}
@@ -564,14 +584,17 @@ public class ChartSewage {
 		return image;
 	}
 
-	public static void createSewage(Abstract sewage, Integer maxChildren) {
+	/**
+	 * @return A future completed once all the charts are written.
+	 */
+	public static CompletableFuture<Void> createSewage(Abstract sewage, Integer maxChildren) {
 		// buildSewageTimeseriesChart(sewage, false);
-		buildSewageTimeseriesChart(sewage, maxChildren, true, false);
-		buildSewageTimeseriesChart(sewage, maxChildren, false, false);
-		buildSewageTimeseriesChart(sewage, maxChildren, false, true);
+		return CompletableFuture.allOf(buildSewageTimeseriesChart(sewage, maxChildren, true, false),
+				buildSewageTimeseriesChart(sewage, maxChildren, false, false),
+				buildSewageTimeseriesChart(sewage, maxChildren, false, true));
 	}
 
-	public static void buildVocSewageCharts(VocSewage vocSewage, ASync<Chart> build) {
+	public static void buildVocSewageCharts(VocSewage vocSewage, TaskGroup<Void> build) {
 		long time = System.currentTimeMillis();
 		build.execute(() -> ChartSewage.buildAbsolute(vocSewage, null, true, true, true));
 		build.execute(() -> ChartSewage.buildAbsolute(vocSewage, null, false, true, true));
@@ -4,20 +4,13 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.image.BufferedImage;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
 
-import org.jfree.chart.encoders.EncoderUtil;
-import org.jfree.chart.encoders.ImageFormat;
 import org.jfree.chart.plot.IntervalMarker;
 import org.jfree.chart.plot.ValueMarker;
 import org.jfree.chart.ui.TextAnchor;
 
-import com.madgag.gif.fmsware.AnimatedGifEncoder;
-
 import covid.CalendarUtils;
 import covid.DailyTracker;
 
@@ -56,19 +49,24 @@ public class Charts {
 		return marker;
 	}
 
-	public static void saveBufferedImageAsPNG(String folder, String name, BufferedImage bufferedImage) {
-
-		new File(folder).mkdir();
+	/**
+	 * @return The file saveBufferedImageAsPNG saves to.
+	 */
+	public static String pngFileName(String folder, String name) {
 		name = name.replaceAll(":", "");
 		name = name.replaceAll("\\|", "or");
-		File file = new File(folder + "\\" + name + ".png");
+		return folder + "\\" + name + ".png";
+	}
 
-		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
-			EncoderUtil.writeBufferedImage(bufferedImage, ImageFormat.PNG, out);
-		} catch (IOException e) {
-			e.printStackTrace();
-			System.out.println("Fail on file '" + name + "'.");
-		}
+	/**
+	 * Queues the image to be saved (see ChartPipeline).
+	 * 
+	 * @return A future completed once the file is written.
+	 */
+	public static CompletableFuture<Void> saveBufferedImageAsPNG(String folder, String name,
+			BufferedImage bufferedImage) {
+		new File(folder).mkdir();
+		return ChartPipeline.save(bufferedImage, pngFileName(folder, name));
 	}
 
 	public static IntervalMarker getIncompleteMarker(int incompleteDay) {
@@ -99,13 +97,16 @@ public class Charts {
 		return true;
 	}
 
-	public static void setDelay(DailyTracker stats, int dayOfData, AnimatedGifEncoder gif) {
+	/**
+	 * @return The GIF frame delay (ms) for the day: the last day lingers.
+	 */
+	public static int getDelay(DailyTracker stats, int dayOfData) {
 		if (dayOfData == stats.getLastDay()) {
-			gif.setDelay(1000);
+			return 1000;
 		} else if (dayOfData + 10 >= stats.getLastDay()) {
-			gif.setDelay(200);
+			return 200;
 		} else {
-			gif.setDelay(50);
+			return 50;
 		}
 	}
 
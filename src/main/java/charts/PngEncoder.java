@@ -0,0 +1,423 @@
+package charts;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * -----
+ * 
+ * A PNG encoder for the charts, instead of going through ImageIO.
+ * 
+ * The image is cut into strips of rows that are filtered and deflated in
+ * parallel, then stitched into one zlib stream: each strip but the last ends
+ * with a sync flush so the pieces can just be concatenated, and each strip
+ * starts with the end of the previous one as its dictionary, so cutting it up
+ * costs almost nothing in size. The Deflater and row buffers are kept per
+ * thread and reused, since every chart is the same size anyway.
+ * 
+ * Charts are opaque, so they're written as 8-bit RGB unless some pixel
+ * actually has alpha.
+ * 
+ * @author jdorje@gmail.com
+ */
+public class PngEncoder {
+
+	/** Deflate levels: fastest, a good trade-off, and smallest. */
+	public static final int FAST = 1, DEFAULT = 4, SMALL = 9;
+
+	private static final int STRIP_ROWS = 64;
+	private static final int DICTIONARY = 32 * 1024;
+
+	private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+
+	private static final byte NONE = 0, SUB = 1, UP = 2, PAETH = 4;
+
+	private static class Buffers {
+		// one per level, since changing the level of a Deflater mid-stream flushes it
+		final Deflater[] deflaters = new Deflater[Deflater.BEST_COMPRESSION + 1];
+		final Adler32 adler = new Adler32();
+		int[] pixels = new int[0];
+		byte[] previous = new byte[0], current = new byte[0], filter = new byte[0];
+		byte[] filtered = new byte[0];
+		byte[] out = new byte[0];
+
+		void fit(int width, int bytesPerRow, int rows) {
+			if (pixels.length < width) {
+				pixels = new int[width];
+			}
+			if (previous.length < bytesPerRow) {
+				previous = new byte[bytesPerRow];
+				current = new byte[bytesPerRow];
+				filter = new byte[bytesPerRow];
+			}
+			int size = rows * (bytesPerRow + 1);
+			if (filtered.length < size) {
+				filtered = new byte[size];
+				out = new byte[size + size / 8 + 1024];
+			}
+		}
+	}
+
+	private static final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+	private static class Strip {
+		byte[] data;
+		long adler;
+		int length;
+	}
+
+	private final BufferedImage image;
+	private final int width, height, level;
+	private final boolean alpha;
+	private final int bytesPerPixel, bytesPerRow;
+	private final int[] argb; // null if the pixels have to be read with getRGB
+
+	private PngEncoder(BufferedImage image, int level) {
+		this.image = image;
+		this.level = level;
+		width = image.getWidth();
+		height = image.getHeight();
+		argb = directPixels(image);
+		alpha = hasAlpha();
+		bytesPerPixel = alpha ? 4 : 3;
+		bytesPerRow = width * bytesPerPixel;
+	}
+
+	/*
+	 * The pixels straight out of an INT_RGB/INT_ARGB image (which is what
+	 * JFreeChart draws into), so rows don't have to be copied out.
+	 */
+	private static int[] directPixels(BufferedImage image) {
+		if (image.getType() != BufferedImage.TYPE_INT_ARGB && image.getType() != BufferedImage.TYPE_INT_RGB) {
+			return null;
+		}
+		if (!(image.getRaster().getDataBuffer() instanceof DataBufferInt)
+				|| !(image.getSampleModel() instanceof SinglePixelPackedSampleModel)
+				|| !(image.getColorModel() instanceof DirectColorModel)
+				|| ((SinglePixelPackedSampleModel) image.getSampleModel()).getScanlineStride() != image.getWidth()
+				|| image.getRaster().getSampleModelTranslateX() != 0
+				|| image.getRaster().getSampleModelTranslateY() != 0) {
+			return null;
+		}
+		return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	}
+
+	private boolean hasAlpha() {
+		if (!image.getColorModel().hasAlpha()) {
+			return false;
+		}
+		if (argb == null) {
+			int[] row = new int[width];
+			for (int y = 0; y < height; y++) {
+				image.getRGB(0, y, width, 1, row, 0, width);
+				for (int x = 0; x < width; x++) {
+					if ((row[x] >>> 24) != 0xff) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+		for (int i = 0; i < width * height; i++) {
+			if ((argb[i] >>> 24) != 0xff) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void readRow(Buffers b, int y, byte[] row) {
+		int[] pixels;
+		int offset;
+		if (argb != null) {
+			pixels = argb;
+			offset = y * width;
+		} else {
+			pixels = b.pixels;
+			offset = 0;
+			image.getRGB(0, y, width, 1, pixels, 0, width);
+		}
+		int i = 0;
+		for (int x = 0; x < width; x++) {
+			int p = pixels[offset + x];
+			row[i++] = (byte) (p >> 16);
+			row[i++] = (byte) (p >> 8);
+			row[i++] = (byte) p;
+			if (alpha) {
+				row[i++] = (byte) (p >>> 24);
+			}
+		}
+	}
+
+	private static int paeth(int a, int b, int c) {
+		int p = a + b - c;
+		int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+		if (pa <= pb && pa <= pc) {
+			return a;
+		}
+		return pb <= pc ? b : c;
+	}
+
+	private static int cost(byte[] filter, int length) {
+		int sum = 0;
+		for (int i = 0; i < length; i++) {
+			sum += Math.abs(filter[i]);
+		}
+		return sum;
+	}
+
+	/*
+	 * Filters one row into out at the offset, choosing whichever filter gives
+	 * the smallest sum of absolute values (the usual heuristic). Returns the
+	 * new offset.
+	 */
+	private int filterRow(Buffers b, byte[] row, byte[] prev, boolean first, byte[] out, int offset) {
+		int bpp = bytesPerPixel, n = bytesPerRow;
+		byte[] f = b.filter;
+
+		byte best = NONE;
+		int bestCost = cost(row, n);
+
+		for (int i = 0; i < n; i++) {
+			f[i] = (byte) (row[i] - (i < bpp ? 0 : row[i - bpp]));
+		}
+		int c = cost(f, n);
+		if (c < bestCost) {
+			best = SUB;
+			bestCost = c;
+		}
+		if (!first) {
+			for (int i = 0; i < n; i++) {
+				f[i] = (byte) (row[i] - prev[i]);
+			}
+			c = cost(f, n);
+			if (c < bestCost) {
+				best = UP;
+				bestCost = c;
+			}
+			if (level > FAST) {
+				for (int i = 0; i < n; i++) {
+					int a = i < bpp ? 0 : row[i - bpp] & 0xff;
+					int cc = i < bpp ? 0 : prev[i - bpp] & 0xff;
+					f[i] = (byte) (row[i] - paeth(a, prev[i] & 0xff, cc));
+				}
+				c = cost(f, n);
+				if (c < bestCost) {
+					best = PAETH;
+					bestCost = c;
+				}
+			}
+		}
+
+		out[offset++] = best;
+		switch (best) {
+		case NONE:
+			System.arraycopy(row, 0, out, offset, n);
+			break;
+		case SUB:
+			for (int i = 0; i < n; i++) {
+				out[offset + i] = (byte) (row[i] - (i < bpp ? 0 : row[i - bpp]));
+			}
+			break;
+		case UP:
+			for (int i = 0; i < n; i++) {
+				out[offset + i] = (byte) (row[i] - prev[i]);
+			}
+			break;
+		default:
+			System.arraycopy(f, 0, out, offset, n);
+			break;
+		}
+		return offset + n;
+	}
+
+	private Strip deflateStrip(int firstRow, int lastRow, boolean last) {
+		Buffers b = buffers.get();
+
+		// filter enough rows before the strip to fill the dictionary
+		int dictionaryRows = (DICTIONARY + bytesPerRow) / (bytesPerRow + 1);
+		int startRow = Math.max(0, firstRow - dictionaryRows);
+		b.fit(width, bytesPerRow, lastRow - startRow);
+
+		byte[] prev = b.previous, row = b.current;
+		if (startRow > 0) {
+			readRow(b, startRow - 1, prev);
+		}
+		int offset = 0, stripOffset = 0;
+		for (int y = startRow; y < lastRow; y++) {
+			if (y == firstRow) {
+				stripOffset = offset;
+			}
+			readRow(b, y, row);
+			offset = filterRow(b, row, prev, y == 0, b.filtered, offset);
+			byte[] swap = prev;
+			prev = row;
+			row = swap;
+		}
+
+		Deflater deflater = b.deflaters[level];
+		if (deflater == null) {
+			deflater = b.deflaters[level] = new Deflater(level, true);
+		}
+		deflater.reset();
+		if (stripOffset > 0) {
+			int dictionary = Math.min(DICTIONARY, stripOffset);
+			deflater.setDictionary(b.filtered, stripOffset - dictionary, dictionary);
+		}
+		int length = offset - stripOffset;
+		deflater.setInput(b.filtered, stripOffset, length);
+		if (last) {
+			deflater.finish();
+		}
+		int written = 0;
+		while (true) {
+			written += deflater.deflate(b.out, written, b.out.length - written,
+					last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+			// a flush is done once it's taken all the input and didn't fill the buffer
+			if (last ? deflater.finished() : deflater.needsInput() && written < b.out.length) {
+				break;
+			}
+			if (written == b.out.length) {
+				b.out = Arrays.copyOf(b.out, 2 * b.out.length);
+			}
+		}
+
+		b.adler.reset();
+		b.adler.update(b.filtered, stripOffset, length);
+
+		Strip strip = new Strip();
+		strip.data = Arrays.copyOf(b.out, written);
+		strip.adler = b.adler.getValue();
+		strip.length = length;
+		return strip;
+	}
+
+	/*
+	 * zlib's adler32_combine: the checksum of two pieces of data from the
+	 * checksums of each.
+	 */
+	private static long combineAdler(long adler1, long adler2, long length2) {
+		final long BASE = 65521;
+		long rem = length2 % BASE;
+		long sum1 = adler1 & 0xffff;
+		long sum2 = (rem * sum1) % BASE;
+		sum1 += (adler2 & 0xffff) + BASE - 1;
+		sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + BASE - rem;
+		if (sum1 >= BASE) {
+			sum1 -= BASE;
+		}
+		if (sum1 >= BASE) {
+			sum1 -= BASE;
+		}
+		if (sum2 >= (BASE << 1)) {
+			sum2 -= (BASE << 1);
+		}
+		if (sum2 >= BASE) {
+			sum2 -= BASE;
+		}
+		return sum1 | (sum2 << 16);
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, long value) {
+		out.write((int) (value >> 24));
+		out.write((int) (value >> 16));
+		out.write((int) (value >> 8));
+		out.write((int) value);
+	}
+
+	private static void writeChunk(ByteArrayOutputStream out, String type, byte[]... parts) {
+		int length = 0;
+		for (byte[] part : parts) {
+			length += part.length;
+		}
+		byte[] typeBytes = { (byte) type.charAt(0), (byte) type.charAt(1), (byte) type.charAt(2),
+				(byte) type.charAt(3) };
+		CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		writeInt(out, length);
+		out.write(typeBytes, 0, 4);
+		for (byte[] part : parts) {
+			crc.update(part);
+			out.write(part, 0, part.length);
+		}
+		writeInt(out, crc.getValue());
+	}
+
+	private byte[] encode() {
+		int strips = (height + STRIP_ROWS - 1) / STRIP_ROWS;
+		Strip[] results = new Strip[strips];
+		IntStream.range(0, strips).parallel().forEach(s -> results[s] = deflateStrip(s * STRIP_ROWS,
+				Math.min(height, (s + 1) * STRIP_ROWS), s == strips - 1));
+
+		long adler = 1;
+		int compressed = 0;
+		for (Strip strip : results) {
+			adler = combineAdler(adler, strip.adler, strip.length);
+			compressed += strip.data.length;
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(compressed + 1024);
+		out.write(SIGNATURE, 0, SIGNATURE.length);
+
+		ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+		writeInt(header, width);
+		writeInt(header, height);
+		header.write(8);
+		header.write(alpha ? 6 : 2);
+		header.write(0);
+		header.write(0);
+		header.write(0);
+		writeChunk(out, "IHDR", header.toByteArray());
+
+		// one IDAT: zlib header, the strips, then the checksum of it all
+		ByteArrayOutputStream checksum = new ByteArrayOutputStream(4);
+		writeInt(checksum, adler);
+		byte[][] idat = new byte[strips + 2][];
+		idat[0] = new byte[] { 0x78, (byte) 0x9c };
+		for (int s = 0; s < strips; s++) {
+			idat[s + 1] = results[s].data;
+		}
+		idat[strips + 1] = checksum.toByteArray();
+		writeChunk(out, "IDAT", idat);
+
+		writeChunk(out, "IEND");
+		return out.toByteArray();
+	}
+
+	/**
+	 * @param level
+	 *            Deflate level, 1 (FAST) to 9 (SMALL).
+	 * @return The image as a PNG file.
+	 */
+	public static byte[] encode(BufferedImage image, int level) {
+		if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("Invalid compression level " + level);
+		}
+		return new PngEncoder(image, level).encode();
+	}
+
+	public static byte[] encode(BufferedImage image) {
+		return encode(image, DEFAULT);
+	}
+}
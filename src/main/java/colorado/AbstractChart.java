@@ -1,18 +1,25 @@
 package colorado;
 
+import java.awt.Color;
+import java.awt.Paint;
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.jfree.chart.JFreeChart;
-
-import com.madgag.gif.fmsware.AnimatedGifEncoder;
+import org.jfree.chart.plot.DefaultDrawingSupplier;
 
 import charts.Chart;
+import charts.ChartManifest;
+import charts.ChartPipeline;
 import charts.Charts;
 import covid.CalendarUtils;
-import library.ASync;
+import library.Fingerprint;
+import library.GifMaker;
+import library.TaskGroup;
 
 /**
  * This program is free software: you can redistribute it and/or modify it under
@@ -101,6 +108,31 @@ public abstract class AbstractChart {
 
 	private static final int GIF_DAYS = 21;
 
+	/*
+	 * Everything the charts are drawn in, so the GIFs can share one palette
+	 * (see PaletteGifEncoder).
+	 */
+	private static Color[] gifColors() {
+		ArrayList<Color> colors = new ArrayList<>();
+		for (NumbersType type : NumbersType.values()) {
+			colors.add(type.color);
+		}
+		for (Rate rate : Rate.values()) {
+			colors.add(rate.color);
+		}
+		colors.add(Color.green); // events
+		// JFreeChart's defaults, but only as many as a chart has series
+		Paint[] defaults = DefaultDrawingSupplier.DEFAULT_PAINT_SEQUENCE;
+		for (int i = 0; i < 10 && i < defaults.length; i++) {
+			if (defaults[i] instanceof Color) {
+				colors.add((Color) defaults[i]);
+			}
+		}
+		return colors.toArray(new Color[0]);
+	}
+
+	private static final Color[] GIF_COLORS = gifColors();
+
 	/**
 	 * The (file) name of this chart is used for both the GIF and folder that
 	 * stores the individual charts.
@@ -144,6 +176,13 @@ public abstract class AbstractChart {
 		return Math.max(getFirstDayForChart(), getFirstDayOfChart());
 	}
 
+	/**
+	 * @return How many charts buildAllCharts makes, at most.
+	 */
+	public int getChartCount() {
+		return Math.max(getLastDayOfChart() - _getFirstDayOfChart() + 1, 0);
+	}
+
 	public String getPngName(int dayOfChart) {
 		return getSubfolder() + "\\" + CalendarUtils.dayToFullDate(dayOfChart, '-') + ".png";
 	}
@@ -160,20 +199,52 @@ public abstract class AbstractChart {
 	static int charts = 0;
 	static Object chartsLock = new Object();
 
-	private Chart fullBuildChart(int dayOfChart) {
+	/*
+	 * A chart that's been built and fingerprinted, but not drawn yet.
+	 */
+	private static class Prepared {
+		final int dayOfChart;
+		final JFreeChart chart;
+		final long fingerprint;
+
+		Prepared(int dayOfChart, JFreeChart chart, long fingerprint) {
+			this.dayOfChart = dayOfChart;
+			this.chart = chart;
+			this.fingerprint = fingerprint;
+		}
+	}
+
+	private Prepared prepareChart(int dayOfChart) {
 		JFreeChart chart = buildChart(dayOfChart);
 		if (chart == null) {
 			// new Exception("Null chart for " +
 			// getPngName(dayOfChart)).printStackTrace();
 			return null;
 		}
+		return new Prepared(dayOfChart, chart, ChartManifest.fingerprint(chart, Charts.WIDTH, Charts.HEIGHT));
+	}
+
+	private Chart fullBuildChart(int dayOfChart) {
+		Prepared prepared = prepareChart(dayOfChart);
+		return prepared == null ? null : fullBuildChart(prepared);
+	}
+
+	private Chart fullBuildChart(Prepared prepared) {
+		int dayOfChart = prepared.dayOfChart;
+		long fingerprint = prepared.fingerprint;
+		String pngName = getPngName(dayOfChart);
+		boolean publish = publish(dayOfChart);
+		if (!publish && ChartManifest.isUnchanged(pngName, fingerprint)) {
+			// same as last time; the image is only read back if it's needed
+			return new Chart(null, dayOfChart, pngName);
+		}
 
-		Chart c = new Chart(chart.createBufferedImage(Charts.WIDTH, Charts.HEIGHT), dayOfChart, getPngName(dayOfChart));
-		if (publish(dayOfChart)) {
+		Chart c = new Chart(ChartPipeline.render(prepared.chart, Charts.WIDTH, Charts.HEIGHT), dayOfChart, pngName);
+		if (publish) {
 			c.addFileName(Charts.TOP_FOLDER + "\\" + getName() + ".png");
 			c.open();
 		}
-		c.saveAsPNG();
+		c.saveAsPNG().thenRun(() -> ChartManifest.update(pngName, fingerprint));
 		int cc;
 		synchronized (chartsLock) {
 			cc = ++charts;
@@ -185,72 +256,125 @@ public abstract class AbstractChart {
 		return c;
 	}
 
-	public void buildAllCharts() {
-		if (!hasData()) {
-			return;
+	/*
+	 * Runs the code in the group, or right now if there's no group. Either way
+	 * a failure is printed and the future completes exceptionally.
+	 */
+	private CompletableFuture<Void> run(TaskGroup<Void> async, int dayOfChart, Runnable code) {
+		if (async != null) {
+			return async.execute(code);
 		}
-		AnimatedGifEncoder gif = new AnimatedGifEncoder();
-		String fileName = topFolder + "\\" + getName() + ".gif";
-		new File(getSubfolder()).mkdir();
-		gif.start(fileName);
-		int last = getLastDayOfChart();
-		for (int dayOfChart = _getFirstDayOfChart(); dayOfChart <= last; dayOfChart++) {
-			if (!dayHasData(dayOfChart)) {
-				continue;
+		try {
+			code.run();
+			return CompletableFuture.completedFuture(null);
+		} catch (Exception e) {
+			System.out.println("Fail on " + getPngName(dayOfChart));
+			e.printStackTrace();
+			// just continue
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/*
+	 * The GIF is a hash of its frames' fingerprints and how long each is
+	 * shown, so if none of them changed it isn't read back and encoded again.
+	 */
+	private long gifFingerprint(ArrayList<Prepared> frames) {
+		long hash = Fingerprint.START;
+		for (Color color : GIF_COLORS) {
+			hash = Fingerprint.mix(hash, color.getRGB());
+		}
+		for (Prepared frame : frames) {
+			hash = Fingerprint.mix(hash, frame.dayOfChart);
+			hash = Fingerprint.mix(hash, frame.fingerprint);
+			hash = Fingerprint.mix(hash, Charts.getDelay(stats, frame.dayOfChart));
+		}
+		return hash;
+	}
+
+	/*
+	 * Called once all the GIF's charts are built (but not drawn).
+	 * 
+	 * @param complete false if any of them failed, so the GIF can't be
+	 * skipped or recorded as built.
+	 */
+	private void buildGif(TaskGroup<Void> async, Prepared[] prepared, boolean complete) {
+		ArrayList<Prepared> frames = new ArrayList<>();
+		for (Prepared frame : prepared) {
+			if (frame != null) {
+				frames.add(frame);
 			}
-			try {
-				Chart c = fullBuildChart(dayOfChart);
-				if (dayOfChart + GIF_DAYS > last) {
-					Charts.setDelay(stats, dayOfChart, gif);
-					gif.addFrame(c.getImage());
-				}
-			} catch (Exception e) {
-				System.out.println("Fail on " + getPngName(dayOfChart));
-				e.printStackTrace();
-				// just continue
+		}
+		String gifName = topFolder + "\\" + getName() + ".gif";
+		long fingerprint = gifFingerprint(frames);
+		if (complete && ChartManifest.isUnchanged(gifName, fingerprint)) {
+			for (Prepared frame : frames) {
+				run(async, frame.dayOfChart, () -> fullBuildChart(frame));
 			}
+			return;
 		}
-		gif.finish();
+
+		// frames go into the GIF as they're done, not all at the end
+		GifMaker gif = new GifMaker(gifName, 50, GIF_COLORS);
+		AtomicBoolean failed = new AtomicBoolean(!complete);
+		for (Prepared frame : frames) {
+			int index = gif.reserveFrame();
+			run(async, frame.dayOfChart, () -> {
+				BufferedImage image = fullBuildChart(frame).getImage();
+				if (image == null) {
+					failed.set(true);
+				}
+				gif.setFrame(index, image, Charts.getDelay(stats, frame.dayOfChart));
+			}).whenComplete((v, e) -> {
+				if (e != null) {
+					failed.set(true);
+					gif.skipFrame(index);
+				}
+			});
+		}
+		gif.finish().thenRun(() -> {
+			if (!failed.get()) {
+				ChartManifest.update(gifName, fingerprint);
+			}
+		});
+	}
+
+	public void buildAllCharts() {
+		buildChartsOnly(null);
 	}
 
-	public void buildChartsOnly(ASync<Chart> async) {
+	/**
+	 * Builds the charts in the group, or one at a time right now if it's
+	 * null.
+	 */
+	public void buildChartsOnly(TaskGroup<Void> async) {
 		if (!hasData()) {
 			return;
 		}
-		if (async == null) {
-			buildAllCharts();
-			return;
-		}
 		new File(getSubfolder()).mkdir();
-		LinkedList<Future<Chart>> gifs = new LinkedList<>();
 		int last = getLastDayOfChart();
+		int firstGifDay = Math.max(_getFirstDayOfChart(), last - GIF_DAYS + 1);
+		Prepared[] gifFrames = new Prepared[Math.max(last - firstGifDay + 1, 0)];
+		ArrayList<CompletableFuture<Void>> preparing = new ArrayList<>();
 		for (int dayOfChart = _getFirstDayOfChart(); dayOfChart <= last; dayOfChart++) {
 			if (!dayHasData(dayOfChart)) {
 				continue;
 			}
 			int _dayOfChart = dayOfChart;
-			Future<Chart> future = async.submit(() -> fullBuildChart(_dayOfChart));
-			if (dayOfChart + GIF_DAYS > last) {
-				gifs.add(future);
+			if (dayOfChart >= firstGifDay) {
+				// only built for now; buildGif draws them
+				preparing.add(run(async, dayOfChart,
+						() -> gifFrames[_dayOfChart - firstGifDay] = prepareChart(_dayOfChart)));
+			} else {
+				run(async, dayOfChart, () -> fullBuildChart(_dayOfChart));
 			}
 		}
-		async.execute(() -> {
-			AnimatedGifEncoder gif = new AnimatedGifEncoder();
-			String fileName = topFolder + "\\" + getName() + ".gif";
-			gif.start(fileName);
-
-			for (Future<Chart> future : gifs) {
-				Chart c;
-				try {
-					c = future.get();
-				} catch (Exception e) {
-					e.printStackTrace();
-					continue;
-				}
-				Charts.setDelay(stats, c.dayOfChart, gif);
-				gif.addFrame(c.getImage());
-			}
-			gif.finish();
+		CompletableFuture.allOf(preparing.toArray(new CompletableFuture[0])).handle((v, e) -> {
+			buildGif(async, gifFrames, e == null);
+			return null;
+		}).exceptionally(e -> {
+			e.printStackTrace();
+			return null;
 		});
 	}
 
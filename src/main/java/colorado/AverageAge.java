@@ -12,6 +12,7 @@ import org.jfree.data.time.TimeSeries;
 import org.jfree.data.time.TimeSeriesCollection;
 
 import charts.Chart;
+import charts.ChartPipeline;
 import charts.Charts;
 import covid.CalendarUtils;
 
@@ -88,7 +89,7 @@ public class AverageAge {
 			if (!types.contains(type)) {
 				continue;
 			}
-			IncompleteNumbers numbers = stats.getNumbers(type, timing);
+			FrozenNumbers numbers = stats.getFrozenNumbers(type, timing);
 			if (!numbers.hasData()) {
 				continue;
 			}
@@ -140,7 +141,7 @@ public class AverageAge {
 
 		String fileName = NumbersType.name(types, "-") + "-" + timing.lowerName + ".png";
 		String fullFileName = FOLDER + "\\" + fileName;
-		Chart c = new Chart(chart.createBufferedImage(Charts.WIDTH, Charts.HEIGHT), stats.getLastDay(), fullFileName);
+		Chart c = new Chart(ChartPipeline.render(chart, Charts.WIDTH, Charts.HEIGHT), stats.getLastDay(), fullFileName);
 		if (false && timing == NumbersTiming.INFECTION && types.size() == 3) {
 			c.addFileName(Charts.TOP_FOLDER + "\\" + fileName);
 			c.open();
@@ -9,9 +9,9 @@ import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.LogarithmicAxis;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.DeviationRenderer;
-import org.jfree.data.time.TimeSeries;
-import org.jfree.data.time.TimeSeriesCollection;
 
+import charts.ArrayDataset;
+import charts.ChartPipeline;
 import charts.Charts;
 import covid.CalendarUtils;
 
@@ -44,12 +44,12 @@ public class ChartCounty {
 	public BufferedImage buildCountyTimeseriesChart(CountyStats c, boolean log) {
 		Smoothing s0 = Smoothing.NONE;
 		Smoothing s1 = Smoothing.AVERAGE_7_DAY;
-		TimeSeriesCollection collection = new TimeSeriesCollection();
+		ArrayDataset collection = new ArrayDataset();
 
 		DeviationRenderer renderer = new DeviationRenderer(true, false);
 		int seriesCount = 0;
 
-		TimeSeries cSeries0 = new TimeSeries("Cases (" + s0.getDescription() + ")");
+		ArrayDataset.Series cSeries0 = new ArrayDataset.Series("Cases (" + s0.getDescription() + ")");
 		c.getCases().makeTimeSeries(cSeries0, s0, log);
 		collection.addSeries(cSeries0);
 		renderer.setSeriesStroke(seriesCount, new BasicStroke(0.5f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
@@ -57,7 +57,7 @@ public class ChartCounty {
 		renderer.setSeriesFillPaint(seriesCount, NumbersType.CASES.color.darker());
 		seriesCount++;
 
-		TimeSeries cSeries = new TimeSeries("Cases (" + s1.getDescription() + ")");
+		ArrayDataset.Series cSeries = new ArrayDataset.Series("Cases (" + s1.getDescription() + ")");
 		c.getCases().makeTimeSeries(cSeries, s1, log);
 		collection.addSeries(cSeries);
 		renderer.setSeriesStroke(seriesCount, new BasicStroke(1.5f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
@@ -65,7 +65,7 @@ public class ChartCounty {
 		renderer.setSeriesFillPaint(seriesCount, NumbersType.CASES.color.darker());
 		seriesCount++;
 
-		TimeSeries dSeries = new TimeSeries("Deaths (" + s1.getDescription() + ")");
+		ArrayDataset.Series dSeries = new ArrayDataset.Series("Deaths (" + s1.getDescription() + ")");
 		c.getDeaths().makeTimeSeries(dSeries, s1, log);
 		collection.addSeries(dSeries);
 		renderer.setSeriesStroke(seriesCount, new BasicStroke(1.5f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
@@ -94,7 +94,7 @@ public class ChartCounty {
 		}
 
 		String fileName = c.getName() + "-" + (log ? "log" : "cart");
-		BufferedImage image = chart.createBufferedImage(Charts.WIDTH, Charts.HEIGHT);
+		BufferedImage image = ChartPipeline.render(chart, Charts.WIDTH, Charts.HEIGHT);
 		Charts.saveBufferedImageAsPNG(COUNTY_FOLDER, fileName, image);
 		return image;
 	}
@@ -3,7 +3,7 @@ package colorado;
 import java.awt.BasicStroke;
 import java.util.Set;
 
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.apache.commons.math3.stat.StatUtils;
 import org.apache.commons.math3.stat.regression.SimpleRegression;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.JFreeChart;
@@ -12,9 +12,8 @@ import org.jfree.chart.axis.LogarithmicAxis;
 import org.jfree.chart.plot.ValueMarker;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.DeviationRenderer;
-import org.jfree.data.xy.YIntervalSeries;
-import org.jfree.data.xy.YIntervalSeriesCollection;
 
+import charts.ArrayDataset;
 import charts.Charts;
 import covid.CalendarUtils;
 
@@ -66,7 +65,7 @@ public class ChartIncompletes extends TypesTimingChart {
 
 	@Override
 	public JFreeChart buildChart(final int dayOfData) {
-		YIntervalSeriesCollection collection = new YIntervalSeriesCollection();
+		ArrayDataset collection = new ArrayDataset();
 		StringBuilder title = new StringBuilder();
 
 		// https://www.jfree.org/forum/viewtopic.php?t=20396
@@ -111,14 +110,17 @@ public class ChartIncompletes extends TypesTimingChart {
 		boolean log = false;
 
 		for (NumbersType type : types) {
-			IncompleteNumbers numbers = stats.getNumbers(type, timing);
+			FrozenNumbers numbers = stats.getFrozenNumbers(type, timing);
 			if (!numbers.hasData() || !numbers.dayHasData(dayOfData)) {
 				continue;
 			}
 			Smoothing smoothing = smoothed() ? type.smoothing : Smoothing.NONE;
-			YIntervalSeries series2022 = new YIntervalSeries(type.capName + " (2022)");
-			YIntervalSeries series2021 = new YIntervalSeries("2021");
-			YIntervalSeries series2020 = new YIntervalSeries("2020");
+			CompletionRatios ratios = numbers.getCompletionRatios(DELAY);
+			CompletionBands bands = ratios.getBandsByDays(INTERVAL);
+			double[] samples = new double[INTERVAL];
+			ArrayDataset.Series series2022 = new ArrayDataset.Series(type.capName + " (2022)");
+			ArrayDataset.Series series2021 = new ArrayDataset.Series("2021");
+			ArrayDataset.Series series2020 = new ArrayDataset.Series("2020");
 
 			int regressionDays = 42, regressionExtraDays = 14;
 			int firstRegressionDay = dayOfData - regressionDays;
@@ -150,24 +152,12 @@ public class ChartIncompletes extends TypesTimingChart {
 					}
 				}
 
-				DescriptiveStatistics statistics = new DescriptiveStatistics();
 				int actualDelay = dayOfData - dayOfType;
-				for (int oldDayOfType = dayOfType - DELAY - INTERVAL; oldDayOfType < dayOfType
-						- DELAY; oldDayOfType++) {
-					if (!numbers.dayHasData(oldDayOfType + actualDelay)
-							|| !numbers.dayHasData(oldDayOfType + actualDelay + DELAY)) {
-						continue;
-					}
-					double n1 = numbers.getNumbers(oldDayOfType + actualDelay, oldDayOfType);
-					double n2 = numbers.getNumbers(oldDayOfType + actualDelay + DELAY, oldDayOfType);
-
-					if (n1 == 0 || n2 == 0) {
-						continue;
-					}
-
-					statistics.addValue(Math.log(n2 / n1));
-					if (dayOfType >= firstRegressionDay) {
-						fit.addData(dayOfType - firstRegressionDay, Math.log(number * n2 / n1));
+				if (dayOfType >= firstRegressionDay) {
+					int sampleCount = ratios.getLogRatios(actualDelay, dayOfType - DELAY - INTERVAL, dayOfType - DELAY,
+							samples);
+					for (int i = 0; i < sampleCount; i++) {
+						fit.addData(dayOfType - firstRegressionDay, Math.log(number) + samples[i]);
 						dayCount++;
 					}
 				}
@@ -181,9 +171,9 @@ public class ChartIncompletes extends TypesTimingChart {
 				double upperBound, lowerBound, median;
 				if (true) {
 					/* Use the actual 2.5% and 97.5% values */
-					upperBound = statistics.getPercentile(topRange);
-					median = statistics.getPercentile(50);
-					lowerBound = statistics.getPercentile(bottomRange);
+					upperBound = bands.getTop(actualDelay, dayOfType - DELAY);
+					median = bands.getMedian(actualDelay, dayOfType - DELAY);
+					lowerBound = bands.getBottom(actualDelay, dayOfType - DELAY);
 				} else {
 					/*
 					 * Apply a log-normal distribution to smooth these bounds
@@ -198,8 +188,10 @@ public class ChartIncompletes extends TypesTimingChart {
 					 * after old numbers are increased, but rarely drops. It may
 					 * be asymmetrical.
 					 */
-					double mean = statistics.getMean();
-					double sd = statistics.getStandardDeviation();
+					int sampleCount = ratios.getLogRatios(actualDelay, dayOfType - DELAY - INTERVAL, dayOfType - DELAY,
+							samples);
+					double mean = StatUtils.mean(samples, 0, sampleCount);
+					double sd = Math.sqrt(StatUtils.variance(samples, 0, sampleCount));
 					upperBound = mean + 2 * sd;
 					lowerBound = mean - 2 * sd;
 				}
@@ -234,7 +226,7 @@ public class ChartIncompletes extends TypesTimingChart {
 			renderer.setSeriesFillPaint(seriesCount, type.color.darker());
 			seriesCount++;
 
-			YIntervalSeries seriesFit = new YIntervalSeries(String.format("Fit %d day, r=%.3f; curr=%d", 35,
+			ArrayDataset.Series seriesFit = new ArrayDataset.Series(String.format("Fit %d day, r=%.3f; curr=%d", 35,
 					fit.getSlope(), Math.round(Math.exp(fit.predict(regressionDays)))));
 			double err = fit.getInterceptStdErr() * 1.96; // Z(.95) = 1.96
 			if (log) {
@@ -1,11 +1,15 @@
 package colorado;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Set;
 
-import charts.Chart;
+import charts.ChartManifest;
+import charts.ChartPipeline;
 import charts.Charts;
-import library.ASync;
+import library.Scheduler;
 
 /**
  * This program is free software: you can redistribute it and/or modify it under
@@ -36,7 +40,7 @@ public class ChartMaker {
 		age = new AverageAge(stats);
 	}
 
-	ASync<Chart> build = new ASync<>();
+	Scheduler build = new Scheduler("Chart build");
 	Set<NumbersType> noTests = NumbersType.getSet(NumbersType.CASES, NumbersType.DEATHS, NumbersType.HOSPITALIZATIONS);
 	Finals finals;
 	Set<NumbersType> fullTypes = NumbersType.getSet();
@@ -45,53 +49,110 @@ public class ChartMaker {
 	ChartCounty county;
 	AverageAge age;
 
+	// first guess at cost, until there are times from a previous run
+	private static final int MS_PER_CHART = 250;
+	private static final String COSTS_FILE = Charts.TOP_FOLDER + "\\build.costs";
+
+	/*
+	 * The completion ratios are shared by all the charts of a type and
+	 * timing, so they're built once, before any of those charts start.
+	 */
+	private final HashMap<String, Scheduler.Task> ratios = new HashMap<>();
+
+	private Scheduler.Task ratios(NumbersType type, NumbersTiming timing, boolean reproductive) {
+		String name = (reproductive ? "reproductive-ratios-" : "ratios-") + type.lowerName + "-" + timing.lowerName;
+		return ratios.computeIfAbsent(name, n -> build.add(n, Scheduler.NORMAL, 1000, () -> {
+			FrozenNumbers numbers = stats.getFrozenNumbers(type, timing);
+			if (reproductive) {
+				numbers.getReproductiveRatios(AbstractChart.DELAY);
+			} else {
+				numbers.getCompletionRatios(AbstractChart.DELAY);
+			}
+		}));
+	}
+
+	private Scheduler.Task[] ratios(Set<NumbersType> types, NumbersTiming timing, boolean reproductive) {
+		ArrayList<Scheduler.Task> tasks = new ArrayList<>();
+		for (NumbersType type : types) {
+			tasks.add(ratios(type, timing, reproductive));
+		}
+		return tasks.toArray(new Scheduler.Task[0]);
+	}
+
+	private Scheduler.Task[] ratios(Set<Rate> rates, NumbersTiming timing) {
+		HashSet<NumbersType> types = new HashSet<>();
+		for (Rate rate : rates) {
+			types.add(rate.numerator);
+			types.add(rate.denominator);
+		}
+		return ratios(types, timing, false);
+	}
+
+	/*
+	 * The charts that get opened at the end go first.
+	 */
+	private void chart(AbstractChart chart, Scheduler.Task... dependencies) {
+		int priority = chart.publish(stats.getLastDay()) ? Scheduler.HIGH : Scheduler.NORMAL;
+		build.add(chart.getSubfolder(), priority, (long) chart.getChartCount() * MS_PER_CHART, chart::buildAllCharts,
+				dependencies);
+	}
+
+	private void incompletes(Set<NumbersType> types, NumbersTiming timing, int chartDays, Flag... flags) {
+		chart(new ChartIncompletes(stats, types, timing, chartDays, flags), ratios(types, timing, false));
+	}
+
+	private void reproductive(Set<NumbersType> types, NumbersTiming timing) {
+		chart(new Reproductive(stats, types, timing), ratios(types, timing, true));
+	}
+
 	private void fastBuild() {
 		NumbersTiming timing = NumbersTiming.ONSET;
-		build.execute(() -> new ChartIncompletes(stats, cases, timing, 90, Flag.LOGARITHMIC).buildAllCharts());
+		incompletes(cases, timing, 90, Flag.LOGARITHMIC);
 	}
 
 	private void fullBuild() {
-		build.execute(() -> finals.createCumulativeStats());
+		build.add("cumulative", Scheduler.NORMAL, 5 * MS_PER_CHART, () -> finals.createCumulativeStats());
 
 		for (NumbersTiming timing : NumbersTiming.values()) {
-			build.execute(() -> new ChartRates(stats, Rate.getSet(Rate.values()), timing).buildAllCharts());
-			build.execute(() -> new Reproductive(stats, noTests, timing).buildAllCharts());
-			build.execute(() -> new Reproductive(stats, casesHosps, timing).buildAllCharts());
-			build.execute(() -> new ChartIncompletes(stats, noTests, timing, 365, Flag.LOGARITHMIC, Flag.SMOOTHED,
-					Flag.OLD_YEARS).buildAllCharts());
-			build.execute(() -> new ChartIncompletes(stats, noTests, timing, 90, Flag.LOGARITHMIC).buildAllCharts());
-			build.execute(() -> new ChartIncompletes(stats, noTests, timing, 365, Flag.SMOOTHED).buildAllCharts());
-			build.execute(() -> new FullDelayChart(stats, noTests, timing, true).buildAllCharts());
-			build.execute(() -> new FullDelayChart(stats, noTests, timing, false).buildAllCharts());
-			build.execute(() -> new DailyAgeChart(stats, noTests, timing).buildAllCharts());
-			build.execute(() -> new DailyDelayChart(stats, noTests, timing).buildAllCharts());
-			build.execute(() -> age.buildChart(noTests, timing));
-
-			build.execute(() -> new ChartIncompletes(stats, fullTypes, timing, 365, Flag.LOGARITHMIC, Flag.SMOOTHED)
-					.buildAllCharts());
-			build.execute(() -> new ChartIncompletes(stats, fullTypes, timing, 365, Flag.SMOOTHED).buildAllCharts());
-			build.execute(() -> new ChartIncompletes(stats, fullTypes, timing, 365, Flag.LOGARITHMIC).buildAllCharts());
+			Set<Rate> allRates = Rate.getSet(Rate.values());
+			chart(new ChartRates(stats, allRates, timing), ratios(allRates, timing));
+			reproductive(noTests, timing);
+			reproductive(casesHosps, timing);
+			incompletes(noTests, timing, 365, Flag.LOGARITHMIC, Flag.SMOOTHED, Flag.OLD_YEARS);
+			incompletes(noTests, timing, 90, Flag.LOGARITHMIC);
+			incompletes(noTests, timing, 365, Flag.SMOOTHED);
+			chart(new FullDelayChart(stats, noTests, timing, true));
+			chart(new FullDelayChart(stats, noTests, timing, false));
+			chart(new DailyAgeChart(stats, noTests, timing));
+			chart(new DailyDelayChart(stats, noTests, timing));
+			build.add("age-" + NumbersType.name(noTests, "-") + "-" + timing.lowerName, Scheduler.NORMAL,
+					MS_PER_CHART, () -> age.buildChart(noTests, timing));
+
+			incompletes(fullTypes, timing, 365, Flag.LOGARITHMIC, Flag.SMOOTHED);
+			incompletes(fullTypes, timing, 365, Flag.SMOOTHED);
+			incompletes(fullTypes, timing, 365, Flag.LOGARITHMIC);
 			// No point to testing age; it's identical to cases
 
 			for (Rate rate : Rate.values()) {
-				build.execute(() -> new ChartRates(stats, Rate.getSet(rate), timing).buildAllCharts());
+				Set<Rate> rates = Rate.getSet(rate);
+				chart(new ChartRates(stats, rates, timing), ratios(rates, timing));
 			}
 			for (NumbersType type : NumbersType.values()) {
-				build.execute(() -> new Reproductive(stats, NumbersType.getSet(type), timing).buildAllCharts());
-				build.execute(() -> new ChartIncompletes(stats, type.set, timing, 365, Flag.LOGARITHMIC, Flag.SMOOTHED,
-						Flag.OLD_YEARS).buildAllCharts());
-				build.execute(() -> new ChartIncompletes(stats, type.set, timing, 365, Flag.SMOOTHED).buildAllCharts());
-				build.execute(
-						() -> new ChartIncompletes(stats, type.set, timing, 365, Flag.LOGARITHMIC).buildAllCharts());
-				build.execute(() -> new FullDelayChart(stats, type.set, timing, true).buildAllCharts());
-				build.execute(() -> new FullDelayChart(stats, type.set, timing, false).buildAllCharts());
-				build.execute(() -> new DailyAgeChart(stats, type.set, timing).buildAllCharts());
-				build.execute(() -> new DailyDelayChart(stats, type.set, timing).buildAllCharts());
-				build.execute(() -> age.buildChart(type.set, timing));
+				reproductive(NumbersType.getSet(type), timing);
+				incompletes(type.set, timing, 365, Flag.LOGARITHMIC, Flag.SMOOTHED, Flag.OLD_YEARS);
+				incompletes(type.set, timing, 365, Flag.SMOOTHED);
+				incompletes(type.set, timing, 365, Flag.LOGARITHMIC);
+				chart(new FullDelayChart(stats, type.set, timing, true));
+				chart(new FullDelayChart(stats, type.set, timing, false));
+				chart(new DailyAgeChart(stats, type.set, timing));
+				chart(new DailyDelayChart(stats, type.set, timing));
+				build.add("age-" + type.lowerName + "-" + timing.lowerName, Scheduler.NORMAL, MS_PER_CHART,
+						() -> age.buildChart(type.set, timing));
 			}
 		}
 
-		stats.getCounties().forEach((key, value) -> build.execute(() -> county.createCountyStats(value)));
+		stats.getCounties().forEach((key, value) -> build.add("county-" + key, Scheduler.NORMAL, 2 * MS_PER_CHART,
+				() -> county.createCountyStats(value)));
 	}
 
 	public void buildCharts() {
@@ -101,8 +162,10 @@ public class ChartMaker {
 
 		long buildStarted = System.currentTimeMillis();
 
+		build.loadCosts(COSTS_FILE);
+
 		// maybe a chart later
-		build.execute(() -> stats.calculateReinfections());
+		build.add("reinfections", Scheduler.NORMAL, MS_PER_CHART, () -> stats.calculateReinfections());
 
 		if (true) {
 			fastBuild();
@@ -110,8 +173,13 @@ public class ChartMaker {
 			fullBuild();
 		}
 		build.complete();
+		ChartPipeline.flush();
+		ChartPipeline.report();
+		ChartManifest.save();
+		build.saveCosts(COSTS_FILE);
 		System.out.println("Built charts in " + (System.currentTimeMillis() - buildStarted) + " ms with "
 				+ build.getExecutions() + " executions.");
+		build.report(5);
 		library.OpenImage.open();
 	}
 }
@@ -3,16 +3,14 @@ package colorado;
 import java.awt.BasicStroke;
 import java.util.Set;
 
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.DateAxis;
 import org.jfree.chart.axis.ValueAxis;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.DeviationRenderer;
-import org.jfree.data.xy.YIntervalSeries;
-import org.jfree.data.xy.YIntervalSeriesCollection;
 
+import charts.ArrayDataset;
 import charts.Charts;
 import covid.CalendarUtils;
 
@@ -48,7 +46,7 @@ public class ChartRates extends AbstractChart {
 	public JFreeChart buildChart(int dayOfData) {
 
 		DeviationRenderer renderer = new DeviationRenderer(true, false);
-		YIntervalSeriesCollection collection = new YIntervalSeriesCollection();
+		ArrayDataset collection = new ArrayDataset();
 		int seriesCount = 0;
 
 		int height = 0;
@@ -58,13 +56,15 @@ public class ChartRates extends AbstractChart {
 		for (Rate rate : rates) {
 			Smoothing smoothing = rate.smoothing;
 
-			IncompleteNumbers nNumbers = stats.getNumbers(rate.numerator, timing);
-			IncompleteNumbers dNumbers = stats.getNumbers(rate.denominator, timing);
+			FrozenNumbers nNumbers = stats.getFrozenNumbers(rate.numerator, timing);
+			FrozenNumbers dNumbers = stats.getFrozenNumbers(rate.denominator, timing);
+			CompletionBands bands = nNumbers.getCompletionRatios(DELAY)
+					.getRelativeTo(dNumbers.getCompletionRatios(DELAY)).getBandsBySamples(INTERVAL);
 
-			YIntervalSeries series2022 = new YIntervalSeries(
+			ArrayDataset.Series series2022 = new ArrayDataset.Series(
 					rate.description + " (" + smoothing.getDescription() + ", 2022)");
-			YIntervalSeries series2021 = new YIntervalSeries("2021");
-			YIntervalSeries series2020 = new YIntervalSeries("2020");
+			ArrayDataset.Series series2021 = new ArrayDataset.Series("2021");
+			ArrayDataset.Series series2020 = new ArrayDataset.Series("2020");
 
 			height = Math.max(height, rate.highestValue);
 
@@ -81,36 +81,16 @@ public class ChartRates extends AbstractChart {
 					continue;
 				}
 
-				DescriptiveStatistics statistics = new DescriptiveStatistics();
 				int actualDelay = dayOfData - dayOfType;
 				if (DELAY % 7 != 0) {
 					throw new RuntimeException("You really want delay and interval to "
 							+ "be weekly amounts to deal with day-of-week issues.");
 				}
-				for (int count = 0, oldDayOfType = dayOfType - DELAY; count < INTERVAL
-						&& oldDayOfType >= stats.getVeryFirstDay(); oldDayOfType--) {
-					if (!nNumbers.dayHasData(oldDayOfType + actualDelay)
-							|| !nNumbers.dayHasData(oldDayOfType + actualDelay + DELAY)
-							|| !dNumbers.dayHasData(oldDayOfType + actualDelay)
-							|| !dNumbers.dayHasData(oldDayOfType + actualDelay + DELAY)) {
-						continue;
-					}
-					double n1 = nNumbers.getNumbers(oldDayOfType + actualDelay, oldDayOfType);
-					double n2 = nNumbers.getNumbers(oldDayOfType + actualDelay + DELAY, oldDayOfType);
-
-					double d1 = dNumbers.getNumbers(oldDayOfType + actualDelay, oldDayOfType);
-					double d2 = dNumbers.getNumbers(oldDayOfType + actualDelay + DELAY, oldDayOfType);
-
-					if (n1 == 0 || n2 == 0 || d1 == 0 || d2 == 0) {
-						continue;
-					}
-					statistics.addValue((numerator / denominator) * (n2 / d2) / (n1 / d1));
-					count++;
-				}
 
-				double upperBound = statistics.getPercentile(topRange);
-				double lowerBound = statistics.getPercentile(bottomRange);
-				double median = statistics.getPercentile(50);
+				double rateNow = numerator / denominator;
+				double upperBound = rateNow * Math.exp(bands.getTop(actualDelay, dayOfType - DELAY));
+				double lowerBound = rateNow * Math.exp(bands.getBottom(actualDelay, dayOfType - DELAY));
+				double median = rateNow * Math.exp(bands.getMedian(actualDelay, dayOfType - DELAY));
 
 				double value = 100 * Charts.value(numerator / denominator, median);
 				if (rate == Rate.POSITIVITY && timing == NumbersTiming.ONSET) {
@@ -207,8 +187,8 @@ public class ChartRates extends AbstractChart {
 	@Override
 	public boolean dayHasData(int dayOfData) {
 		for (Rate rate : rates) {
-			IncompleteNumbers n = stats.getNumbers(rate.numerator, timing);
-			IncompleteNumbers d = stats.getNumbers(rate.denominator, timing);
+			FrozenNumbers n = stats.getFrozenNumbers(rate.numerator, timing);
+			FrozenNumbers d = stats.getFrozenNumbers(rate.denominator, timing);
 			if (n.dayHasData(dayOfData) || d.dayHasData(dayOfData)) {
 				return true;
 			}
@@ -6,6 +6,7 @@ import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
@@ -13,7 +14,7 @@ import org.apache.commons.csv.CSVRecord;
 
 import covid.CalendarUtils;
 import covid.DailyTracker;
-import library.ASync;
+import library.TaskGroup;
 
 /**
  * This program is free software: you can redistribute it and/or modify it under
@@ -136,6 +137,14 @@ public class ColoradoStats extends DailyTracker {
 		return incompleteNumbers[type.ordinal() * NumbersTiming.values().length + timing.ordinal()];
 	}
 
+	/**
+	 * @return The built, read-only numbers. This is what the charts should
+	 *         read from, since it needs no locking.
+	 */
+	public FrozenNumbers getFrozenNumbers(NumbersType type, NumbersTiming timing) {
+		return getNumbers(type, timing).getFrozen();
+	}
+
 	private void setNumbers(NumbersType type, FinalNumbers numbers) {
 		finalNumbers[type.ordinal()] = numbers;
 	}
@@ -196,7 +205,7 @@ public class ColoradoStats extends DailyTracker {
 		firstDayOfCumulative = Math.min(firstDayOfCumulative, day);
 	}
 
-	private static void write(String lead, CSVRecord line) {
+	static void write(String lead, CSVRecord line) {
 		new Exception("Bad line: " + lead).printStackTrace();
 		if (lead != null) {
 			System.out.print("Bad line> " + lead + " : ");
@@ -209,7 +218,7 @@ public class ColoradoStats extends DailyTracker {
 		System.out.println("");
 	}
 
-	public CountyStats getCountyStats(String countyName) {
+	public synchronized CountyStats getCountyStats(String countyName) {
 		CountyStats county = counties.get(countyName);
 		if (county == null) {
 			county = new CountyStats(countyName);
@@ -222,13 +231,11 @@ public class ColoradoStats extends DailyTracker {
 		return counties;
 	}
 
-	private CountyStats readCounty(String countyName) {
+	static String countyName(String countyName) {
 		if (countyName.endsWith(" County")) {
 			countyName = countyName.substring(0, countyName.length() - 7);
 		}
-		countyName = countyName.trim();
-
-		return getCountyStats(countyName);
+		return countyName.trim();
 	}
 
 	public void outputDailyStats() {
@@ -285,200 +292,14 @@ public class ColoradoStats extends DailyTracker {
 
 	private final Charset charset = Charset.forName("US-ASCII");
 
-	public boolean readOldCsv(int dayOfData) {
-		File f = null;
-		String fname = oldCsvFileName(dayOfData);
-		f = new File(fname);
-
-		if (!f.exists()) {
-			return false;
-		}
+	private void readOldCsv(File f, CsvSnapshot snapshot) throws IOException {
+		int dayOfData = snapshot.getDayOfData();
 		try (CSVParser csv = CSVParser.parse(f, charset, CSVFormat.DEFAULT)) {
-			includeDay(dayOfData);
-
 			for (CSVRecord line : csv) {
-				int number;
-				try {
-					number = Integer.valueOf(line.get(3));
-				} catch (Exception e) {
-					number = 0;
-				}
-
 				if (line.get(0).equals("description") || line.get(1).equals("Note")) {
 					// ignore notes!
-				} else if (line.get(0).equals("State Data") && line.get(1).equals("Statewide")) {
-					if (line.get(2).equals("Cases")) {
-						getNumbers(NumbersType.CASES).setCumulativeNumbers(dayOfData, number);
-					} else if (line.get(2).equals("Hospitalizations")) {
-						getNumbers(NumbersType.HOSPITALIZATIONS).setCumulativeNumbers(dayOfData, number);
-					} else if (line.get(2).equals("Deaths")) {
-						// this was split up into deaths among cases (PUI) and
-						// deaths due to covid (confirmed). Before it was just
-						// deaths for both.
-						getNumbers(NumbersType.DEATHS).setCumulativeNumbers(dayOfData, number);
-						confirmedDeaths.setCumulativeNumbers(dayOfData, number);
-					} else if (line.get(2).equals("Deaths Among Cases")) {
-						getNumbers(NumbersType.DEATHS).setCumulativeNumbers(dayOfData, number);
-					} else if (line.get(2).equals("Deaths Due to COVID-19")) {
-						confirmedDeaths.setCumulativeNumbers(dayOfData, number);
-					} else if (line.get(2).equals("Test Encounters")) {
-						getNumbers(NumbersType.TESTS).setCumulativeNumbers(dayOfData, number);
-					} else if (line.get(2).equals("People Tested")) {
-						peopleTested.setCumulativeNumbers(dayOfData, number);
-					} else if (line.get(2).equals("Counties")) {
-					} else if (line.get(2).equals("Rate Per 100000") || line.get(2).equals("Rate per 100,000")) {
-						// uh, simple bug that the CSV reader ignores " escaping
-						// and so treats 100,000 as a separator
-					} else if (line.get(2).equals("Outbreaks")) {
-					} else {
-						write(CalendarUtils.dayToDate(dayOfData) + "???", line);
-					}
-				} else if (line.get(0).equals("Case Counts by Onset Date")
-						|| line.get(0).equals("Cases of COVID-19 in Colorado by Date of Illness Onset")) {
-					if (line.get(2).equals("Cases")) {
-						int dayOfOnset = CalendarUtils.dateToDay(line.get(1));
-						int dayOfInfection = dayOfOnset - 5;
-						int c = Integer.valueOf(line.get(3));
-
-						setFirstDayOfTiming(NumbersTiming.ONSET, dayOfOnset);
-						setFirstDayOfTiming(NumbersTiming.INFECTION, dayOfInfection);
-
-						getNumbers(NumbersType.CASES, NumbersTiming.ONSET).setNumbers(dayOfData, dayOfOnset, c);
-						getNumbers(NumbersType.CASES, NumbersTiming.INFECTION).setNumbers(dayOfData, dayOfInfection, c);
-					}
-				} else if (line.get(0).equals(
-						"Cumulative Number of Hospitalized Cases of COVID-19 in Colorado by Date of Illness Onset")
-						|| line.get(0).equals("Cumulative Number of Hospitalizations by Onset Date")) {
-					int dayOfOnset = CalendarUtils.dateToDay(line.get(1));
-					int dayOfInfection = dayOfOnset - 5;
-					int c = Integer.valueOf(line.get(3));
-
-					setFirstDayOfTiming(NumbersTiming.ONSET, dayOfOnset);
-					setFirstDayOfTiming(NumbersTiming.INFECTION, dayOfInfection);
-
-					getNumbers(NumbersType.HOSPITALIZATIONS, NumbersTiming.ONSET).setCumulative();
-					getNumbers(NumbersType.HOSPITALIZATIONS, NumbersTiming.INFECTION).setCumulative();
-					getNumbers(NumbersType.HOSPITALIZATIONS, NumbersTiming.ONSET).setNumbers(dayOfData, dayOfOnset, c);
-					getNumbers(NumbersType.HOSPITALIZATIONS, NumbersTiming.INFECTION).setNumbers(dayOfData,
-							dayOfInfection, c);
-				} else if (line.get(0).equals("Cumulative Number of Deaths by Onset Date") || line.get(0)
-						.equals("Cumulative Number of Deaths From COVID-19 in Colorado by Date of Illness")) {
-					int dayOfOnset = CalendarUtils.dateToDay(line.get(1));
-					int dayOfInfection = dayOfOnset - 5;
-					int c = Integer.valueOf(line.get(3));
-
-					setFirstDayOfTiming(NumbersTiming.ONSET, dayOfOnset);
-					setFirstDayOfTiming(NumbersTiming.INFECTION, dayOfInfection);
-
-					getNumbers(NumbersType.DEATHS, NumbersTiming.ONSET).setCumulative();
-					getNumbers(NumbersType.DEATHS, NumbersTiming.INFECTION).setCumulative();
-					getNumbers(NumbersType.DEATHS, NumbersTiming.ONSET).setNumbers(dayOfData, dayOfOnset, c);
-					getNumbers(NumbersType.DEATHS, NumbersTiming.INFECTION).setNumbers(dayOfData, dayOfInfection, c);
-				} else if (line.get(0)
-						.equals("Cumulative Number of Deaths From COVID-19 in Colorado by Date of Death")) {
-
-					int dayOfDeath = CalendarUtils.dateToDay(line.get(1));
-					int c = Integer.valueOf(line.get(3));
-
-					setFirstDayOfTiming(NumbersTiming.DEATH, dayOfDeath);
-
-					getNumbers(NumbersType.DEATHS, NumbersTiming.DEATH).setNumbers(dayOfData, dayOfDeath, c);
-					getNumbers(NumbersType.DEATHS, NumbersTiming.DEATH).setCumulative();
-				} else if (line.get(0).equals("Cases of COVID-19 in Colorado by Date Reported to the State")
-						|| line.get(0).equals("Case Counts by Reported Date")) {
-					if (line.get(2).equals("Cases")) {
-						int dayOfReporting = CalendarUtils.dateToDay(line.get(1));
-						setFirstDayOfTiming(NumbersTiming.REPORTED, dayOfReporting);
-						int c = Integer.valueOf(line.get(3));
-						getNumbers(NumbersType.CASES, NumbersTiming.REPORTED).setNumbers(dayOfData, dayOfReporting, c);
-					} else if (line.get(2).equals("Three-Day Moving Average Of Cases")) {
-						// redundant
-					} else {
-						write(null, line);
-					}
-				} else if (line.get(0).equals(
-						"Cumulative Number of Hospitalized Cases of COVID-19 in Colorado by Date Reported to the State")
-						|| line.get(0).equals("Cumulative Number of Hospitalizations by Reported Date")) {
-					if (line.get(2).equals("Cases")) {
-						int dayOfReporting = CalendarUtils.dateToDay(line.get(1));
-						setFirstDayOfTiming(NumbersTiming.REPORTED, dayOfReporting);
-						int c = Integer.valueOf(line.get(3));
-						getNumbers(NumbersType.HOSPITALIZATIONS, NumbersTiming.REPORTED).setCumulative();
-						getNumbers(NumbersType.HOSPITALIZATIONS, NumbersTiming.REPORTED).setNumbers(dayOfData,
-								dayOfReporting, c);
-					} else {
-						write(null, line);
-					}
-				} else if (line.get(0)
-						.equals("Cumulative Number of Deaths From COVID-19 in Colorado by Date Reported to the State")
-						|| line.get(0).equals("Cumulative Number of Deaths by Reported Date")) {
-					if (line.get(2).equals("Cases")) {
-						int dayOfReporting = CalendarUtils.dateToDay(line.get(1));
-						setFirstDayOfTiming(NumbersTiming.REPORTED, dayOfReporting);
-						int c = Integer.valueOf(line.get(3));
-						getNumbers(NumbersType.DEATHS, NumbersTiming.REPORTED).setCumulative();
-						getNumbers(NumbersType.DEATHS, NumbersTiming.REPORTED).setNumbers(dayOfData, dayOfReporting, c);
-					} else {
-						write(null, line);
-					}
-				} else if (line.get(0).equals("Colorado Case Counts by County")
-						|| line.get(0).equals("Case Counts by County")) {
-					if (!line.get(1).equals("Note") && line.get(2).equals("Cases") && !line.get(1).contains("nknown")) {
-						Integer c = Integer.valueOf(line.get(3));
-						CountyStats county = readCounty(line.get(1));
-						county.getCases().setCumulativeNumbers(dayOfData, c);
-					}
-				} else if (line.get(0).equals("Deaths") || line.get(0).equals("Number of Deaths by County")) {
-					Integer c = Integer.valueOf(line.get(3));
-					CountyStats county = readCounty(line.get(1));
-					county.getDeaths().setCumulativeNumbers(dayOfData, c);
-					setFirstDayOfCumulative(dayOfData);
-				} else if (line.get(0).equals("Daily Serology Data From Clinical Laboratories")) {
-					// ignored?
-				} else if (line.get(0).equals("Positivity Data from Clinical Laboratories")) {
-					// ignored?
-				} else if (line.get(0).equals("Case Status for Cases & Deaths")) {
-					// ignored?
-				} else if (line.get(0).equals("COVID-19 in Colorado by Sex")) {
-					// TODO maybe?
-				} else if (line.get(0).equals("COVID-19 in Colorado by Race & Ethnicity")) {
-					// TODO maybe?
-				} else if (line.get(0).equals("COVID-19 in Colorado by Age Group")) {
-					// TODO maybe?
-				} else if (line.get(0).equals("Case Counts by Age Group, Hospitalizations, and Deaths")) {
-					// ignored?
-				} else if (line.get(0).equals("Case Counts by Age Group, Hospitalizations")) {
-					// ignored?
-				} else if (line.get(0).equals("Transmission Type")) {
-					// ignored?
-				} else if (line.get(0).equals("Case Counts by Sex")) {
-					// ignored?
-				} else if (line.get(0).equals("Fatal cases by sex")) {
-					// ignored?
-				} else if (line.get(0).equals("Cumulative Number of Cases by Onset Date")) {
-					// redundant
-				} else if (line.get(0).equals("Cumulative Number of Cases by Reported Date")) {
-					// redundant
-				} else if (line.get(0)
-						.equals("Cumulative Number of Cases of COVID-19 in Colorado by Date of Illness Onset")) {
-					// redundant
-				} else if (line.get(0)
-						.equals("Cumulative Number of Cases of COVID-19 in Colorado by Date Reported to the State")) {
-					// redundant
-				} else if (line.get(0).equals("Total COVID-19 Tests Performed in Colorado by County")) {
-					// TODO
-				} else if (line.get(0).equals("Number of Deaths From COVID-19 in Colorado by Date of Death - By Day")) {
-					// redundant
-				} else if (line.get(0).equalsIgnoreCase("NA")
-						|| line.get(0).equals("Cases of COVID-19 Reported in Colorado by Age Group")
-						|| line.get(0).equals("Case Counts by Age Group")
-						|| line.get(0).equals("Case Rates Per 100,000 People in Colorado by County")
-						|| line.get(0).equals("Total Testing Rate Per 100,000 People in Colorado by County")
-						|| line.get(0).equals(
-								"Cases of COVID-19 Reported in Colorado by Age Group, Hospitalization, and Outcome")) {
-					// ignored?
-
-				} else {
+				} else if (!CsvLines.OLD.handle(snapshot, line)) {
+					snapshot.setIncomplete();
 					synchronized (oldCsvMissingLines) {
 						if (!oldCsvMissingLines.contains(line.get(0))) {
 							oldCsvMissingLines.add(line.get(0));
@@ -487,236 +308,15 @@ public class ColoradoStats extends DailyTracker {
 					}
 				}
 			}
-
-			System.out.println("Read " + fname);
-		} catch (IOException e1) {
-			System.out.println("Failed to read " + fname);
-			return false;
-		}
-		return true;
-	}
-
-	public static boolean fullyMatches(CSVRecord line, String... lineMatch) {
-		for (int i = 0; i < lineMatch.length; i++) {
-			if (!lineMatch[i].equals(line.get(i))) {
-				return false;
-			}
 		}
-		return true;
 	}
 
-	public boolean readNewCsv(int dayOfData) {
-		File f = null;
-		String fname = newCsvFileName(dayOfData);
-		f = new File(fname);
-
-		if (!f.exists()) {
-			return false;
-		}
+	private void readNewCsv(File f, CsvSnapshot snapshot) throws IOException {
+		int dayOfData = snapshot.getDayOfData();
 		try (CSVParser csv = CSVParser.parse(f, charset, CSVFormat.DEFAULT)) {
-			includeDay(dayOfData);
-
 			for (CSVRecord line : csv) {
-				int number;
-				String line0 = line.get(0);
-				String line1 = line.get(1);
-				String line2 = line.get(2);
-				String line3 = line.get(3);
-				String line4 = line.get(4);
-				try {
-					number = Integer.valueOf(line.get(5));
-				} catch (Exception e) {
-					number = 0;
-				}
-
-				if (line.get(0).equals("State Data") && line.get(1).equals("Colorado COVID-19 Data")
-						&& line.get(2).equals("Cumulative counts to date") && line.get(3).equals("NA")) {
-					if (line.get(4).equals("Cases")) {
-						getNumbers(NumbersType.CASES).setCumulativeNumbers(dayOfData, number);
-					} else if (line.get(4).equals("Hospitalized")) {
-						getNumbers(NumbersType.HOSPITALIZATIONS).setCumulativeNumbers(dayOfData, number);
-					} else if (line.get(4).equals("Deaths Due to COVID-19")) {
-						getNumbers(NumbersType.DEATHS).setCumulativeNumbers(dayOfData, number);
-						confirmedDeaths.setCumulativeNumbers(dayOfData, number);
-					} else if (line.get(4).equals("Test Encounters")) {
-						getNumbers(NumbersType.TESTS).setCumulativeNumbers(dayOfData, number);
-					} else if (line.get(4).equals("People Tested")) {
-						peopleTested.setCumulativeNumbers(dayOfData, number);
-					} else if (line.get(4).equals("Counties")) {
-					} else if (line.get(4).equals("Rate Per 100000") || line.get(2).equals("Rate per 100,000")) {
-						// uh, simple bug that the CSV reader ignores " escaping
-						// and so treats 100,000 as a separator
-					} else if (line.get(4).equals("Outbreaks") || line.get(4).equals("Confirmed cases")
-							|| line.get(4).equals("Percent of confirmed cases") || line.get(4).equals("Probable cases")
-							|| line.get(4).equals("Percent of probable cases")
-							|| line.get(4).equals("Confirmed deaths among cases")
-							|| line.get(4).equals("Percent of confirmed deaths among cases")
-							|| line.get(4).equals("Probable deaths among cases")
-							|| line.get(4).equals("Percent of probable deaths among cases")
-							|| line.get(4).equals("Deaths Among Cases") || line.get(4).equals("Deaths Among Cases")
-							|| line.get(4).equals("Confirmed cases")) {
-					} else {
-						write(CalendarUtils.dayToDate(dayOfData) + "???", line);
-						System.exit(1);
-					}
-				} else if (line0.equals("State Metrics")) {
-					// this is just new data and is ignored since we compare to
-					// old anyway
-				} else if (line0.equals("Case Summary")) {
-					if (line1.equals("Cases")) {
-						if (line2.equals("Cumulative COVID-19 Cases in Colorado by Week Reported to the State")) {
-							// ignore
-						} else if ((line2.equals("Cases of COVID-19 in Colorado by Date Reported to the State")
-								|| line2.equals("Cases of COVID-19 in Colorado by Date of Illness Onset"))
-								&& line4.equals("Counts")) {
-							// ignore
-						} else if (line2.equals("Cumulative COVID-19 Cases in Colorado by Date Reported to the State")
-								&& line4.equals("Cumulative")) {
-							int dayOfReporting = CalendarUtils.dateToDay(line3);
-							setFirstDayOfTiming(NumbersTiming.REPORTED, dayOfReporting);
-							int c = number;
-							getNumbers(NumbersType.CASES, NumbersTiming.REPORTED).setNumbers(dayOfData, dayOfReporting,
-									c);
-						} else if (line2.equals("Cumulative COVID-19 Cases in Colorado by Date of Illness Onset")
-								&& line4.equals("Cumulative")) {
-							int dayOfOnset = CalendarUtils.dateToDay(line3);
-							int dayOfInfection = dayOfOnset - 5;
-
-							setFirstDayOfTiming(NumbersTiming.ONSET, dayOfOnset);
-							setFirstDayOfTiming(NumbersTiming.INFECTION, dayOfInfection);
-
-							getNumbers(NumbersType.CASES, NumbersTiming.ONSET).setNumbers(dayOfData, dayOfOnset,
-									number);
-							getNumbers(NumbersType.CASES, NumbersTiming.INFECTION).setNumbers(dayOfData, dayOfInfection,
-									number);
-						} else if (line2
-								.equals("3-Day Average of COVID-19 Cases in Colorado by Date Reported to the State")
-								|| line2.equals(
-										"7-Day Average of COVID-19 Cases in Colorado by Date Reported to the State")
-								|| line2.equals("3-Day Average of COVID-19 Cases in Colorado by Date of Illness Onset")
-								|| line2.equals("7-Day Average of COVID-19 Cases in Colorado by Date of Illness Onset")
-								|| line2.equals("Cases of COVID-19 in Colorado by Week of Illness Onset")
-								|| line2.equals("Cumulative COVID-19 Cases in Colorado by Week of Illness Onset")
-								|| line2.equals("Cases of COVID-19 in Colorado by Week Reported to the State")) {
-							// ignore also
-						} else {
-							write(CalendarUtils.dayToDate(dayOfData) + " 2", line);
-							System.exit(1);
-						}
-					} else if (line1.equals("Deaths")) {
-						if (line2.equals("Deaths Among COVID-19 Cases in Colorado by Date of Death")
-								|| line2.equals(
-										"3-Day Average of Deaths Among COVID-19 Cases in Colorado by Date of Death")
-								|| line2.equals(
-										"7-Day Average of Deaths Among COVID-19 Cases in Colorado by Date of Death")
-								|| line2.equals("Deaths Among COVID-19 Cases in Colorado by Week of Death")
-								|| line2.equals(
-										"Cumulative Deaths Among COVID-19 Cases in Colorado by Week of Death")) {
-							// ignore
-						} else if (line2.equals("Cumulative Deaths Among COVID-19 Cases in Colorado by Date of Death")
-								&& line4.equals("Cumulative")) {
-							int dayOfDeath = CalendarUtils.dateToDay(line3);
-
-							setFirstDayOfTiming(NumbersTiming.DEATH, dayOfDeath);
-
-							getNumbers(NumbersType.DEATHS, NumbersTiming.DEATH).setNumbers(dayOfData, dayOfDeath,
-									number);
-							getNumbers(NumbersType.DEATHS, NumbersTiming.DEATH).setCumulative();
-						} else {
-							write(CalendarUtils.dayToDate(dayOfData) + " 5", line);
-							System.exit(1);
-						}
-					} else if (line1.equals("Maps")) {
-						if (line2.equals("Cases of COVID-19 in Colorado by County") && line3.equals("NA")) {
-							CountyStats county = readCounty(line4);
-							county.getCases().setCumulativeNumbers(dayOfData, number);
-						} else if (line2.equals("Deaths Among COVID-19 Cases in Colorado by County")
-								&& line3.equals("NA")) {
-							CountyStats county = readCounty(line4);
-							county.getDeaths().setCumulativeNumbers(dayOfData, number);
-						} else if (line2.equals("Case Rates Per 100,000 People in Colorado by County") || line2
-								.equals("Deaths Among COVID-19 Cases Rates Per 100,000 People in Colorado by County")) {
-							// ignore
-						} else {
-							write(CalendarUtils.dayToDate(dayOfData) + " 7", line);
-							System.exit(1);
-						}
-					} else {
-						write(CalendarUtils.dayToDate(dayOfData) + " 3", line);
-						System.exit(1);
-					}
-				} else if (line0.equals("Demographics")) {
-					// ignore
-				} else if (line0.equals("Tests")) {
-					if (line1.equals("Daily PCR Tests") || line1.equals("Daily Antibody Tests")
-							|| line1.equals("Daily Antibody Tests") || line1.equals("Weekly PCR Tests")
-							|| line1.equals("Weekly Antibody Tests")
-							|| line2.equals("Total COVID-19 Testing Rate per 100,000 People in Colorado by County")) {
-						// ignore
-					} else if (line2.equals("Total COVID-19 Tests Performed in Colorado by County")) {
-						// ignore for now but TODO
-					} else {
-						write(CalendarUtils.dayToDate(dayOfData) + " 47589374", line);
-						System.exit(1);
-					}
-					// ignore
-				} else if (line.get(0).equals(
-						"Cumulative Number of Hospitalized Cases of COVID-19 in Colorado by Date of Illness Onset")
-						|| line.get(0).equals("Cumulative Number of Hospitalizations by Onset Date")) {
-					int dayOfOnset = CalendarUtils.dateToDay(line.get(1));
-					int dayOfInfection = dayOfOnset - 5;
-					int c = Integer.valueOf(line.get(3));
-
-					setFirstDayOfTiming(NumbersTiming.ONSET, dayOfOnset);
-					setFirstDayOfTiming(NumbersTiming.INFECTION, dayOfInfection);
-
-					getNumbers(NumbersType.HOSPITALIZATIONS, NumbersTiming.ONSET).setCumulative();
-					getNumbers(NumbersType.HOSPITALIZATIONS, NumbersTiming.INFECTION).setCumulative();
-					getNumbers(NumbersType.HOSPITALIZATIONS, NumbersTiming.ONSET).setNumbers(dayOfData, dayOfOnset, c);
-					getNumbers(NumbersType.HOSPITALIZATIONS, NumbersTiming.INFECTION).setNumbers(dayOfData,
-							dayOfInfection, c);
-				} else if (line.get(0).equals("Cumulative Number of Deaths by Onset Date") || line.get(0)
-						.equals("Cumulative Number of Deaths From COVID-19 in Colorado by Date of Illness")) {
-					int dayOfOnset = CalendarUtils.dateToDay(line.get(1));
-					int dayOfInfection = dayOfOnset - 5;
-					int c = Integer.valueOf(line.get(3));
-
-					setFirstDayOfTiming(NumbersTiming.ONSET, dayOfOnset);
-					setFirstDayOfTiming(NumbersTiming.INFECTION, dayOfInfection);
-
-					getNumbers(NumbersType.DEATHS, NumbersTiming.ONSET).setCumulative();
-					getNumbers(NumbersType.DEATHS, NumbersTiming.INFECTION).setCumulative();
-					getNumbers(NumbersType.DEATHS, NumbersTiming.ONSET).setNumbers(dayOfData, dayOfOnset, c);
-					getNumbers(NumbersType.DEATHS, NumbersTiming.INFECTION).setNumbers(dayOfData, dayOfInfection, c);
-
-				} else if (line.get(0).equals(
-						"Cumulative Number of Hospitalized Cases of COVID-19 in Colorado by Date Reported to the State")
-						|| line.get(0).equals("Cumulative Number of Hospitalizations by Reported Date")) {
-					if (line.get(2).equals("Cases")) {
-						int dayOfReporting = CalendarUtils.dateToDay(line.get(1));
-						setFirstDayOfTiming(NumbersTiming.REPORTED, dayOfReporting);
-						int c = Integer.valueOf(line.get(3));
-						getNumbers(NumbersType.HOSPITALIZATIONS, NumbersTiming.REPORTED).setCumulative();
-						getNumbers(NumbersType.HOSPITALIZATIONS, NumbersTiming.REPORTED).setNumbers(dayOfData,
-								dayOfReporting, c);
-					} else {
-						write(null, line);
-					}
-				} else if (line.get(0)
-						.equals("Cumulative Number of Deaths From COVID-19 in Colorado by Date Reported to the State")
-						|| line.get(0).equals("Cumulative Number of Deaths by Reported Date")) {
-					if (line.get(2).equals("Cases")) {
-						int dayOfReporting = CalendarUtils.dateToDay(line.get(1));
-						setFirstDayOfTiming(NumbersTiming.REPORTED, dayOfReporting);
-						int c = Integer.valueOf(line.get(3));
-						getNumbers(NumbersType.DEATHS, NumbersTiming.REPORTED).setCumulative();
-						getNumbers(NumbersType.DEATHS, NumbersTiming.REPORTED).setNumbers(dayOfData, dayOfReporting, c);
-					} else {
-						write(null, line);
-					}
-				} else if (fullyMatches(line, "section", "category", "description", "date", "metric", "value")) {
-
-				} else {
+				if (!CsvLines.NEW.handle(snapshot, line)) {
+					snapshot.setIncomplete();
 					synchronized (newCsvMissingLines) {
 						if (!newCsvMissingLines.contains(line.get(0))) {
 							newCsvMissingLines.add(line.get(0));
@@ -726,25 +326,100 @@ public class ColoradoStats extends DailyTracker {
 					}
 				}
 			}
+		}
+	}
 
+	/**
+	 * Reads one CSV, from its snapshot if there is one and otherwise by
+	 * parsing it (and saving the snapshot for next time).
+	 * 
+	 * Nothing is done to the stats here, so any number of these can run at
+	 * once.
+	 * 
+	 * @return The snapshot, or null if the file doesn't exist or can't be
+	 *         read.
+	 */
+	private CsvSnapshot parseCsv(int dayOfData, String fname, boolean oldFormat) {
+		File f = new File(fname);
+
+		if (!f.exists()) {
+			return null;
+		}
+
+		CsvSnapshot snapshot = CsvSnapshot.read(f, dayOfData);
+		if (snapshot == null) {
+			snapshot = new CsvSnapshot(dayOfData);
+			try {
+				if (oldFormat) {
+					readOldCsv(f, snapshot);
+				} else {
+					readNewCsv(f, snapshot);
+				}
+			} catch (IOException e1) {
+				System.out.println("Failed to read " + fname);
+				return null;
+			}
+			snapshot.write(f);
 			System.out.println("Read " + fname);
-		} catch (IOException e1) {
-			System.out.println("Failed to read " + fname);
-			return false;
 		}
-		return true;
+		return snapshot;
+	}
+
+	private CsvSnapshot parseCsv(int dayOfData) {
+		CsvSnapshot snapshot = parseCsv(dayOfData, oldCsvFileName(dayOfData), true);
+		if (snapshot == null) {
+			snapshot = parseCsv(dayOfData, newCsvFileName(dayOfData), false);
+		}
+		return snapshot;
 	}
 
 	public void readCsv(int dayOfData) {
-		if (!readOldCsv(dayOfData)) {
-			readNewCsv(dayOfData);
+		CsvSnapshot snapshot = parseCsv(dayOfData);
+		if (snapshot != null) {
+			snapshot.apply(this);
+		}
+	}
+
+	/*
+	 * Days parsed or being parsed but not yet applied. Bounded so that parsing
+	 * can't get too far ahead of applying.
+	 */
+	private static final int PARSED_AHEAD = 2 * Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Reads every CSV from firstCSV through lastDay.
+	 * 
+	 * The CSVs are all parsed in parallel, but each parser only writes to its
+	 * own snapshot. The snapshots are taken by this thread as they finish, and
+	 * it's the only one that applies them. So nothing in the stats is ever
+	 * written by two threads at once, and none of the numbers' locks are
+	 * contended.
+	 * 
+	 * If any CSV can't be parsed, this throws rather than leave that day out.
+	 */
+	private void readCsvs(int lastDay) {
+		TaskGroup<CsvSnapshot> parse = new TaskGroup<>("CSVs", true);
+		int nextDay = lastDay;
+		while (true) {
+			while (nextDay >= firstCSV && parse.getUntaken() < PARSED_AHEAD) {
+				int dayOfData = nextDay--;
+				parse.submit(() -> parseCsv(dayOfData));
+			}
+			// null for days with no CSV too, so it's only done once they're all in
+			CsvSnapshot snapshot = parse.take();
+			if (snapshot != null) {
+				snapshot.apply(this);
+			} else if (nextDay < firstCSV) {
+				break;
+			}
 		}
+		parse.complete();
 	}
 
 	public void calculateReinfections() {
 		NumbersTiming timing = NumbersTiming.REPORTED;
 		NumbersType type = NumbersType.CASES;
-		IncompleteNumbers numbers = getNumbers(type, timing);
+		FrozenNumbers numbers = getFrozenNumbers(type, timing);
 
 		double POP = 5800000;
 		double cumulativeCases = 0;
@@ -763,26 +438,7 @@ public class ColoradoStats extends DailyTracker {
 		System.out.println("90 days ago: " + CalendarUtils.dayToDate(dayOfData - 90));
 	}
 
-	public ColoradoStats() {
-		for (NumbersType type : NumbersType.values()) {
-			setNumbers(type, new FinalNumbers(type));
-			for (NumbersTiming timing : NumbersTiming.values()) {
-				setNumbers(type, timing, new IncompleteNumbers(type, timing));
-			}
-		}
-
-		/*
-		 * Monolithic code to read all the CSVs into one big spaghetti
-		 * structure.
-		 */
-		int currentDay = CalendarUtils.timeToDay(System.currentTimeMillis()) + 1;
-		ASync<Void> async = new ASync<>();
-		for (int dayOfData = currentDay; dayOfData >= firstCSV; dayOfData--) {
-			int _dayOfData = dayOfData;
-			async.execute(() -> readCsv(_dayOfData));
-		}
-		async.complete();
-
+	private void checkMissingLines() {
 		if (oldCsvMissingLines.size() > 0) {
 			System.out.println("Missing lines of old CSV: " + oldCsvMissingLines.size());
 			for (String s : oldCsvMissingLines) {
@@ -797,6 +453,152 @@ public class ColoradoStats extends DailyTracker {
 			}
 			System.exit(1);
 		}
+	}
+
+	/**
+	 * Reads any CSVs newer than the last day of data and adds just those days
+	 * on to the already-built numbers. The older days are left as they are
+	 * (other than smoothing that has to reach back into them), so this takes
+	 * about the same time no matter how much data there is.
+	 * 
+	 * Charts that are already building keep the numbers they started with.
+	 * 
+	 * If this throws, some of the new days may have been added and others
+	 * not, so the stats shouldn't be used after that; build new ones instead.
+	 * 
+	 * @return The number of new days of data.
+	 */
+	public int update() {
+		return update(CalendarUtils.timeToDay(System.currentTimeMillis()) + 1);
+	}
+
+	/**
+	 * Same as update(), but only through lastDay.
+	 */
+	public synchronized int update(int lastDay) {
+		int fromDay = getLastDay() + 1;
+		for (int dayOfData = fromDay; dayOfData <= lastDay; dayOfData++) {
+			readCsv(dayOfData);
+		}
+		if (getLastDay() < fromDay) {
+			return 0;
+		}
+		checkMissingLines();
+
+		counties.forEach((name, county) -> county.buildNewDays(fromDay));
+		confirmedDeaths.smoothNewDays(fromDay);
+		peopleTested.smoothNewDays(fromDay);
+		for (FinalNumbers finals : finalNumbers) {
+			finals.smoothNewDays(fromDay);
+		}
+		getNumbers(NumbersType.TESTS).smoothFlatDays(getNumbers(NumbersType.CASES), fromDay);
+
+		TaskGroup<Void> async = new TaskGroup<>("Incompletes", true);
+		for (IncompleteNumbers incompletes : incompleteNumbers) {
+			async.execute(() -> incompletes.build());
+		}
+		async.complete();
+
+		System.out.println("Added " + CalendarUtils.dayToDate(fromDay) + " through "
+				+ CalendarUtils.dayToDate(getLastDay()) + ".");
+		return getLastDay() - fromDay + 1;
+	}
+
+	private static void check(boolean same, String what, int day) {
+		if (!same) {
+			throw new RuntimeException("Updated " + what + " doesn't match a full build on " + CalendarUtils.dayToDate(day)
+					+ ".");
+		}
+	}
+
+	private static void check(FinalNumbers updated, FinalNumbers full, String what) {
+		check(updated.getFirstDay() == full.getFirstDay(), what + " first day", full.getFirstDay());
+		check(updated.getLastDay() == full.getLastDay(), what + " last day", full.getLastDay());
+		for (int day = full.getFirstDay(); day <= full.getLastDay(); day++) {
+			check(updated.getCumulativeNumbers(day) == full.getCumulativeNumbers(day), what, day);
+		}
+	}
+
+	private static final Smoothing[] CHECK_SMOOTHING = { Smoothing.NONE, Smoothing.GEOMETRIC_SYMMETRIC_WEEKLY,
+			Smoothing.AVERAGE_7_DAY };
+
+	private static void check(FrozenNumbers updated, FrozenNumbers full) {
+		String what = full.getDescription();
+		check(updated.hasData() == full.hasData(), what, full.getLastDay());
+		if (!full.hasData()) {
+			return;
+		}
+		check(updated.getFirstDayOfType() == full.getFirstDayOfType(), what + " first day of type",
+				full.getFirstDayOfType());
+		check(updated.getFirstDayOfData().equals(full.getFirstDayOfData()), what + " first day",
+				full.getFirstDayOfData());
+		check(updated.getLastDay() == full.getLastDay(), what + " last day", full.getLastDay());
+		for (int dayOfData = full.getFirstDayOfData(); dayOfData <= full.getLastDay(); dayOfData++) {
+			check(updated.dayHasData(dayOfData) == full.dayHasData(dayOfData), what, dayOfData);
+			if (!full.dayHasData(dayOfData)) {
+				continue;
+			}
+			for (int dayOfType = full.getFirstDayOfType(); dayOfType <= dayOfData; dayOfType++) {
+				check(Objects.equals(updated.getBigR(dayOfData, dayOfType), full.getBigR(dayOfData, dayOfType)),
+						what + " R", dayOfData);
+				for (Smoothing smoothing : CHECK_SMOOTHING) {
+					check(updated.getNumbers(dayOfData, dayOfType, smoothing) == full.getNumbers(dayOfData,
+							dayOfType, smoothing), what + " " + smoothing.getDescription(), dayOfData);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Throws if any of these numbers, after update, aren't the same as a full
+	 * build through the same day. It's slow, since it takes the full build.
+	 */
+	public void checkUpdate(ColoradoStats full) {
+		check(getFirstDay() == full.getFirstDay() && getLastDay() == full.getLastDay(), "days of data",
+				full.getLastDay());
+		for (NumbersType type : NumbersType.values()) {
+			check(getNumbers(type), full.getNumbers(type), type.lowerName);
+			for (NumbersTiming timing : NumbersTiming.values()) {
+				check(getFrozenNumbers(type, timing), full.getFrozenNumbers(type, timing));
+			}
+		}
+		check(confirmedDeaths, full.confirmedDeaths, "confirmed deaths");
+		check(peopleTested, full.peopleTested, "people tested");
+		check(counties.keySet().equals(full.counties.keySet()), "counties", full.getLastDay());
+		counties.forEach((name, county) -> {
+			check(county.getCases(), full.counties.get(name).getCases(), name + " cases");
+			check(county.getDeaths(), full.counties.get(name).getDeaths(), name + " deaths");
+		});
+		System.out.println("Updated stats match a full build through " + CalendarUtils.dayToDate(getLastDay()) + ".");
+	}
+
+	/**
+	 * Reads and builds everything through today.
+	 */
+	public ColoradoStats() {
+		this(CalendarUtils.timeToDay(System.currentTimeMillis()) + 1);
+	}
+
+	/**
+	 * Reads and builds everything through lastDay. Later days can be added
+	 * with update.
+	 */
+	public ColoradoStats(int lastDay) {
+		for (NumbersType type : NumbersType.values()) {
+			setNumbers(type, new FinalNumbers(type));
+			for (NumbersTiming timing : NumbersTiming.values()) {
+				setNumbers(type, timing, new IncompleteNumbers(type, timing));
+			}
+		}
+
+		/*
+		 * Monolithic code to read all the CSVs into one big spaghetti
+		 * structure.
+		 */
+		readCsvs(lastDay);
+		TaskGroup<Void> async = new TaskGroup<>("Stats", true);
+
+		checkMissingLines();
 
 		long time = System.nanoTime();
 
@@ -902,10 +704,11 @@ public class ColoradoStats extends DailyTracker {
 			System.exit(0);
 		}
 
+		async.complete();
+
 		if (true) {
 			outputDailyStats();
 		}
-		async.complete();
 	}
 
 }
@@ -0,0 +1,177 @@
+package colorado;
+
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+
+import covid.CalendarUtils;
+import library.SlidingPercentiles;
+
+/**
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * -----
+ * 
+ * The bottom, median, and top percentiles of the completion ratios, for every
+ * lag and every window.
+ * 
+ * Within one chart each point has a different lag, but along one lag the
+ * window just slides forward a day at a time. So each lag is one pass with a
+ * SlidingPercentiles: add the day that enters the window, remove the one that
+ * leaves.
+ * 
+ * Windows either cover the "interval" days of type before the end day (not
+ * including it), or the last "interval" samples there are up to and including
+ * the end day.
+ * 
+ * Run with -DcheckBands=true to check every band against the old
+ * DescriptiveStatistics loop as it's built.
+ * 
+ * @author jdorje@gmail.com
+ */
+public class CompletionBands {
+
+	private static final boolean CHECK = Boolean.getBoolean("checkBands");
+
+	private final int firstDayOfType;
+	private final int[] rowStart;
+	private final int[] rowLength;
+	private final double[] bottom;
+	private final double[] median;
+	private final double[] top;
+
+	CompletionBands(CompletionRatios ratios, int interval, boolean bySamples) {
+		firstDayOfType = ratios.getFirstDayOfType();
+		int lags = ratios.getLags();
+		rowStart = new int[lags];
+		rowLength = new int[lags];
+		int size = 0;
+		for (int lag = 0; lag < lags; lag++) {
+			rowStart[lag] = size;
+			rowLength[lag] = ratios.getLastDayOfType(lag) - firstDayOfType + 1;
+			size += rowLength[lag];
+		}
+		bottom = new double[size];
+		median = new double[size];
+		top = new double[size];
+
+		SlidingPercentiles window = new SlidingPercentiles(interval);
+		double[] samples = new double[interval];
+		for (int lag = 0; lag < lags; lag++) {
+			window.clear();
+			int oldest = 0, count = 0;
+			for (int column = 0; column < rowLength[lag]; column++) {
+				int endDay = firstDayOfType + column;
+				if (bySamples) {
+					double value = ratios.getLogRatio(lag, endDay);
+					if (!Double.isNaN(value)) {
+						if (count == interval) {
+							window.remove(samples[oldest]);
+							samples[oldest] = value;
+							oldest = (oldest + 1) % interval;
+						} else {
+							samples[count++] = value;
+						}
+						window.add(value);
+					}
+				} else {
+					// out before in, or a full window has no room
+					double leaving = ratios.getLogRatio(lag, endDay - 1 - interval);
+					if (!Double.isNaN(leaving)) {
+						window.remove(leaving);
+					}
+					double entering = ratios.getLogRatio(lag, endDay - 1);
+					if (!Double.isNaN(entering)) {
+						window.add(entering);
+					}
+				}
+				int index = rowStart[lag] + column;
+				bottom[index] = window.getPercentile(AbstractChart.bottomRange);
+				median[index] = window.getPercentile(50);
+				top[index] = window.getPercentile(AbstractChart.topRange);
+			}
+		}
+
+		if (CHECK) {
+			check(ratios, interval, bySamples);
+		}
+	}
+
+	/*
+	 * Recomputes every band the old way, sorting the whole window each time,
+	 * and throws if any of them differ.
+	 */
+	private void check(CompletionRatios ratios, int interval, boolean bySamples) {
+		double[] samples = new double[Math.max(interval, rowLength.length == 0 ? 0 : rowLength[0])];
+		for (int lag = 0; lag < rowLength.length; lag++) {
+			for (int column = 0; column < rowLength[lag]; column++) {
+				int endDay = firstDayOfType + column;
+				DescriptiveStatistics statistics = new DescriptiveStatistics();
+				if (bySamples) {
+					int count = ratios.getLogRatios(lag, firstDayOfType, endDay + 1, samples);
+					for (int i = Math.max(count - interval, 0); i < count; i++) {
+						statistics.addValue(samples[i]);
+					}
+				} else {
+					int count = ratios.getLogRatios(lag, endDay - interval, endDay, samples);
+					for (int i = 0; i < count; i++) {
+						statistics.addValue(samples[i]);
+					}
+				}
+				if (Double.compare(statistics.getPercentile(AbstractChart.bottomRange), getBottom(lag, endDay)) != 0
+						|| Double.compare(statistics.getPercentile(50), getMedian(lag, endDay)) != 0
+						|| Double.compare(statistics.getPercentile(AbstractChart.topRange), getTop(lag, endDay)) != 0) {
+					throw new RuntimeException("Bands for lag " + lag + " ending " + CalendarUtils.dayToDate(endDay)
+							+ " don't match.");
+				}
+			}
+		}
+	}
+
+	private int index(int lag, int endDay) {
+		if (lag < 0 || lag >= rowStart.length) {
+			return -1;
+		}
+		int column = endDay - firstDayOfType;
+		if (column < 0 || column >= rowLength[lag]) {
+			return -1;
+		}
+		return rowStart[lag] + column;
+	}
+
+	private static double get(double[] band, int index) {
+		return index < 0 ? Double.NaN : band[index];
+	}
+
+	/**
+	 * @return The bottom percentile of the log-ratio, or NaN if there are no
+	 *         samples.
+	 */
+	public double getBottom(int lag, int endDay) {
+		return get(bottom, index(lag, endDay));
+	}
+
+	/**
+	 * @return The median log-ratio, or NaN if there are no samples.
+	 */
+	public double getMedian(int lag, int endDay) {
+		return get(median, index(lag, endDay));
+	}
+
+	/**
+	 * @return The top percentile of the log-ratio, or NaN if there are no
+	 *         samples.
+	 */
+	public double getTop(int lag, int endDay) {
+		return get(top, index(lag, endDay));
+	}
+}
@@ -0,0 +1,209 @@
+package colorado;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * -----
+ * 
+ * How much incomplete numbers have historically grown as they complete.
+ * 
+ * Every confidence interval on the incomplete charts comes from the same
+ * question: for a day of type that was "lag" days old in its day of data, how
+ * much had it grown "delay" days later? That's log(n2/n1) with
+ * 
+ * n1 = numbers(dayOfType + lag, dayOfType)
+ * 
+ * n2 = numbers(dayOfType + lag + delay, dayOfType)
+ * 
+ * and it doesn't depend on which day of data is being charted, only on the
+ * lag. So the whole table is computed once per numbers (and delay) and every
+ * chart, chart variant, and GIF frame reads from it.
+ * 
+ * The same thing works for R values, for the reproductive charts.
+ * 
+ * Like FrozenNumbers, this never changes after the constructor, other than
+ * the bands and relative ratios cached on it.
+ * 
+ * @author jdorje@gmail.com
+ */
+public class CompletionRatios {
+
+	private final int delay;
+	private final int firstDayOfType;
+	private final int lastDayOfData;
+
+	/*
+	 * Triangular again: for each lag there's a row running from firstDayOfType
+	 * through the last day of type that has a ratio, lastDayOfData - lag -
+	 * delay. NaN means there's no ratio for that day (no data, or a zero).
+	 */
+	private final int[] rowStart;
+	private final double[] logRatios;
+
+	private final Map<Integer, CompletionBands> bandsByDays = new ConcurrentHashMap<>();
+	private final Map<Integer, CompletionBands> bandsBySamples = new ConcurrentHashMap<>();
+	private final Map<CompletionRatios, CompletionRatios> relativeRatios = new ConcurrentHashMap<>();
+
+	CompletionRatios(FrozenNumbers numbers, int delay, boolean reproductive) {
+		this.delay = delay;
+		this.firstDayOfType = numbers.getFirstDayOfType();
+		this.lastDayOfData = numbers.getLastDay();
+
+		int lags = numbers.hasData() ? Math.max(lastDayOfData - delay - firstDayOfType + 1, 0) : 0;
+		rowStart = new int[lags + 1];
+		for (int lag = 0; lag < lags; lag++) {
+			rowStart[lag + 1] = rowStart[lag] + rowLength(lag);
+		}
+		logRatios = new double[rowStart[lags]];
+		Arrays.fill(logRatios, Double.NaN);
+
+		for (int lag = 0; lag < lags; lag++) {
+			for (int dayOfType = firstDayOfType; dayOfType < firstDayOfType + rowLength(lag); dayOfType++) {
+				int dayOfData1 = dayOfType + lag, dayOfData2 = dayOfData1 + delay;
+				if (!numbers.dayHasData(dayOfData1) || !numbers.dayHasData(dayOfData2)) {
+					continue;
+				}
+				double n1, n2;
+				if (reproductive) {
+					Double r1 = numbers.getBigR(dayOfData1, dayOfType);
+					Double r2 = numbers.getBigR(dayOfData2, dayOfType);
+					if (r1 == null || r2 == null) {
+						continue;
+					}
+					n1 = r1;
+					n2 = r2;
+				} else {
+					n1 = numbers.getNumbers(dayOfData1, dayOfType);
+					n2 = numbers.getNumbers(dayOfData2, dayOfType);
+				}
+				if (n1 == 0 || n2 == 0) {
+					continue;
+				}
+				logRatios[rowStart[lag] + dayOfType - firstDayOfType] = Math.log(n2 / n1);
+			}
+		}
+	}
+
+	/**
+	 * The ratios of one set of numbers relative to another's: log((n2/n1) /
+	 * (d2/d1)). This is how a rate grows as both halves of it complete.
+	 */
+	private CompletionRatios(CompletionRatios numerator, CompletionRatios denominator) {
+		if (numerator.delay != denominator.delay) {
+			throw new RuntimeException("Delays " + numerator.delay + " and " + denominator.delay + " don't match.");
+		}
+		this.delay = numerator.delay;
+		this.firstDayOfType = Math.max(numerator.firstDayOfType, denominator.firstDayOfType);
+		this.lastDayOfData = Math.min(numerator.lastDayOfData, denominator.lastDayOfData);
+
+		int lags = Math.max(Math.min(lastDayOfData - delay - firstDayOfType + 1,
+				Math.min(numerator.getLags(), denominator.getLags())), 0);
+		rowStart = new int[lags + 1];
+		for (int lag = 0; lag < lags; lag++) {
+			rowStart[lag + 1] = rowStart[lag] + rowLength(lag);
+		}
+		logRatios = new double[rowStart[lags]];
+
+		for (int lag = 0; lag < lags; lag++) {
+			for (int dayOfType = firstDayOfType; dayOfType < firstDayOfType + rowLength(lag); dayOfType++) {
+				// NaN in either one carries through
+				logRatios[rowStart[lag] + dayOfType - firstDayOfType] = numerator.getLogRatio(lag, dayOfType)
+						- denominator.getLogRatio(lag, dayOfType);
+			}
+		}
+	}
+
+	private int rowLength(int lag) {
+		return lastDayOfData - lag - delay - firstDayOfType + 1;
+	}
+
+	public int getDelay() {
+		return delay;
+	}
+
+	int getLags() {
+		return rowStart.length - 1;
+	}
+
+	int getFirstDayOfType() {
+		return firstDayOfType;
+	}
+
+	/**
+	 * @return The last day of type that can have a ratio at this lag.
+	 */
+	int getLastDayOfType(int lag) {
+		return firstDayOfType + rowLength(lag) - 1;
+	}
+
+	/**
+	 * @return These ratios relative to the denominator's, computed once and
+	 *         shared.
+	 */
+	public CompletionRatios getRelativeTo(CompletionRatios denominator) {
+		return relativeRatios.computeIfAbsent(denominator, d -> new CompletionRatios(this, d));
+	}
+
+	/**
+	 * @return Percentile bands over windows of the given number of days,
+	 *         computed once and shared.
+	 */
+	public CompletionBands getBandsByDays(int interval) {
+		return bandsByDays.computeIfAbsent(interval, i -> new CompletionBands(this, i, false));
+	}
+
+	/**
+	 * @return Percentile bands over windows of the given number of samples,
+	 *         computed once and shared.
+	 */
+	public CompletionBands getBandsBySamples(int interval) {
+		return bandsBySamples.computeIfAbsent(interval, i -> new CompletionBands(this, i, true));
+	}
+
+	/**
+	 * @return log(n2/n1) for this day of type, as described above, or NaN if
+	 *         there isn't one.
+	 */
+	public double getLogRatio(int lag, int dayOfType) {
+		if (lag < 0 || lag >= rowStart.length - 1) {
+			return Double.NaN;
+		}
+		int column = dayOfType - firstDayOfType;
+		if (column < 0 || column >= rowLength(lag)) {
+			return Double.NaN;
+		}
+		return logRatios[rowStart[lag] + column];
+	}
+
+	/**
+	 * Copies all the log-ratios that exist for the given lag and days of type
+	 * (from fromDayOfType up to but not including toDayOfType) into samples.
+	 * 
+	 * @return The number of samples copied.
+	 */
+	public int getLogRatios(int lag, int fromDayOfType, int toDayOfType, double[] samples) {
+		int count = 0;
+		for (int dayOfType = fromDayOfType; dayOfType < toDayOfType; dayOfType++) {
+			double logRatio = getLogRatio(lag, dayOfType);
+			if (!Double.isNaN(logRatio)) {
+				samples[count++] = logRatio;
+			}
+		}
+		return count;
+	}
+}
@@ -50,4 +50,12 @@ public class CountyStats {
 		cases.smooth();
 		deaths.smooth();
 	}
+
+	/**
+	 * Like build, but only for the new days from fromDay on.
+	 */
+	public void buildNewDays(int fromDay) {
+		cases.smoothNewDays(fromDay);
+		deaths.smoothNewDays(fromDay);
+	}
 }
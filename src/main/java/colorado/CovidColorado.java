@@ -23,6 +23,58 @@ import nwss.Nwss;
  */
 public class CovidColorado {
 
+	/*
+	 * With -Drefresh=<minutes>, old() doesn't exit once the charts are built.
+	 * It keeps the stats in memory and looks for a new day's CSV every so
+	 * often, adding just that day with ColoradoStats.update, which takes
+	 * seconds instead of reading and building everything again.
+	 */
+	private static final int REFRESH_MINUTES = Integer.getInteger("refresh", 0);
+
+	/*
+	 * With -DcheckUpdate=true, each update is checked against a full build
+	 * through the same day.
+	 */
+	private static final boolean CHECK_UPDATE = Boolean.getBoolean("checkUpdate");
+
+	private static void refresh(ColoradoStats built) {
+		ColoradoStats stats = built;
+		while (true) {
+			try {
+				Thread.sleep(TimeUnit.MINUTES.toMillis(REFRESH_MINUTES));
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+				return;
+			}
+
+			long time = System.currentTimeMillis();
+			try {
+				if (stats.update() == 0) {
+					continue;
+				}
+				System.out.println("Updated stats in " + (System.currentTimeMillis() - time) / 1000.0 + " s.");
+			} catch (RuntimeException e) {
+				/*
+				 * The new CSVs can't just be added on (e.g. they go back before
+				 * the first day of some type). They may have been partly added
+				 * before that was found, so the stats are thrown away and read
+				 * again from scratch.
+				 */
+				e.printStackTrace();
+				System.out.println("Couldn't update stats, rebuilding.");
+				stats = new ColoradoStats();
+				System.out.println("Read stats in " + (System.currentTimeMillis() - time) / 1000.0 + " s.");
+			}
+
+			if (CHECK_UPDATE) {
+				stats.checkUpdate(new ColoradoStats(stats.getLastDay()));
+			}
+
+			// charts whose numbers didn't change are skipped
+			new ChartMaker(stats).buildCharts();
+		}
+	}
+
 	public static void old(@SuppressWarnings("unused") String[] args) {
 		long time = System.currentTimeMillis();
 		ColoradoStats stats = new ColoradoStats();
@@ -32,6 +84,10 @@ public class CovidColorado {
 		ChartMaker charts = new ChartMaker(stats);
 		charts.buildCharts();
 
+		if (REFRESH_MINUTES > 0) {
+			refresh(stats);
+		}
+
 		MyExecutor.awaitTermination(1, TimeUnit.DAYS);
 		MyExecutor.shutdown();
 
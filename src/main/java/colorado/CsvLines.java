@@ -0,0 +1,468 @@
+package colorado;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.commons.csv.CSVRecord;
+
+import covid.CalendarUtils;
+
+/**
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * -----
+ * 
+ * What to do with each line of the state's CSVs.
+ * 
+ * Lines are looked up by their leading columns: for the old format that's the
+ * description, the category, and the metric (columns 0-2); for the new format
+ * it's section, category, description, and metric (columns 0, 1, 2, and 4).
+ * The full key is tried first, then with the last columns dropped one at a
+ * time, so a handler can cover every line of a section or category. A handler
+ * can also decline a line (e.g. when the date column isn't "NA"), and then the
+ * next shorter key is tried.
+ * 
+ * A line with no handler at all is a line we don't know about yet, and the
+ * caller reports it.
+ * 
+ * Supporting a new format is a matter of adding entries here.
+ * 
+ * @author jdorje@gmail.com
+ */
+public class CsvLines {
+
+	/**
+	 * Handles one line, recording whatever it says in the snapshot.
+	 */
+	private interface Action {
+		void apply(CsvSnapshot snapshot, CSVRecord line, int number);
+	}
+
+	/**
+	 * @return false if the line isn't handled after all.
+	 */
+	private interface Handler {
+		boolean handle(CsvSnapshot snapshot, CSVRecord line, int number);
+	}
+
+	private static final Action IGNORE = (snapshot, line, number) -> {
+	};
+
+	private final int[] keyColumns;
+	private final int numberColumn;
+	private final HashMap<List<String>, Handler> handlers = new HashMap<>();
+
+	private CsvLines(int numberColumn, int... keyColumns) {
+		this.numberColumn = numberColumn;
+		this.keyColumns = keyColumns;
+	}
+
+	private void putChecked(Handler handler, String... key) {
+		if (key.length > keyColumns.length) {
+			throw new RuntimeException("Too many columns in " + Arrays.toString(key));
+		}
+		List<String> fullKey = Arrays.asList(Arrays.copyOf(key, keyColumns.length));
+		if (handlers.put(fullKey, handler) != null) {
+			throw new RuntimeException("Duplicate CSV line " + fullKey);
+		}
+	}
+
+	private void put(Action action, String... key) {
+		putChecked((snapshot, line, number) -> {
+			action.apply(snapshot, line, number);
+			return true;
+		}, key);
+	}
+
+	/**
+	 * Every line starting with any of these in the first column.
+	 */
+	private void putAll(Action action, String... firstColumns) {
+		for (String firstColumn : firstColumns) {
+			put(action, firstColumn);
+		}
+	}
+
+	/**
+	 * @return false if nothing knows what to do with this line.
+	 */
+	public boolean handle(CsvSnapshot snapshot, CSVRecord line) {
+		int number;
+		try {
+			number = Integer.valueOf(line.get(numberColumn));
+		} catch (Exception e) {
+			number = 0;
+		}
+
+		String[] key = new String[keyColumns.length];
+		for (int i = 0; i < key.length; i++) {
+			key[i] = keyColumns[i] < line.size() ? line.get(keyColumns[i]) : null;
+		}
+		for (int length = key.length; length > 0; length--) {
+			Handler handler = handlers.get(Arrays.asList(key));
+			if (handler != null && handler.handle(snapshot, line, number)) {
+				return true;
+			}
+			key[length - 1] = null;
+		}
+		return false;
+	}
+
+	/*
+	 * Old format: description | date or category | metric | number
+	 */
+
+	private static void onsetCases(CsvSnapshot snapshot, CSVRecord line, int number) {
+		if (line.get(2).equals("Cases")) {
+			int dayOfOnset = CalendarUtils.dateToDay(line.get(1));
+			int dayOfInfection = dayOfOnset - 5;
+			int c = Integer.valueOf(line.get(3));
+
+			snapshot.setFirstDayOfTiming(NumbersTiming.ONSET, dayOfOnset);
+			snapshot.setFirstDayOfTiming(NumbersTiming.INFECTION, dayOfInfection);
+
+			snapshot.setNumbers(NumbersType.CASES, NumbersTiming.ONSET, dayOfOnset, c);
+			snapshot.setNumbers(NumbersType.CASES, NumbersTiming.INFECTION, dayOfInfection, c);
+		}
+	}
+
+	private static void onsetHospitalizations(CsvSnapshot snapshot, CSVRecord line, int number) {
+		int dayOfOnset = CalendarUtils.dateToDay(line.get(1));
+		int dayOfInfection = dayOfOnset - 5;
+		int c = Integer.valueOf(line.get(3));
+
+		snapshot.setFirstDayOfTiming(NumbersTiming.ONSET, dayOfOnset);
+		snapshot.setFirstDayOfTiming(NumbersTiming.INFECTION, dayOfInfection);
+
+		snapshot.setCumulative(NumbersType.HOSPITALIZATIONS, NumbersTiming.ONSET);
+		snapshot.setCumulative(NumbersType.HOSPITALIZATIONS, NumbersTiming.INFECTION);
+		snapshot.setNumbers(NumbersType.HOSPITALIZATIONS, NumbersTiming.ONSET, dayOfOnset, c);
+		snapshot.setNumbers(NumbersType.HOSPITALIZATIONS, NumbersTiming.INFECTION, dayOfInfection, c);
+	}
+
+	private static void onsetDeaths(CsvSnapshot snapshot, CSVRecord line, int number) {
+		int dayOfOnset = CalendarUtils.dateToDay(line.get(1));
+		int dayOfInfection = dayOfOnset - 5;
+		int c = Integer.valueOf(line.get(3));
+
+		snapshot.setFirstDayOfTiming(NumbersTiming.ONSET, dayOfOnset);
+		snapshot.setFirstDayOfTiming(NumbersTiming.INFECTION, dayOfInfection);
+
+		snapshot.setCumulative(NumbersType.DEATHS, NumbersTiming.ONSET);
+		snapshot.setCumulative(NumbersType.DEATHS, NumbersTiming.INFECTION);
+		snapshot.setNumbers(NumbersType.DEATHS, NumbersTiming.ONSET, dayOfOnset, c);
+		snapshot.setNumbers(NumbersType.DEATHS, NumbersTiming.INFECTION, dayOfInfection, c);
+	}
+
+	private static void deathDeaths(CsvSnapshot snapshot, CSVRecord line, int number) {
+		int dayOfDeath = CalendarUtils.dateToDay(line.get(1));
+		int c = Integer.valueOf(line.get(3));
+
+		snapshot.setFirstDayOfTiming(NumbersTiming.DEATH, dayOfDeath);
+
+		snapshot.setNumbers(NumbersType.DEATHS, NumbersTiming.DEATH, dayOfDeath, c);
+		snapshot.setCumulative(NumbersType.DEATHS, NumbersTiming.DEATH);
+	}
+
+	private static void reportedCases(CsvSnapshot snapshot, CSVRecord line, int number) {
+		if (line.get(2).equals("Cases")) {
+			int dayOfReporting = CalendarUtils.dateToDay(line.get(1));
+			snapshot.setFirstDayOfTiming(NumbersTiming.REPORTED, dayOfReporting);
+			int c = Integer.valueOf(line.get(3));
+			snapshot.setNumbers(NumbersType.CASES, NumbersTiming.REPORTED, dayOfReporting, c);
+		} else if (line.get(2).equals("Three-Day Moving Average Of Cases")) {
+			// redundant
+		} else {
+			bad(snapshot, line, null);
+		}
+	}
+
+	private static void reportedHospitalizations(CsvSnapshot snapshot, CSVRecord line, int number) {
+		if (line.get(2).equals("Cases")) {
+			int dayOfReporting = CalendarUtils.dateToDay(line.get(1));
+			snapshot.setFirstDayOfTiming(NumbersTiming.REPORTED, dayOfReporting);
+			int c = Integer.valueOf(line.get(3));
+			snapshot.setCumulative(NumbersType.HOSPITALIZATIONS, NumbersTiming.REPORTED);
+			snapshot.setNumbers(NumbersType.HOSPITALIZATIONS, NumbersTiming.REPORTED, dayOfReporting, c);
+		} else {
+			bad(snapshot, line, null);
+		}
+	}
+
+	private static void reportedDeaths(CsvSnapshot snapshot, CSVRecord line, int number) {
+		if (line.get(2).equals("Cases")) {
+			int dayOfReporting = CalendarUtils.dateToDay(line.get(1));
+			snapshot.setFirstDayOfTiming(NumbersTiming.REPORTED, dayOfReporting);
+			int c = Integer.valueOf(line.get(3));
+			snapshot.setCumulative(NumbersType.DEATHS, NumbersTiming.REPORTED);
+			snapshot.setNumbers(NumbersType.DEATHS, NumbersTiming.REPORTED, dayOfReporting, c);
+		} else {
+			bad(snapshot, line, null);
+		}
+	}
+
+	private static void add(CsvLines lines, Action action, String... firstColumns) {
+		lines.putAll(action, firstColumns);
+	}
+
+	/*
+	 * These old-format lines still show up in the new CSVs, at least for a
+	 * while.
+	 */
+	private static void addOldInNew(CsvLines lines) {
+		add(lines, CsvLines::onsetHospitalizations,
+				"Cumulative Number of Hospitalized Cases of COVID-19 in Colorado by Date of Illness Onset",
+				"Cumulative Number of Hospitalizations by Onset Date");
+		add(lines, CsvLines::onsetDeaths, "Cumulative Number of Deaths by Onset Date",
+				"Cumulative Number of Deaths From COVID-19 in Colorado by Date of Illness");
+		add(lines, CsvLines::reportedHospitalizations,
+				"Cumulative Number of Hospitalized Cases of COVID-19 in Colorado by Date Reported to the State",
+				"Cumulative Number of Hospitalizations by Reported Date");
+		add(lines, CsvLines::reportedDeaths,
+				"Cumulative Number of Deaths From COVID-19 in Colorado by Date Reported to the State",
+				"Cumulative Number of Deaths by Reported Date");
+	}
+
+	private static CsvLines buildOld() {
+		CsvLines lines = new CsvLines(3, 0, 1, 2);
+
+		String[] statewide = { "State Data", "Statewide" };
+		lines.put((snapshot, line, number) -> snapshot.setCumulativeNumbers(NumbersType.CASES, number), "State Data",
+				"Statewide", "Cases");
+		lines.put((snapshot, line, number) -> snapshot.setCumulativeNumbers(NumbersType.HOSPITALIZATIONS, number),
+				"State Data", "Statewide", "Hospitalizations");
+		lines.put((snapshot, line, number) -> {
+			// this was split up into deaths among cases (PUI) and deaths due to
+			// covid (confirmed). Before it was just deaths for both.
+			snapshot.setCumulativeNumbers(NumbersType.DEATHS, number);
+			snapshot.setConfirmedDeaths(number);
+		}, "State Data", "Statewide", "Deaths");
+		lines.put((snapshot, line, number) -> snapshot.setCumulativeNumbers(NumbersType.DEATHS, number), "State Data",
+				"Statewide", "Deaths Among Cases");
+		lines.put((snapshot, line, number) -> snapshot.setConfirmedDeaths(number), "State Data", "Statewide",
+				"Deaths Due to COVID-19");
+		lines.put((snapshot, line, number) -> snapshot.setCumulativeNumbers(NumbersType.TESTS, number), "State Data",
+				"Statewide", "Test Encounters");
+		lines.put((snapshot, line, number) -> snapshot.setPeopleTested(number), "State Data", "Statewide",
+				"People Tested");
+		lines.put(IGNORE, "State Data", "Statewide", "Counties");
+		// uh, simple bug that the CSV reader ignores " escaping and so treats
+		// 100,000 as a separator
+		lines.put(IGNORE, "State Data", "Statewide", "Rate Per 100000");
+		lines.put(IGNORE, "State Data", "Statewide", "Rate per 100,000");
+		lines.put(IGNORE, "State Data", "Statewide", "Outbreaks");
+		lines.put((snapshot, line, number) -> bad(snapshot, line,
+				CalendarUtils.dayToDate(snapshot.getDayOfData()) + "???"), statewide);
+
+		add(lines, CsvLines::onsetCases, "Case Counts by Onset Date",
+				"Cases of COVID-19 in Colorado by Date of Illness Onset");
+		add(lines, CsvLines::deathDeaths, "Cumulative Number of Deaths From COVID-19 in Colorado by Date of Death");
+		add(lines, CsvLines::reportedCases, "Cases of COVID-19 in Colorado by Date Reported to the State",
+				"Case Counts by Reported Date");
+		addOldInNew(lines);
+
+		add(lines, (snapshot, line, number) -> {
+			if (line.get(2).equals("Cases") && !line.get(1).contains("nknown")) {
+				Integer c = Integer.valueOf(line.get(3));
+				snapshot.setCountyCases(ColoradoStats.countyName(line.get(1)), c);
+			}
+		}, "Colorado Case Counts by County", "Case Counts by County");
+		add(lines, (snapshot, line, number) -> {
+			Integer c = Integer.valueOf(line.get(3));
+			snapshot.setCountyDeaths(ColoradoStats.countyName(line.get(1)), c);
+			snapshot.setFirstDayOfCumulative();
+		}, "Deaths", "Number of Deaths by County");
+
+		// ignored, TODO, or redundant
+		add(lines, IGNORE, "Daily Serology Data From Clinical Laboratories",
+				"Positivity Data from Clinical Laboratories", "Case Status for Cases & Deaths",
+				"COVID-19 in Colorado by Sex", "COVID-19 in Colorado by Race & Ethnicity",
+				"COVID-19 in Colorado by Age Group", "Case Counts by Age Group, Hospitalizations, and Deaths",
+				"Case Counts by Age Group, Hospitalizations", "Transmission Type", "Case Counts by Sex",
+				"Fatal cases by sex", "Cumulative Number of Cases by Onset Date",
+				"Cumulative Number of Cases by Reported Date",
+				"Cumulative Number of Cases of COVID-19 in Colorado by Date of Illness Onset",
+				"Cumulative Number of Cases of COVID-19 in Colorado by Date Reported to the State",
+				"Total COVID-19 Tests Performed in Colorado by County",
+				"Number of Deaths From COVID-19 in Colorado by Date of Death - By Day",
+				"Cases of COVID-19 Reported in Colorado by Age Group", "Case Counts by Age Group",
+				"Case Rates Per 100,000 People in Colorado by County",
+				"Total Testing Rate Per 100,000 People in Colorado by County",
+				"Cases of COVID-19 Reported in Colorado by Age Group, Hospitalization, and Outcome");
+		// any case of "NA"
+		add(lines, IGNORE, "NA", "Na", "nA", "na");
+
+		return lines;
+	}
+
+	/*
+	 * New format: section | category | description | date | metric | value
+	 */
+
+	/*
+	 * A line that's handled but not understood. It's reported, and the
+	 * snapshot isn't saved so it'll be reported again next run.
+	 */
+	private static void bad(CsvSnapshot snapshot, CSVRecord line, String lead) {
+		snapshot.setIncomplete();
+		ColoradoStats.write(lead, line);
+	}
+
+	private static void fail(CsvSnapshot snapshot, CSVRecord line, String lead) {
+		bad(snapshot, line, CalendarUtils.dayToDate(snapshot.getDayOfData()) + lead);
+		System.exit(1);
+	}
+
+	/**
+	 * The statewide totals, which only count when the date is "NA".
+	 */
+	private static void putStateData(CsvLines lines, Action action, String metric) {
+		lines.putChecked((snapshot, line, number) -> {
+			if (!line.get(3).equals("NA")) {
+				return false;
+			}
+			action.apply(snapshot, line, number);
+			return true;
+		}, "State Data", "Colorado COVID-19 Data", "Cumulative counts to date", metric);
+	}
+
+	private static CsvLines buildNew() {
+		CsvLines lines = new CsvLines(5, 0, 1, 2, 4);
+
+		putStateData(lines, (snapshot, line, number) -> snapshot.setCumulativeNumbers(NumbersType.CASES, number),
+				"Cases");
+		putStateData(lines,
+				(snapshot, line, number) -> snapshot.setCumulativeNumbers(NumbersType.HOSPITALIZATIONS, number),
+				"Hospitalized");
+		putStateData(lines, (snapshot, line, number) -> {
+			snapshot.setCumulativeNumbers(NumbersType.DEATHS, number);
+			snapshot.setConfirmedDeaths(number);
+		}, "Deaths Due to COVID-19");
+		putStateData(lines, (snapshot, line, number) -> snapshot.setCumulativeNumbers(NumbersType.TESTS, number),
+				"Test Encounters");
+		putStateData(lines, (snapshot, line, number) -> snapshot.setPeopleTested(number), "People Tested");
+		for (String metric : new String[] { "Counties", "Rate Per 100000", "Outbreaks", "Confirmed cases",
+				"Percent of confirmed cases", "Probable cases", "Percent of probable cases",
+				"Confirmed deaths among cases", "Percent of confirmed deaths among cases",
+				"Probable deaths among cases", "Percent of probable deaths among cases", "Deaths Among Cases" }) {
+			putStateData(lines, IGNORE, metric);
+		}
+		putStateData(lines, (snapshot, line, number) -> fail(snapshot, line, "???"), null);
+
+		// this is just new data and is ignored since we compare to old anyway
+		lines.put(IGNORE, "State Metrics");
+
+		String[] cases = { "Case Summary", "Cases" };
+		lines.put(IGNORE, "Case Summary", "Cases", "Cumulative COVID-19 Cases in Colorado by Week Reported to the State");
+		lines.put(IGNORE, "Case Summary", "Cases", "Cases of COVID-19 in Colorado by Date Reported to the State",
+				"Counts");
+		lines.put(IGNORE, "Case Summary", "Cases", "Cases of COVID-19 in Colorado by Date of Illness Onset", "Counts");
+		lines.put((snapshot, line, number) -> {
+			int dayOfReporting = CalendarUtils.dateToDay(line.get(3));
+			snapshot.setFirstDayOfTiming(NumbersTiming.REPORTED, dayOfReporting);
+			snapshot.setNumbers(NumbersType.CASES, NumbersTiming.REPORTED, dayOfReporting, number);
+		}, "Case Summary", "Cases", "Cumulative COVID-19 Cases in Colorado by Date Reported to the State",
+				"Cumulative");
+		lines.put((snapshot, line, number) -> {
+			int dayOfOnset = CalendarUtils.dateToDay(line.get(3));
+			int dayOfInfection = dayOfOnset - 5;
+
+			snapshot.setFirstDayOfTiming(NumbersTiming.ONSET, dayOfOnset);
+			snapshot.setFirstDayOfTiming(NumbersTiming.INFECTION, dayOfInfection);
+
+			snapshot.setNumbers(NumbersType.CASES, NumbersTiming.ONSET, dayOfOnset, number);
+			snapshot.setNumbers(NumbersType.CASES, NumbersTiming.INFECTION, dayOfInfection, number);
+		}, "Case Summary", "Cases", "Cumulative COVID-19 Cases in Colorado by Date of Illness Onset", "Cumulative");
+		for (String description : new String[] {
+				"3-Day Average of COVID-19 Cases in Colorado by Date Reported to the State",
+				"7-Day Average of COVID-19 Cases in Colorado by Date Reported to the State",
+				"3-Day Average of COVID-19 Cases in Colorado by Date of Illness Onset",
+				"7-Day Average of COVID-19 Cases in Colorado by Date of Illness Onset",
+				"Cases of COVID-19 in Colorado by Week of Illness Onset",
+				"Cumulative COVID-19 Cases in Colorado by Week of Illness Onset",
+				"Cases of COVID-19 in Colorado by Week Reported to the State" }) {
+			lines.put(IGNORE, "Case Summary", "Cases", description);
+		}
+		lines.put((snapshot, line, number) -> fail(snapshot, line, " 2"), cases);
+
+		String[] deaths = { "Case Summary", "Deaths" };
+		for (String description : new String[] { "Deaths Among COVID-19 Cases in Colorado by Date of Death",
+				"3-Day Average of Deaths Among COVID-19 Cases in Colorado by Date of Death",
+				"7-Day Average of Deaths Among COVID-19 Cases in Colorado by Date of Death",
+				"Deaths Among COVID-19 Cases in Colorado by Week of Death",
+				"Cumulative Deaths Among COVID-19 Cases in Colorado by Week of Death" }) {
+			lines.put(IGNORE, "Case Summary", "Deaths", description);
+		}
+		lines.put((snapshot, line, number) -> {
+			int dayOfDeath = CalendarUtils.dateToDay(line.get(3));
+
+			snapshot.setFirstDayOfTiming(NumbersTiming.DEATH, dayOfDeath);
+
+			snapshot.setNumbers(NumbersType.DEATHS, NumbersTiming.DEATH, dayOfDeath, number);
+			snapshot.setCumulative(NumbersType.DEATHS, NumbersTiming.DEATH);
+		}, "Case Summary", "Deaths", "Cumulative Deaths Among COVID-19 Cases in Colorado by Date of Death",
+				"Cumulative");
+		lines.put((snapshot, line, number) -> fail(snapshot, line, " 5"), deaths);
+
+		String[] maps = { "Case Summary", "Maps" };
+		lines.putChecked((snapshot, line, number) -> {
+			if (!line.get(3).equals("NA")) {
+				return false;
+			}
+			snapshot.setCountyCases(ColoradoStats.countyName(line.get(4)), number);
+			return true;
+		}, "Case Summary", "Maps", "Cases of COVID-19 in Colorado by County");
+		lines.putChecked((snapshot, line, number) -> {
+			if (!line.get(3).equals("NA")) {
+				return false;
+			}
+			snapshot.setCountyDeaths(ColoradoStats.countyName(line.get(4)), number);
+			return true;
+		}, "Case Summary", "Maps", "Deaths Among COVID-19 Cases in Colorado by County");
+		lines.put(IGNORE, "Case Summary", "Maps", "Case Rates Per 100,000 People in Colorado by County");
+		lines.put(IGNORE, "Case Summary", "Maps",
+				"Deaths Among COVID-19 Cases Rates Per 100,000 People in Colorado by County");
+		lines.put((snapshot, line, number) -> fail(snapshot, line, " 7"), maps);
+
+		lines.put((snapshot, line, number) -> fail(snapshot, line, " 3"), "Case Summary");
+
+		lines.put(IGNORE, "Demographics");
+
+		for (String category : new String[] { "Daily PCR Tests", "Daily Antibody Tests", "Weekly PCR Tests",
+				"Weekly Antibody Tests" }) {
+			lines.put(IGNORE, "Tests", category);
+		}
+		lines.put((snapshot, line, number) -> {
+			if (line.get(2).equals("Total COVID-19 Testing Rate per 100,000 People in Colorado by County")) {
+				// ignore
+			} else if (line.get(2).equals("Total COVID-19 Tests Performed in Colorado by County")) {
+				// ignore for now but TODO
+			} else {
+				fail(snapshot, line, " 47589374");
+			}
+		}, "Tests");
+
+		addOldInNew(lines);
+
+		// the header
+		lines.putChecked((snapshot, line, number) -> line.get(3).equals("date") && line.get(5).equals("value"), "section",
+				"category", "description", "metric");
+
+		return lines;
+	}
+
+	public static final CsvLines OLD = buildOld();
+	public static final CsvLines NEW = buildNew();
+}
@@ -0,0 +1,293 @@
+package colorado;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * -----
+ * 
+ * Everything one day's CSV says to do to the stats, already picked out of the
+ * text.
+ * 
+ * Parsing a CSV records into one of these, then it's applied to the stats.
+ * It's also saved as a small binary file next to the CSVs, so the next run can
+ * just load and apply it. The CSVs never change once published, but the file
+ * name, size, and modified time are all checked anyway, and any mismatch (or
+ * any problem reading the snapshot) just means the CSV is parsed again.
+ * 
+ * If the parsing code changes what it takes from a CSV, bump VERSION so all
+ * the old snapshots are thrown out.
+ * 
+ * @author jdorje@gmail.com
+ */
+public class CsvSnapshot {
+
+	// 2: CSVs with lines that weren't understood aren't saved
+	private static final int VERSION = 2;
+
+	private static final String SNAPSHOT_FOLDER = "C:\\Users\\jdorj\\Downloads\\CovidColoradoCSV\\snapshots";
+
+	private static final byte SET_NUMBERS = 1;
+	private static final byte SET_CUMULATIVE = 2;
+	private static final byte SET_CUMULATIVE_NUMBERS = 3;
+	private static final byte SET_CONFIRMED_DEATHS = 4;
+	private static final byte SET_PEOPLE_TESTED = 5;
+	private static final byte SET_COUNTY_CASES = 6;
+	private static final byte SET_COUNTY_DEATHS = 7;
+	private static final byte SET_FIRST_DAY_OF_TIMING = 8;
+	private static final byte SET_FIRST_DAY_OF_CUMULATIVE = 9;
+
+	private final int dayOfData;
+	private final ByteArrayOutputStream bytes;
+	private final DataOutputStream out;
+
+	/*
+	 * Set if anything in the CSV couldn't be handled, in which case this isn't
+	 * saved, so the problem gets reported again next time.
+	 */
+	private boolean incomplete = false;
+
+	public CsvSnapshot(int dayOfData) {
+		this.dayOfData = dayOfData;
+		bytes = new ByteArrayOutputStream();
+		out = new DataOutputStream(bytes);
+	}
+
+	private CsvSnapshot(int dayOfData, byte[] data) {
+		this(dayOfData);
+		bytes.write(data, 0, data.length);
+	}
+
+	public int getDayOfData() {
+		return dayOfData;
+	}
+
+	/*
+	 * A DataOutputStream over a ByteArrayOutputStream can't actually throw, so
+	 * all the recording methods turn that into a RuntimeException.
+	 */
+	private interface Record {
+		void run() throws IOException;
+	}
+
+	private synchronized void record(Record record) {
+		try {
+			record.run();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public void setNumbers(NumbersType type, NumbersTiming timing, int dayOfType, int numbers) {
+		record(() -> {
+			out.writeByte(SET_NUMBERS);
+			out.writeByte(type.ordinal());
+			out.writeByte(timing.ordinal());
+			out.writeInt(dayOfType);
+			out.writeInt(numbers);
+		});
+	}
+
+	public void setCumulative(NumbersType type, NumbersTiming timing) {
+		record(() -> {
+			out.writeByte(SET_CUMULATIVE);
+			out.writeByte(type.ordinal());
+			out.writeByte(timing.ordinal());
+		});
+	}
+
+	public void setCumulativeNumbers(NumbersType type, int numbers) {
+		record(() -> {
+			out.writeByte(SET_CUMULATIVE_NUMBERS);
+			out.writeByte(type.ordinal());
+			out.writeInt(numbers);
+		});
+	}
+
+	public void setConfirmedDeaths(int numbers) {
+		record(() -> {
+			out.writeByte(SET_CONFIRMED_DEATHS);
+			out.writeInt(numbers);
+		});
+	}
+
+	public void setPeopleTested(int numbers) {
+		record(() -> {
+			out.writeByte(SET_PEOPLE_TESTED);
+			out.writeInt(numbers);
+		});
+	}
+
+	public void setCountyCases(String countyName, int numbers) {
+		record(() -> {
+			out.writeByte(SET_COUNTY_CASES);
+			out.writeUTF(countyName);
+			out.writeInt(numbers);
+		});
+	}
+
+	public void setCountyDeaths(String countyName, int numbers) {
+		record(() -> {
+			out.writeByte(SET_COUNTY_DEATHS);
+			out.writeUTF(countyName);
+			out.writeInt(numbers);
+		});
+	}
+
+	public void setFirstDayOfTiming(NumbersTiming timing, int day) {
+		record(() -> {
+			out.writeByte(SET_FIRST_DAY_OF_TIMING);
+			out.writeByte(timing.ordinal());
+			out.writeInt(day);
+		});
+	}
+
+	public void setFirstDayOfCumulative() {
+		record(() -> out.writeByte(SET_FIRST_DAY_OF_CUMULATIVE));
+	}
+
+	public synchronized void setIncomplete() {
+		incomplete = true;
+	}
+
+	/**
+	 * Does everything that was recorded, in the same order, to the stats.
+	 */
+	public void apply(ColoradoStats stats) {
+		byte[] data;
+		synchronized (this) {
+			data = bytes.toByteArray();
+		}
+		stats.includeDay(dayOfData);
+
+		NumbersType[] types = NumbersType.values();
+		NumbersTiming[] timings = NumbersTiming.values();
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+			while (in.available() > 0) {
+				byte op = in.readByte();
+				switch (op) {
+				case SET_NUMBERS: {
+					NumbersType type = types[in.readByte()];
+					NumbersTiming timing = timings[in.readByte()];
+					int dayOfType = in.readInt();
+					stats.getNumbers(type, timing).setNumbers(dayOfData, dayOfType, in.readInt());
+					break;
+				}
+				case SET_CUMULATIVE: {
+					NumbersType type = types[in.readByte()];
+					stats.getNumbers(type, timings[in.readByte()]).setCumulative();
+					break;
+				}
+				case SET_CUMULATIVE_NUMBERS:
+					stats.getNumbers(types[in.readByte()]).setCumulativeNumbers(dayOfData, in.readInt());
+					break;
+				case SET_CONFIRMED_DEATHS:
+					stats.confirmedDeaths.setCumulativeNumbers(dayOfData, in.readInt());
+					break;
+				case SET_PEOPLE_TESTED:
+					stats.peopleTested.setCumulativeNumbers(dayOfData, in.readInt());
+					break;
+				case SET_COUNTY_CASES: {
+					CountyStats county = stats.getCountyStats(in.readUTF());
+					county.getCases().setCumulativeNumbers(dayOfData, in.readInt());
+					break;
+				}
+				case SET_COUNTY_DEATHS: {
+					CountyStats county = stats.getCountyStats(in.readUTF());
+					county.getDeaths().setCumulativeNumbers(dayOfData, in.readInt());
+					break;
+				}
+				case SET_FIRST_DAY_OF_TIMING: {
+					NumbersTiming timing = timings[in.readByte()];
+					stats.setFirstDayOfTiming(timing, in.readInt());
+					break;
+				}
+				case SET_FIRST_DAY_OF_CUMULATIVE:
+					stats.setFirstDayOfCumulative(dayOfData);
+					break;
+				default:
+					throw new RuntimeException("Unknown snapshot op " + op + " for day " + dayOfData);
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static File snapshotFile(File csv) {
+		return new File(SNAPSHOT_FOLDER, csv.getName() + ".snap");
+	}
+
+	/**
+	 * Saves the snapshot for the given CSV, unless it's incomplete. Failing to
+	 * save isn't fatal; the CSV will just be parsed again next time.
+	 */
+	public void write(File csv) {
+		byte[] data;
+		synchronized (this) {
+			if (incomplete) {
+				return;
+			}
+			data = bytes.toByteArray();
+		}
+		File file = snapshotFile(csv);
+		new File(SNAPSHOT_FOLDER).mkdirs();
+		try (DataOutputStream fileOut = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)))) {
+			fileOut.writeInt(VERSION);
+			fileOut.writeUTF(csv.getName());
+			fileOut.writeLong(csv.length());
+			fileOut.writeLong(csv.lastModified());
+			fileOut.writeInt(dayOfData);
+			fileOut.writeInt(data.length);
+			fileOut.write(data);
+		} catch (IOException e) {
+			e.printStackTrace();
+			file.delete();
+		}
+	}
+
+	/**
+	 * @return The saved snapshot for the given CSV, or null if there isn't an
+	 *         up-to-date one.
+	 */
+	public static CsvSnapshot read(File csv, int dayOfData) {
+		File file = snapshotFile(csv);
+		if (!file.exists()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != VERSION || !in.readUTF().equals(csv.getName()) || in.readLong() != csv.length()
+					|| in.readLong() != csv.lastModified() || in.readInt() != dayOfData) {
+				return null;
+			}
+			byte[] data = new byte[in.readInt()];
+			in.readFully(data);
+			return new CsvSnapshot(dayOfData, data);
+		} catch (IOException e) {
+			System.out.println("Failed to read snapshot " + file.getName() + ", reading the CSV instead.");
+			return null;
+		}
+	}
+}
@@ -74,7 +74,7 @@ public class DailyAgeChart extends AbstractChart {
 		boolean usePercentages = types.size() > 1;
 
 		for (NumbersType type : types) {
-			IncompleteNumbers numbers = stats.getNumbers(type, timing);
+			FrozenNumbers numbers = stats.getFrozenNumbers(type, timing);
 
 			if (!numbers.dayHasData(dayOfData)) {
 				continue;
@@ -151,7 +151,7 @@ public class DailyAgeChart extends AbstractChart {
 	@Override
 	public boolean hasData() {
 		for (NumbersType type : types) {
-			IncompleteNumbers n = stats.getNumbers(type, timing);
+			FrozenNumbers n = stats.getFrozenNumbers(type, timing);
 			if (n.hasData()) {
 				return true;
 			}
@@ -162,7 +162,7 @@ public class DailyAgeChart extends AbstractChart {
 	@Override
 	public boolean dayHasData(int dayOfData) {
 		for (NumbersType type : types) {
-			IncompleteNumbers n = stats.getNumbers(type, timing);
+			FrozenNumbers n = stats.getFrozenNumbers(type, timing);
 			if (n.dayHasData(dayOfData)) {
 				return true;
 			}
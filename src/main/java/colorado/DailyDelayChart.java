@@ -60,7 +60,7 @@ public class DailyDelayChart extends AbstractChart {
 		XYSeriesCollection collection = new XYSeriesCollection();
 
 		for (NumbersType type : types) {
-			IncompleteNumbers numbers = stats.getNumbers(type, timing);
+			FrozenNumbers numbers = stats.getFrozenNumbers(type, timing);
 			XYSeries series = new XYSeries(type.capName);
 
 			for (Integer dayOfData = dayOfType; dayOfData != null
@@ -120,7 +120,7 @@ public class DailyDelayChart extends AbstractChart {
 	@Override
 	public boolean hasData() {
 		for (NumbersType type : types) {
-			IncompleteNumbers n = stats.getNumbers(type, timing);
+			FrozenNumbers n = stats.getFrozenNumbers(type, timing);
 			if (n.hasData()) {
 				return true;
 			}
@@ -131,7 +131,7 @@ public class DailyDelayChart extends AbstractChart {
 	@Override
 	public boolean dayHasData(int dayOfData) {
 		for (NumbersType type : types) {
-			IncompleteNumbers n = stats.getNumbers(type, timing);
+			FrozenNumbers n = stats.getFrozenNumbers(type, timing);
 			if (n.hasData()) {
 				return true;
 			}
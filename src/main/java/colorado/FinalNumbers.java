@@ -1,9 +1,8 @@
 package colorado;
 
-import java.util.HashMap;
-
-import org.jfree.data.time.TimeSeries;
+import java.util.Arrays;
 
+import charts.ArrayDataset;
 import covid.CalendarUtils;
 
 /**
@@ -32,9 +31,23 @@ import covid.CalendarUtils;
  */
 public class FinalNumbers extends Numbers {
 
-	private final HashMap<Integer, Double> cumulative = new HashMap<>();
+	/*
+	 * Cumulative numbers by day, with cumulative[0] being baseDay. Days with
+	 * no numbers (yet) are NaN. The array grows in either direction as days
+	 * are set, with room to spare so it isn't copied for every new day.
+	 */
+	private double[] cumulative = new double[0];
+	private int baseDay = 0;
 	private int firstDay = Integer.MAX_VALUE, lastDay = Integer.MIN_VALUE;
 
+	/*
+	 * Running sums of log(max(daily, 1)) from firstDay, so any geometric
+	 * average is one subtraction: logPrefix[i] covers the days before
+	 * firstDay + i. Built when first needed and thrown out whenever the
+	 * numbers change.
+	 */
+	private double[] logPrefix = null;
+
 	public FinalNumbers(NumbersType type) {
 		super(type);
 	}
@@ -51,6 +64,34 @@ public class FinalNumbers extends Numbers {
 		return lastDay >= firstDay;
 	}
 
+	/*
+	 * The stored number for the day, or NaN if there isn't one.
+	 */
+	private double get(int day) {
+		int index = day - baseDay;
+		if (index < 0 || index >= cumulative.length) {
+			return Double.NaN;
+		}
+		return cumulative[index];
+	}
+
+	private void put(int day, double numbers) {
+		int index = day - baseDay;
+		if (index < 0 || index >= cumulative.length) {
+			int length = cumulative.length;
+			int newBaseDay = index < 0 ? day - length : baseDay;
+			int newEndDay = index >= length ? day + length + 1 : baseDay + length;
+			double[] newCumulative = new double[newEndDay - newBaseDay];
+			Arrays.fill(newCumulative, Double.NaN);
+			System.arraycopy(cumulative, 0, newCumulative, baseDay - newBaseDay, length);
+			cumulative = newCumulative;
+			baseDay = newBaseDay;
+			index = day - baseDay;
+		}
+		cumulative[index] = numbers;
+		logPrefix = null;
+	}
+
 	public synchronized double getNumbersInInterval(int day, int interval) {
 		return getCumulativeNumbers(day) - getCumulativeNumbers(day - interval);
 	}
@@ -59,6 +100,30 @@ public class FinalNumbers extends Numbers {
 		return getNumbersInInterval(day, 1);
 	}
 
+	private void buildLogPrefix() {
+		logPrefix = new double[lastDay - firstDay + 2];
+		double previous = 0;
+		for (int day = firstDay; day <= lastDay; day++) {
+			double numbers = getCumulativeNumbers(day);
+			logPrefix[day - firstDay + 1] = logPrefix[day - firstDay] + Math.log(Math.max(numbers - previous, 1.0));
+			previous = numbers;
+		}
+	}
+
+	/*
+	 * Sum of log(max(daily, 1)) for the days before the given one. Days
+	 * outside the data have no daily numbers, so they add nothing.
+	 */
+	private double getLogPrefix(int day) {
+		if (day <= firstDay) {
+			return 0;
+		}
+		if (day > lastDay) {
+			day = lastDay + 1;
+		}
+		return logPrefix[day - firstDay];
+	}
+
 	public synchronized double getNumbers(int day, Smoothing smoothing) {
 
 		int lastDayOfCalc;
@@ -83,11 +148,14 @@ public class FinalNumbers extends Numbers {
 		case TOTAL:
 			return getNumbersInInterval(lastDayOfCalc, smoothing.getDays());
 		case GEOMETRIC_AVERAGE:
-			double product = 1.0;
-			for (int d = lastDayOfCalc - smoothing.getDays() + 1; d <= lastDayOfCalc; d++) {
-				product *= Math.max(getDailyNumbers(d), 1.0);
+			if (!hasData()) {
+				return 1.0;
 			}
-			product = Math.pow(product, 1.0 / smoothing.getDays());
+			if (logPrefix == null) {
+				buildLogPrefix();
+			}
+			double logSum = getLogPrefix(lastDayOfCalc + 1) - getLogPrefix(lastDayOfCalc - smoothing.getDays() + 1);
+			double product = Math.exp(logSum / smoothing.getDays());
 			if (!Double.isFinite(product)) {
 				throw new RuntimeException("Uh oh: " + product);
 			}
@@ -105,11 +173,9 @@ public class FinalNumbers extends Numbers {
 		if (day > lastDay) {
 			day = lastDay;
 		}
-		Double numbersForDay = cumulative.get(day);
-		if (numbersForDay == null) {
-			new Exception("Uh oh: null day! On " + day + " + versus " + firstDay + "-" + lastDay).printStackTrace();
-			System.exit(1);
-			return 0;
+		double numbersForDay = get(day);
+		if (Double.isNaN(numbersForDay)) {
+			throw new RuntimeException("Uh oh: null day! On " + day + " + versus " + firstDay + "-" + lastDay);
 		}
 		return numbersForDay;
 	}
@@ -117,10 +183,10 @@ public class FinalNumbers extends Numbers {
 	public synchronized void setCumulativeNumbers(int day, double numbersForDay) {
 		firstDay = Math.min(firstDay, day);
 		lastDay = Math.max(lastDay, day);
-		cumulative.put(day, numbersForDay);
+		put(day, numbersForDay);
 	}
 
-	public synchronized void makeTimeSeries(TimeSeries series, Smoothing smoothing, boolean isLogarithmic) {
+	public synchronized void makeTimeSeries(ArrayDataset.Series series, Smoothing smoothing, boolean isLogarithmic) {
 		for (int day = getFirstDay(); day <= getLastDay(); day++) {
 			double numbers = getNumbers(day, smoothing);
 
@@ -128,7 +194,7 @@ public class FinalNumbers extends Numbers {
 				throw new RuntimeException("Uh oh.");
 			}
 			if (!isLogarithmic || numbers > 0) {
-				series.add(CalendarUtils.dayToDay(day), numbers);
+				series.addDay(day, numbers);
 			}
 		}
 	}
@@ -140,20 +206,24 @@ public class FinalNumbers extends Numbers {
 	 * We fill those in with the values from the previous day.
 	 */
 	public synchronized void smoothNulls() {
-		if (!hasData()) {
+		smoothNulls(firstDay + 1);
+	}
+
+	private void smoothNulls(int fromDay) {
+		if (!hasData() || fromDay > lastDay) {
 			return;
 		}
-		double min = cumulative.get(firstDay);
+		int from = fromDay - baseDay, to = lastDay - baseDay;
+		double min = cumulative[from - 1];
 
-		for (int day = firstDay + 1; day <= lastDay; day++) {
-			Double number = cumulative.get(day);
-
-			if (number == null) {
-				cumulative.put(day, min);
+		for (int i = from; i <= to; i++) {
+			if (Double.isNaN(cumulative[i])) {
+				cumulative[i] = min;
 			} else {
-				min = number;
+				min = cumulative[i];
 			}
 		}
+		logPrefix = null;
 	}
 
 	/**
@@ -169,20 +239,32 @@ public class FinalNumbers extends Numbers {
 	 * Nulls must be smoothed first.
 	 */
 	public synchronized void smoothDrops() {
+		smoothDrops(firstDay);
+	}
+
+	/*
+	 * Days before fromDay are already smoothed, so once we're back past it and
+	 * hit a value that doesn't need dropping, nothing earlier will either.
+	 */
+	private void smoothDrops(int fromDay) {
 		if (!hasData()) {
 			return;
 		}
-		double max = cumulative.get(lastDay);
+		int first = firstDay - baseDay, from = fromDay - baseDay;
+		double max = cumulative[lastDay - baseDay];
 
-		for (int day = lastDay - 1; day >= firstDay; day--) {
-			double number = cumulative.get(day);
-			if (number > max) {
-				cumulative.put(day, max);
+		for (int i = lastDay - baseDay - 1; i >= first; i--) {
+			if (cumulative[i] > max) {
+				cumulative[i] = max;
 				// System.out.println("Dropping cumulative to " + max);
 			} else {
-				max = number;
+				max = cumulative[i];
+				if (i < from) {
+					break;
+				}
 			}
 		}
+		logPrefix = null;
 	}
 
 	/**
@@ -201,17 +283,34 @@ public class FinalNumbers extends Numbers {
 	 * useful.
 	 */
 	public synchronized void smoothFlatDays(FinalNumbers source) {
+		smoothFlatDays(source, firstDay);
+	}
+
+	/**
+	 * smoothFlatDays for new days only, from fromDay on. The flat stretch
+	 * leading up to the new days is the only older part that can change.
+	 */
+	public synchronized void smoothFlatDays(FinalNumbers source, int fromDay) {
 		if (!hasData()) {
 			return;
 		}
 
-		for (int day = firstDay; day < lastDay; day++) {
-			double number = cumulative.get(day);
+		int startDay = Math.max(Math.min(fromDay - 1, lastDay), firstDay);
+		while (startDay > firstDay && get(startDay - 1) == get(startDay)) {
+			startDay--;
+		}
+
+		/*
+		 * One pass: each flat run is found by scanning ahead from its start,
+		 * then the scan carries on from the day after the run ends.
+		 */
+		for (int day = startDay; day < lastDay; day++) {
+			double number = get(day);
 
 			int jumpDay = day + 1;
-			if (cumulative.get(jumpDay) == number) {
+			if (get(jumpDay) == number) {
 				for (; jumpDay <= lastDay; jumpDay++) {
-					if (cumulative.get(jumpDay) != number) {
+					if (get(jumpDay) != number) {
 						break;
 					}
 				}
@@ -221,17 +320,17 @@ public class FinalNumbers extends Numbers {
 
 				if (jumpDay <= lastDay) {
 					int interval = jumpDay - day;
-					double baseline = source.cumulative.get(day);
-					double margin = (cumulative.get(jumpDay) - number);
-					double ratioDiff = source.cumulative.get(jumpDay) - baseline;
+					double baseline = source.get(day);
+					double margin = (get(jumpDay) - number);
+					double ratioDiff = source.get(jumpDay) - baseline;
 					double ratio = margin / ratioDiff;
 
 					for (int d = 1; d < interval; d++) {
-						double matcher = source.cumulative.get(day + d) - baseline;
+						double matcher = source.get(day + d) - baseline;
 						double newValue = number + matcher * ratio;
 						System.out.println("Changing " + getType().lowerName + " on " + CalendarUtils.dayToDate(day + d)
-								+ " from " + cumulative.get(day + d) + " to " + newValue);
-						cumulative.put(day + d, newValue);
+								+ " from " + get(day + d) + " to " + newValue);
+						put(day + d, newValue);
 					}
 				}
 
@@ -247,4 +346,22 @@ public class FinalNumbers extends Numbers {
 		smoothNulls();
 		smoothDrops();
 	}
+
+	/**
+	 * Smooths just the days from fromDay on, assuming everything before was
+	 * already smoothed. Drops can still reach back before fromDay, but only as
+	 * far as they have to.
+	 */
+	public synchronized void smoothNewDays(int fromDay) {
+		// days missing just before the new ones weren't there to fill before
+		while (fromDay > firstDay && Double.isNaN(get(fromDay - 1))) {
+			fromDay--;
+		}
+		if (fromDay <= firstDay) {
+			smooth();
+			return;
+		}
+		smoothNulls(fromDay);
+		smoothDrops(fromDay);
+	}
 }
@@ -9,10 +9,8 @@ import org.jfree.chart.axis.DateAxis;
 import org.jfree.chart.axis.LogarithmicAxis;
 import org.jfree.chart.plot.ValueMarker;
 import org.jfree.chart.plot.XYPlot;
-import org.jfree.data.time.Day;
-import org.jfree.data.time.TimeSeries;
-import org.jfree.data.time.TimeSeriesCollection;
 
+import charts.ArrayDataset;
 import charts.Chart;
 import charts.Charts;
 import covid.CalendarUtils;
@@ -55,16 +53,15 @@ public class Finals {
 		folder = Charts.FULL_FOLDER + "\\" + folder;
 		new File(folder).mkdir();
 
-		TimeSeries series = new TimeSeries("Cases");
-		TimeSeries projectedSeries = new TimeSeries("Projected");
+		ArrayDataset collection = new ArrayDataset();
+		ArrayDataset.Series series = collection.addSeries("Cases");
+		ArrayDataset.Series projectedSeries = new ArrayDataset.Series("Projected");
 		for (int d = stats.getVeryFirstDay(); d <= dayOfData - daysToSkip; d++) {
-			Day ddd = CalendarUtils.dayToDay(d);
-
 			Double cases = getCasesForDay.apply(d);
 
 			if (cases != null && Double.isFinite(cases)) {
 				if (!log || cases > 0) {
-					series.add(ddd, cases);
+					series.addDay(d, cases);
 				}
 			}
 
@@ -73,7 +70,7 @@ public class Finals {
 				double projected = getProjectedCasesForDay.apply(d);
 				if (Double.isFinite(projected)) {
 					if (!log || projected > 0) {
-						projectedSeries.add(ddd, projected);
+						projectedSeries.addDay(d, projected);
 					}
 				}
 			}
@@ -81,8 +78,6 @@ public class Finals {
 
 		// dataset.addSeries("Cases", series);
 
-		TimeSeriesCollection collection = new TimeSeriesCollection();
-		collection.addSeries(series);
 		if (getProjectedCasesForDay != null) {
 			collection.addSeries(projectedSeries);
 		}
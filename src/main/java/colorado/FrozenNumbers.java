@@ -0,0 +1,431 @@
+package colorado;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import covid.CalendarUtils;
+
+/**
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * -----
+ * 
+ * The read-only result of building an IncompleteNumbers.
+ * 
+ * Nothing here changes after the constructor, and every field is final, so
+ * once an instance is handed out any number of chart threads can read it at
+ * once without locking.
+ * 
+ * @author jdorje@gmail.com
+ */
+public class FrozenNumbers extends Numbers {
+
+	private final NumbersTiming timing;
+
+	private final int firstDayOfType;
+	private final int firstDayOfData;
+	private final int lastDayOfData;
+
+	/*
+	 * All the numbers are packed into one triangular matrix. Each day of data
+	 * gets a row running from firstDayOfType through that day of data (or
+	 * further, in the rare case a row has later values), and the rows are laid
+	 * end to end in cube. R values live in cubeR with identical indexing, with
+	 * NaN meaning there's no R for that day.
+	 * 
+	 * rowStart/rowLength are indexed by dayOfData - firstDayOfData; a rowStart
+	 * of -1 means there's no data that day.
+	 */
+	private final int[] rowStart;
+	private final int[] rowLength;
+	private final double[] cube;
+	private final double[] cubeR;
+
+	/*
+	 * Running totals along each row, using the same indexing as the cube, so
+	 * any smoothing window is just a difference of two entries. logPrefix
+	 * sums the logs of the positive values (for geometric averages) and
+	 * zeroPrefix counts the values that are zero or negative, since any of
+	 * those in the window makes the geometric average 0.
+	 */
+	private final double[] prefix;
+	private final double[] logPrefix;
+	private final int[] zeroPrefix;
+
+	/*
+	 * Completion ratios are built on first use, one per delay, and shared by
+	 * every chart after that. This is the one thing that isn't set in the
+	 * constructor, hence the concurrent maps.
+	 */
+	private final Map<Integer, CompletionRatios> completionRatios = new ConcurrentHashMap<>();
+	private final Map<Integer, CompletionRatios> reproductiveRatios = new ConcurrentHashMap<>();
+
+	FrozenNumbers(NumbersType type, NumbersTiming timing, int firstDayOfType, int firstDayOfData, int lastDayOfData,
+			Map<Integer, IncompleteNumbers.DayOfData> allNumbers) {
+		this(type, timing, null, firstDayOfType, firstDayOfData, lastDayOfData, allNumbers);
+	}
+
+	/**
+	 * The previous numbers with new days of data added on the end. Only the
+	 * new rows have their prefixes and R values computed; everything else is
+	 * just copied over.
+	 */
+	FrozenNumbers(FrozenNumbers previous, int lastDayOfData, Map<Integer, IncompleteNumbers.DayOfData> newNumbers) {
+		this(previous.getType(), previous.timing, previous, previous.firstDayOfType, previous.firstDayOfData,
+				lastDayOfData, newNumbers);
+	}
+
+	private FrozenNumbers(NumbersType type, NumbersTiming timing, FrozenNumbers previous, int firstDayOfType,
+			int firstDayOfData, int lastDayOfData, Map<Integer, IncompleteNumbers.DayOfData> allNumbers) {
+		super(type);
+		this.timing = timing;
+		this.firstDayOfType = firstDayOfType;
+		this.firstDayOfData = firstDayOfData;
+		this.lastDayOfData = lastDayOfData;
+
+		int oldRows = previous == null ? 0 : previous.rowStart.length;
+		int oldSize = previous == null ? 0 : previous.cube.length;
+		int rows = allNumbers.isEmpty() ? oldRows : lastDayOfData - firstDayOfData + 1;
+		if (previous == null) {
+			rowStart = new int[rows];
+			rowLength = new int[rows];
+		} else {
+			rowStart = Arrays.copyOf(previous.rowStart, rows);
+			rowLength = Arrays.copyOf(previous.rowLength, rows);
+		}
+		int size = oldSize;
+		for (int row = oldRows; row < rows; row++) {
+			int dayOfData = firstDayOfData + row;
+			IncompleteNumbers.DayOfData daily = allNumbers.get(dayOfData);
+			if (daily == null) {
+				rowStart[row] = -1;
+				continue;
+			}
+			rowStart[row] = size;
+			rowLength[row] = Math.max(dayOfData, daily.getLastDayOfType()) - firstDayOfType + 1;
+			size += rowLength[row];
+		}
+
+		if (previous == null) {
+			cube = new double[size];
+			prefix = new double[size];
+			logPrefix = new double[size];
+			zeroPrefix = new int[size];
+			cubeR = new double[size];
+		} else {
+			cube = Arrays.copyOf(previous.cube, size);
+			prefix = Arrays.copyOf(previous.prefix, size);
+			logPrefix = Arrays.copyOf(previous.logPrefix, size);
+			zeroPrefix = Arrays.copyOf(previous.zeroPrefix, size);
+			cubeR = Arrays.copyOf(previous.cubeR, size);
+		}
+
+		for (int row = oldRows; row < rows; row++) {
+			if (rowStart[row] < 0) {
+				continue;
+			}
+			IncompleteNumbers.DayOfData daily = allNumbers.get(firstDayOfData + row);
+			for (int column = 0; column < rowLength[row]; column++) {
+				cube[rowStart[row] + column] = daily.get(firstDayOfType + column);
+			}
+		}
+
+		for (int row = oldRows; row < rows; row++) {
+			if (rowStart[row] < 0) {
+				continue;
+			}
+			double sum = 0, logSum = 0;
+			int zeroes = 0;
+			for (int index = rowStart[row]; index < rowStart[row] + rowLength[row]; index++) {
+				double v = cube[index];
+				sum += v;
+				if (v > 0) {
+					logSum += Math.log(v);
+				} else {
+					zeroes++;
+				}
+				prefix[index] = sum;
+				logPrefix[index] = logSum;
+				zeroPrefix[index] = zeroes;
+			}
+		}
+
+		Arrays.fill(cubeR, oldSize, size, Double.NaN);
+		buildR(firstDayOfData + oldRows);
+	}
+
+	private void buildR(int fromDayOfData) {
+		int R_SMOOTHING_INTERVAL = getReproductiveSmoothingInterval();
+		Smoothing smoothing = new Smoothing(R_SMOOTHING_INTERVAL, Smoothing.Type.AVERAGE, Smoothing.Timing.TRAILING);
+		for (int dayOfData = fromDayOfData; dayOfData <= lastDayOfData; dayOfData++) {
+			if (!dayHasData(dayOfData)) {
+				continue;
+			}
+			for (int dayOfType = firstDayOfType; dayOfType <= dayOfData; dayOfType++) {
+				double end = getNumbers(dayOfData, dayOfType + R_SMOOTHING_INTERVAL, smoothing);
+				double start = getNumbers(dayOfData, dayOfType, smoothing);
+				if (end != 0 && start != 0) {
+					cubeR[cubeIndex(dayOfData, dayOfType)] = Math.pow(end / start,
+							IncompleteNumbers.SERIAL_INTERVAL / R_SMOOTHING_INTERVAL);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return How much these numbers have grown over the given delay,
+	 *         computed once and shared.
+	 */
+	public CompletionRatios getCompletionRatios(int delay) {
+		return completionRatios.computeIfAbsent(delay, d -> new CompletionRatios(this, d, false));
+	}
+
+	/**
+	 * @return How much the R values have changed over the given delay,
+	 *         computed once and shared.
+	 */
+	public CompletionRatios getReproductiveRatios(int delay) {
+		return reproductiveRatios.computeIfAbsent(delay, d -> new CompletionRatios(this, d, true));
+	}
+
+	public NumbersTiming getTiming() {
+		return timing;
+	}
+
+	public String getDescription() {
+		return getType().name() + "/" + timing.name();
+	}
+
+	public int getReproductiveSmoothingInterval() {
+		return getType().reproductiveSmoothing;
+	}
+
+	public boolean hasData() {
+		return lastDayOfData >= firstDayOfData || lastDayOfData >= firstDayOfType;
+	}
+
+	/**
+	 * @return The index into the cube for these days, or -1 if there's no
+	 *         value stored there.
+	 */
+	private int cubeIndex(int dayOfData, int dayOfType) {
+		int row = dayOfData - firstDayOfData;
+		if (row < 0 || row >= rowStart.length || rowStart[row] < 0) {
+			return -1;
+		}
+		int column = dayOfType - firstDayOfType;
+		if (column < 0 || column >= rowLength[row]) {
+			return -1;
+		}
+		return rowStart[row] + column;
+	}
+
+	public double getNumbers(int dayOfData, int dayOfType) {
+		if (!dayHasData(dayOfData)) {
+			new Exception(
+					"No data for day " + CalendarUtils.dayToDate(dayOfData) + " for " + getType() + " / " + getTiming())
+							.printStackTrace();
+			return 0.0;
+		}
+
+		int index = cubeIndex(dayOfData, dayOfType);
+		return index < 0 ? 0.0 : cube[index];
+	}
+
+	public int getFirstDayOfType() {
+		return firstDayOfType;
+	}
+
+	public Integer getFirstDayOfData() {
+		return firstDayOfData;
+	}
+
+	public Integer getNextDayOfData(Integer dayOfData) {
+		if (dayOfData == null) {
+			return null;
+		}
+		do {
+			dayOfData++;
+			if (dayOfData > lastDayOfData) {
+				return null;
+			}
+		} while (!dayHasData(dayOfData));
+		return dayOfData;
+	}
+
+	public Integer getPrevDayOfData(Integer dayOfData) {
+		if (dayOfData == null) {
+			return null;
+		}
+		do {
+			dayOfData--;
+			if (dayOfData < firstDayOfData) {
+				return null;
+			}
+		} while (!dayHasData(dayOfData));
+		return dayOfData;
+	}
+
+	public boolean dayHasData(int dayOfData) {
+		int row = dayOfData - firstDayOfData;
+		return row >= 0 && row < rowStart.length && rowStart[row] >= 0;
+	}
+
+	public int getLastDay() {
+		return lastDayOfData;
+	}
+
+	/**
+	 * @return The sum of the prefixed values from fromDay through toDay (days
+	 *         of type) in this row. Days outside the row count as 0.
+	 */
+	private double windowSum(double[] prefixes, int row, int fromDay, int toDay) {
+		int from = Math.max(fromDay - firstDayOfType, 0);
+		int to = Math.min(toDay - firstDayOfType, rowLength[row] - 1);
+		if (from > to) {
+			return 0.0;
+		}
+		double sum = prefixes[rowStart[row] + to];
+		if (from > 0) {
+			sum -= prefixes[rowStart[row] + from - 1];
+		}
+		return sum;
+	}
+
+	/**
+	 * @return The number of values from fromDay through toDay (days of type)
+	 *         in this row that are zero or negative. Days outside the row are
+	 *         zeroes.
+	 */
+	private int windowZeroes(int row, int fromDay, int toDay) {
+		int from = Math.max(fromDay - firstDayOfType, 0);
+		int to = Math.min(toDay - firstDayOfType, rowLength[row] - 1);
+		if (from > to) {
+			return toDay - fromDay + 1;
+		}
+		int zeroes = zeroPrefix[rowStart[row] + to];
+		if (from > 0) {
+			zeroes -= zeroPrefix[rowStart[row] + from - 1];
+		}
+		return zeroes + (toDay - fromDay + 1) - (to - from + 1);
+	}
+
+	public double getNumbers(int dayOfData, int dayOfType, Smoothing smoothing) {
+		int lastDayOfCalc;
+
+		switch (smoothing.getTiming()) {
+		case SYMMETRIC:
+			lastDayOfCalc = dayOfType + smoothing.getDays() / 2;
+			break;
+		case TRAILING:
+			lastDayOfCalc = dayOfType;
+			break;
+		default:
+			throw new RuntimeException("...");
+		}
+
+		int days = smoothing.getDays();
+		if (days == 1) {
+			// exact, no need for the prefixes
+			return getNumbers(dayOfData, lastDayOfCalc);
+		}
+		if (!dayHasData(dayOfData)) {
+			new Exception(
+					"No data for day " + CalendarUtils.dayToDate(dayOfData) + " for " + getType() + " / " + getTiming())
+							.printStackTrace();
+			return 0.0;
+		}
+		int row = dayOfData - firstDayOfData;
+		int firstDayOfCalc = lastDayOfCalc - days + 1;
+
+		switch (smoothing.getType()) {
+		case AVERAGE:
+		case TOTAL:
+			double sum = windowSum(prefix, row, firstDayOfCalc, lastDayOfCalc);
+
+			if (smoothing.getType() == Smoothing.Type.AVERAGE) {
+				sum /= days;
+			}
+			return sum;
+		case GEOMETRIC_AVERAGE:
+			// unsolvable issue with negative tests here. Analytics...
+			if (windowZeroes(row, firstDayOfCalc, lastDayOfCalc) > 0) {
+				return 0.0;
+			}
+			double product = Math.exp(windowSum(logPrefix, row, firstDayOfCalc, lastDayOfCalc) / days);
+			if (!Double.isFinite(product)) {
+				throw new RuntimeException("Uh oh: " + product);
+			}
+			return product;
+		default:
+			break;
+		}
+		throw new RuntimeException("FAIL");
+	}
+
+	public Double getBigR(int dayOfData, int dayOfType) {
+		if (dayOfType < firstDayOfType || dayOfData < firstDayOfData) {
+			return null;
+		}
+		if (dayOfType > lastDayOfData || dayOfData > lastDayOfData) {
+			return null;
+		}
+
+		int index = cubeIndex(dayOfData, dayOfType);
+		if (index < 0 || Double.isNaN(cubeR[index])) {
+			return null;
+		}
+		return cubeR[index];
+	}
+
+	/*
+	 * Returns the new numbers for this day-of-type that appeared on the given
+	 * day-of-data
+	 */
+	public double getNewNumbers(int dayOfData, int dayOfType, int interval) {
+		int prevDay = dayOfData - interval;
+		if (!dayHasData(dayOfData) || !dayHasData(dayOfData - interval)) {
+			throw new RuntimeException("No data here for " + getType() + "/" + timing + "; handle this in the caller.");
+		}
+		return getNumbers(dayOfData, dayOfType) - getNumbers(prevDay, dayOfType);
+	}
+
+	public double getAverageAgeOfNewNumbers(int baseDayOfData, int dayRange) {
+		double daySum = 0, numbersSum = 0;
+		int dayMinimum = baseDayOfData - dayRange + 1, dayMaximum = baseDayOfData;
+
+		// TODO: this isn't TOO slow, but it's quadratic time and potentially
+		// run multiple times. Caching could help.
+
+		for (int dayOfData = dayMinimum; dayOfData <= dayMaximum; dayOfData++) {
+			if (!dayHasData(dayOfData)) {
+				continue;
+			}
+			for (int dayOfType = firstDayOfType; dayOfType <= dayOfData; dayOfType++) {
+				double n2 = getNumbers(dayOfData, dayOfType);
+				Integer prev = getPrevDayOfData(dayOfData);
+				if (prev == null) {
+					continue;
+				}
+				double n1 = getNumbers(prev, dayOfType);
+				double newNumbers = n2 - n1;
+				numbersSum += newNumbers;
+				daySum += newNumbers * (dayOfData - dayOfType);
+			}
+		}
+
+		return daySum / numbersSum;
+	}
+}
@@ -67,7 +67,7 @@ public class FullDelayChart extends TypesTimingChart {
 		double peak = 0;
 
 		for (NumbersType type : types) {
-			IncompleteNumbers numbers = stats.getNumbers(type, timing);
+			FrozenNumbers numbers = stats.getFrozenNumbers(type, timing);
 			if (!numbers.hasData() || !numbers.dayHasData(lastDayOfData)) {
 				continue;
 			}
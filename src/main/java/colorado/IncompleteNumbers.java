@@ -1,6 +1,8 @@
 package colorado;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
 
 import covid.CalendarUtils;
 
@@ -37,22 +39,66 @@ public class IncompleteNumbers extends Numbers {
 		return lastDayOfData >= firstDayOfData || lastDayOfData >= firstDayOfType;
 	}
 
-	protected class DayOfData {
-		protected final HashMap<Integer, Double> numbers = new HashMap<>();
-		protected final HashMap<Integer, Double> R = new HashMap<>();
+	/*
+	 * While the CSVs are being read, each day of data gets its own growable
+	 * row. Rows are indexed from the first day of type seen in that row, since
+	 * the days are read in no particular order and the overall first day of
+	 * type isn't known until everything is in.
+	 * 
+	 * Missing values are simply 0, which is what every reader treated a
+	 * missing value as anyway.
+	 */
+	protected static class DayOfData {
+		private int firstDayOfType;
+		private double[] numbers = null;
 
-		public DayOfData() {
+		public double get(int dayOfType) {
+			if (numbers == null || dayOfType < firstDayOfType || dayOfType >= firstDayOfType + numbers.length) {
+				return 0.0;
+			}
+			return numbers[dayOfType - firstDayOfType];
+		}
 
+		public void set(int dayOfType, double value) {
+			if (numbers == null) {
+				firstDayOfType = dayOfType;
+				numbers = new double[32];
+			} else if (dayOfType < firstDayOfType) {
+				int grow = Math.max(firstDayOfType - dayOfType, numbers.length / 2);
+				double[] newNumbers = new double[numbers.length + grow];
+				System.arraycopy(numbers, 0, newNumbers, grow, numbers.length);
+				numbers = newNumbers;
+				firstDayOfType -= grow;
+			} else if (dayOfType >= firstDayOfType + numbers.length) {
+				int length = Math.max(dayOfType - firstDayOfType + 1, numbers.length * 3 / 2);
+				numbers = Arrays.copyOf(numbers, length);
+			}
+			numbers[dayOfType - firstDayOfType] = value;
 		}
 
-		public DayOfData(DayOfData populate) {
-			populate.numbers.forEach((d, v) -> numbers.put(d, v));
-			populate.R.forEach((d, v) -> R.put(d, v));
+		/**
+		 * @return The last day of type that might be non-zero in this row.
+		 */
+		public int getLastDayOfType() {
+			if (numbers == null) {
+				return Integer.MIN_VALUE;
+			}
+			int last = numbers.length - 1;
+			while (last >= 0 && numbers[last] == 0.0) {
+				last--;
+			}
+			return firstDayOfType + last;
 		}
 	}
 
 	private final HashMap<Integer, DayOfData> allNumbers = new HashMap<>();
 
+	/*
+	 * Once built, everything is read from the frozen view instead. Volatile so
+	 * the view is safely published to whichever thread asks for it.
+	 */
+	private volatile FrozenNumbers frozen = null;
+
 	private final NumbersTiming timing;
 
 	public IncompleteNumbers(NumbersType type, NumbersTiming timing) {
@@ -64,7 +110,23 @@ public class IncompleteNumbers extends Numbers {
 		return timing;
 	}
 
+	/**
+	 * @return The read-only view of these numbers, which is available once
+	 *         build() has been called. Chart code should use this rather than
+	 *         reading from here, since it needs no locking.
+	 */
+	public FrozenNumbers getFrozen() {
+		FrozenNumbers f = frozen;
+		if (f == null) {
+			throw new RuntimeException("Numbers for " + getDescription() + " haven't been built yet.");
+		}
+		return f;
+	}
+
 	public synchronized double getNumbers(int dayOfData, int dayOfType) {
+		if (frozen != null) {
+			return frozen.getNumbers(dayOfData, dayOfType);
+		}
 		DayOfData daily = allNumbers.get(dayOfData);
 
 		if (daily == null) {
@@ -74,13 +136,7 @@ public class IncompleteNumbers extends Numbers {
 			return 0.0;
 		}
 
-		Double number = daily.numbers.get(dayOfType);
-
-		if (number == null) {
-			return 0.0;
-		}
-
-		return number;
+		return daily.get(dayOfType);
 	}
 
 	public synchronized int getFirstDayOfType() {
@@ -118,6 +174,9 @@ public class IncompleteNumbers extends Numbers {
 	}
 
 	public synchronized boolean dayHasData(int dayOfData) {
+		if (frozen != null) {
+			return frozen.dayHasData(dayOfData);
+		}
 		return allNumbers.get(dayOfData) != null;
 	}
 
@@ -125,72 +184,20 @@ public class IncompleteNumbers extends Numbers {
 		return lastDayOfData;
 	}
 
-	public synchronized double getNumbers(int dayOfData, int dayOfType, Smoothing smoothing) {
-		int lastDayOfCalc;
-
-		switch (smoothing.getTiming()) {
-		case SYMMETRIC:
-			lastDayOfCalc = dayOfType + smoothing.getDays() / 2;
-			break;
-		case TRAILING:
-			lastDayOfCalc = dayOfType;
-			break;
-		default:
-			throw new RuntimeException("...");
-		}
-
-		switch (smoothing.getType()) {
-		case AVERAGE:
-		case TOTAL:
-			double sum = 0;
-			for (int d = lastDayOfCalc - smoothing.getDays() + 1; d <= lastDayOfCalc; d++) {
-				double v = getNumbers(dayOfData, d);
-				sum += v;
-			}
-
-			if (smoothing.getType() == Smoothing.Type.AVERAGE) {
-				sum /= smoothing.getDays();
-			}
-			return sum;
-		case GEOMETRIC_AVERAGE:
-			double product = 1.0;
-			for (int d = lastDayOfCalc - smoothing.getDays() + 1; d <= lastDayOfCalc; d++) {
-				double v = getNumbers(dayOfData, d);
-				// unsolvable issue with negative tests here. Analytics...
-				product *= Math.max(v, 0.0);
-			}
-			product = Math.pow(product, 1.0 / smoothing.getDays());
-			if (!Double.isFinite(product)) {
-				throw new RuntimeException("Uh oh: " + product);
-			}
-			return product;
-		default:
-			break;
-		}
-		throw new RuntimeException("FAIL");
+	public double getNumbers(int dayOfData, int dayOfType, Smoothing smoothing) {
+		return getFrozen().getNumbers(dayOfData, dayOfType, smoothing);
 	}
 
-	public synchronized Double getBigR(int dayOfData, int dayOfType) {
-		if (dayOfType < firstDayOfType || dayOfData < firstDayOfData) {
-			return null;
-		}
-		if (dayOfType > lastDayOfData || dayOfData > lastDayOfData) {
-			return null;
-		}
-
-		return allNumbers.get(dayOfData).R.get(dayOfType);
+	public Double getBigR(int dayOfData, int dayOfType) {
+		return getFrozen().getBigR(dayOfData, dayOfType);
 	}
 
 	/*
 	 * Returns the new numbers for this day-of-type that appeared on the given
 	 * day-of-data
 	 */
-	public synchronized double getNewNumbers(int dayOfData, int dayOfType, int interval) {
-		int prevDay = dayOfData - interval;
-		if (!dayHasData(dayOfData) || !dayHasData(dayOfData - interval)) {
-			throw new RuntimeException("No data here for " + getType() + "/" + timing + "; handle this in the caller.");
-		}
-		return getNumbers(dayOfData, dayOfType) - getNumbers(prevDay, dayOfType);
+	public double getNewNumbers(int dayOfData, int dayOfType, int interval) {
+		return getFrozen().getNewNumbers(dayOfData, dayOfType, interval);
 	}
 
 	// https://wwwnc.cdc.gov/eid/article/26/6/20-0357_article
@@ -201,77 +208,90 @@ public class IncompleteNumbers extends Numbers {
 		return getType().reproductiveSmoothing;
 	}
 
+	/**
+	 * Finishes the numbers off (turning cumulative numbers into daily ones)
+	 * and freezes them.
+	 * 
+	 * After that only new days of data can be added, and calling this again
+	 * adds just those days on to the frozen numbers. Every day of data is
+	 * converted and smoothed on its own, so the old days don't need to be
+	 * touched.
+	 */
 	public synchronized boolean build() {
+		if (frozen != null && allNumbers.isEmpty()) {
+			return true;
+		}
+
 		if (isCumulative) {
 			// first smooth values so we don't end up with negative daily
 			// values. We can only smooth within an individual day of data;
 			// negatives can still happen between days of data.
-			for (Integer dayOfData = getFirstDayOfData(); dayOfData != null; dayOfData = getNextDayOfData(dayOfData)) {
+			for (Map.Entry<Integer, DayOfData> entry : allNumbers.entrySet()) {
+				int dayOfData = entry.getKey();
+				DayOfData daily = entry.getValue();
 				double min = 0;
-				DayOfData daily = allNumbers.get(dayOfData);
 				for (int dayOfType = firstDayOfType; dayOfType <= dayOfData; dayOfType++) {
-					Double numbers = daily.numbers.get(dayOfType);
-					if (numbers == null || numbers < min) {
+					double numbers = daily.get(dayOfType);
+					if (numbers < min) {
 						numbers = min;
-						daily.numbers.put(dayOfType, numbers);
+						daily.set(dayOfType, numbers);
 					}
 					min = numbers;
 				}
 			}
 
 			// TODO: should avoid negatives first
-			for (Integer dayOfData = getFirstDayOfData(); dayOfData != null; dayOfData = getNextDayOfData(dayOfData)) {
+			for (Map.Entry<Integer, DayOfData> entry : allNumbers.entrySet()) {
+				int dayOfData = entry.getKey();
+				DayOfData daily = entry.getValue();
 				double last = 0;
-				DayOfData daily = allNumbers.get(dayOfData);
 				for (int dayOfType = firstDayOfType; dayOfType <= dayOfData; dayOfType++) {
-					double newLast = getNumbers(dayOfData, dayOfType);
-
-					daily.numbers.put(dayOfType, newLast - last);
-					last = newLast;
-				}
-			}
+					double newLast = daily.get(dayOfType);
 
-			isCumulative = false;
-		}
-
-		for (Integer dayOfData = getFirstDayOfData(); dayOfData != null; dayOfData = getNextDayOfData(dayOfData)) {
-			DayOfData daily = allNumbers.get(dayOfData);
-			boolean started = false;
-			for (int dayOfType = lastDayOfData; dayOfType >= firstDayOfType; dayOfType--) {
-				if (daily.numbers.get(dayOfType) == null) {
-					if (started) {
-						daily.numbers.put(dayOfType, 0.0);
+					if (last != 0) {
+						daily.set(dayOfType, newLast - last);
 					}
-				} else {
-					started = true;
+					last = newLast;
 				}
 			}
 		}
 
-		int R_SMOOTHING_INTERVAL = getReproductiveSmoothingInterval();
-		Smoothing smoothing = new Smoothing(R_SMOOTHING_INTERVAL, Smoothing.Type.AVERAGE, Smoothing.Timing.TRAILING);
-		for (Integer dayOfData = getFirstDayOfData(); dayOfData != null; dayOfData = getNextDayOfData(dayOfData)) {
-			DayOfData daily = allNumbers.get(dayOfData);
-			if (daily == null) {
-				continue;
-			}
+		// Gaps within a day of data used to be filled in with 0s here, but in
+		// the dense rows a missing value already is 0.
 
-			for (int dayOfType = firstDayOfType; dayOfType <= dayOfData; dayOfType++) {
-				double end = getNumbers(dayOfData, dayOfType + R_SMOOTHING_INTERVAL, smoothing);
-				double start = getNumbers(dayOfData, dayOfType, smoothing);
-				if (end != 0 && start != 0) {
-					daily.R.put(dayOfType, Math.pow(end / start, SERIAL_INTERVAL / R_SMOOTHING_INTERVAL));
-				}
-			}
+		if (frozen == null || !frozen.hasData()) {
+			frozen = new FrozenNumbers(getType(), timing, firstDayOfType, firstDayOfData, lastDayOfData, allNumbers);
+		} else {
+			frozen = new FrozenNumbers(frozen, lastDayOfData, allNumbers);
 		}
+		allNumbers.clear();
 
 		return true;
 	}
 
+	/*
+	 * Once built, only days of data after the last one can be added, and
+	 * nothing can go before the first day of type.
+	 */
+	private void checkAppend(int dayOfData, int dayOfType) {
+		if (frozen == null) {
+			return;
+		}
+		if (dayOfData <= frozen.getLastDay()) {
+			throw new RuntimeException("Numbers for " + getDescription() + " have already been built through "
+					+ CalendarUtils.dayToDate(frozen.getLastDay()) + ".");
+		}
+		if (frozen.hasData() && dayOfType < frozen.getFirstDayOfType()) {
+			throw new RuntimeException("New numbers for " + getDescription() + " on "
+					+ CalendarUtils.dayToDate(dayOfType) + " need a full rebuild.");
+		}
+	}
+
 	/**
 	 * Sets numbers for the given days.
 	 */
 	public synchronized void setNumbers(int dayOfData, int dayOfType, double numbers) {
+		checkAppend(dayOfData, dayOfType);
 		DayOfData daily = allNumbers.get(dayOfData);
 		if (daily == null) {
 			if (numbers == 0.0) {
@@ -280,18 +300,15 @@ public class IncompleteNumbers extends Numbers {
 			daily = new DayOfData();
 			allNumbers.put(dayOfData, daily);
 		}
-		if (daily.numbers.get(dayOfType) == null && numbers == 0.0) {
-			return; // avoid unnecessary first/last days
-		}
-		if (daily.numbers.get(dayOfType) != null && numbers == daily.numbers.get(dayOfType)) {
+		if (numbers == daily.get(dayOfType)) {
 			return; // avoid unnecessary first/last days
 		}
 		if (false && getTiming() == NumbersTiming.INFECTION) {
-			daily.numbers.put(dayOfType, numbers / 2);
-			daily.numbers.put(dayOfType + 1, numbers / 4);
-			daily.numbers.put(dayOfType - 1, numbers / 4);
+			daily.set(dayOfType, numbers / 2);
+			daily.set(dayOfType + 1, numbers / 4);
+			daily.set(dayOfType - 1, numbers / 4);
 		} else {
-			daily.numbers.put(dayOfType, numbers);
+			daily.set(dayOfType, numbers);
 		}
 
 		firstDayOfData = Math.min(firstDayOfData, dayOfData);
@@ -303,6 +320,7 @@ public class IncompleteNumbers extends Numbers {
 	 * Adds more numbers for the given days.
 	 */
 	public synchronized void addNumbers(int dayOfData, int dayOfType, double numbers) {
+		checkAppend(dayOfData, dayOfType);
 		if (numbers == 0.0) {
 			return; // avoid unnecessary first/last days
 		}
@@ -311,11 +329,7 @@ public class IncompleteNumbers extends Numbers {
 			daily = new DayOfData();
 			allNumbers.put(dayOfData, daily);
 		}
-		Double original = daily.numbers.get(dayOfType);
-		if (original != null) {
-			numbers += original;
-		}
-		daily.numbers.put(dayOfType, numbers);
+		daily.set(dayOfType, daily.get(dayOfType) + numbers);
 
 		firstDayOfData = Math.min(firstDayOfData, dayOfData);
 		lastDayOfData = Math.max(lastDayOfData, dayOfData);
@@ -331,31 +345,8 @@ public class IncompleteNumbers extends Numbers {
 		isCumulative = true;
 	}
 
-	public synchronized double getAverageAgeOfNewNumbers(int baseDayOfData, int dayRange) {
-		double daySum = 0, numbersSum = 0;
-		int dayMinimum = baseDayOfData - dayRange + 1, dayMaximum = baseDayOfData;
-
-		// TODO: this isn't TOO slow, but it's quadratic time and potentially
-		// run multiple times. Caching could help.
-
-		for (int dayOfData = dayMinimum; dayOfData <= dayMaximum; dayOfData++) {
-			if (!dayHasData(dayOfData)) {
-				continue;
-			}
-			for (int dayOfType = firstDayOfType; dayOfType <= dayOfData; dayOfType++) {
-				double n2 = getNumbers(dayOfData, dayOfType);
-				Integer prev = getPrevDayOfData(dayOfData);
-				if (prev == null) {
-					continue;
-				}
-				double n1 = getNumbers(prev, dayOfType);
-				double newNumbers = n2 - n1;
-				numbersSum += newNumbers;
-				daySum += newNumbers * (dayOfData - dayOfType);
-			}
-		}
-
-		return daySum / numbersSum;
+	public double getAverageAgeOfNewNumbers(int baseDayOfData, int dayRange) {
+		return getFrozen().getAverageAgeOfNewNumbers(baseDayOfData, dayRange);
 	}
 
 	public String getDescription() {
@@ -4,7 +4,6 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.util.Set;
 
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.DateAxis;
@@ -12,9 +11,8 @@ import org.jfree.chart.axis.ValueAxis;
 import org.jfree.chart.plot.ValueMarker;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.DeviationRenderer;
-import org.jfree.data.xy.YIntervalSeries;
-import org.jfree.data.xy.YIntervalSeriesCollection;
 
+import charts.ArrayDataset;
 import charts.Charts;
 import covid.CalendarUtils;
 
@@ -48,7 +46,7 @@ public class Reproductive extends TypesTimingChart {
 
 	@Override
 	public JFreeChart buildChart(int dayOfData) {
-		YIntervalSeriesCollection collection = new YIntervalSeriesCollection();
+		ArrayDataset collection = new ArrayDataset();
 		DeviationRenderer renderer = new DeviationRenderer(true, false);
 		int seriesCount = 0;
 
@@ -57,14 +55,16 @@ public class Reproductive extends TypesTimingChart {
 				continue;
 			}
 
-			IncompleteNumbers numbers = stats.getNumbers(type, timing);
+			FrozenNumbers numbers = stats.getFrozenNumbers(type, timing);
 			if (!numbers.hasData()) {
 				continue;
 			}
 
-			YIntervalSeries series = new YIntervalSeries("Based on " + type.capName + ", "
+			CompletionBands bands = numbers.getReproductiveRatios(DELAY).getBandsByDays(INTERVAL);
+
+			ArrayDataset.Series series = new ArrayDataset.Series("Based on " + type.capName + ", "
 					+ (numbers.getReproductiveSmoothingInterval() * 2) + "-day smoothing");
-			YIntervalSeries seriesLY = new YIntervalSeries("Last year");
+			ArrayDataset.Series seriesLY = new ArrayDataset.Series("Last year");
 
 			for (int dayOfType = numbers.getFirstDayOfType(); dayOfType <= dayOfData; dayOfType++) {
 
@@ -74,27 +74,11 @@ public class Reproductive extends TypesTimingChart {
 					continue;
 				}
 
-				DescriptiveStatistics statistics = new DescriptiveStatistics();
 				int actualDelay = dayOfData - dayOfType;
-				for (int oldDayOfType = dayOfType - DELAY - INTERVAL; oldDayOfType < dayOfType
-						- DELAY; oldDayOfType++) {
-					if (!numbers.dayHasData(oldDayOfType + actualDelay)
-							|| !numbers.dayHasData(oldDayOfType + actualDelay + DELAY)) {
-						continue;
-					}
-					Double r1 = numbers.getBigR(oldDayOfType + actualDelay, oldDayOfType);
-					Double r2 = numbers.getBigR(oldDayOfType + actualDelay + DELAY, oldDayOfType);
-
-					if (r1 == null || r2 == null || r1 == 0 || r2 == 0) {
-						continue;
-					}
-					statistics.addValue(reproductive * r2 / r1);
-				}
-
-				double upperBound = statistics.getPercentile(topRange);
-				double lowerBound = statistics.getPercentile(bottomRange);
+				double upperBound = reproductive * Math.exp(bands.getTop(actualDelay, dayOfType - DELAY));
+				double lowerBound = reproductive * Math.exp(bands.getBottom(actualDelay, dayOfType - DELAY));
 
-				double median = statistics.getPercentile(50);
+				double median = reproductive * Math.exp(bands.getMedian(actualDelay, dayOfType - DELAY));
 				double value = Charts.value(reproductive, median);
 
 				long time = CalendarUtils.dayToTime(dayOfType);
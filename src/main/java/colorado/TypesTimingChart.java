@@ -29,7 +29,7 @@ public abstract class TypesTimingChart extends AbstractChart {
 	@Override
 	public final boolean hasData() {
 		for (NumbersType type : types) {
-			IncompleteNumbers n = stats.getNumbers(type, timing);
+			FrozenNumbers n = stats.getFrozenNumbers(type, timing);
 			if (n.hasData()) {
 				return true;
 			}
@@ -40,7 +40,7 @@ public abstract class TypesTimingChart extends AbstractChart {
 	@Override
 	public final boolean dayHasData(int dayOfData) {
 		for (NumbersType type : types) {
-			IncompleteNumbers n = stats.getNumbers(type, timing);
+			FrozenNumbers n = stats.getFrozenNumbers(type, timing);
 			if (n.dayHasData(dayOfData)) {
 				return true;
 			}
@@ -1,5 +1,6 @@
 package covid;
 
+import java.time.LocalDate;
 import java.util.Calendar;
 
 import org.jfree.data.time.Day;
@@ -21,8 +22,11 @@ import org.jfree.data.time.Day;
  * 
  * -----
  * 
- * Trivial reinvention of the wheel to turn a date in 2020 into the number of
- * days since the start of 2020, and back.
+ * Trivial reinvention of the wheel to turn a date into the number of days
+ * since 1/1/1970, and back.
+ * 
+ * Days are whole days in no particular time zone (java.time's epoch day);
+ * their times are noon UTC.
  * 
  * @author jdorje@gmail.com
  */
@@ -30,42 +34,95 @@ public class CalendarUtils {
 
 	public static final double YEAR = 365.24217;
 
-	public static Calendar dateToCalendar(String date) {
-		String[] split = date.split("[/-]");
+	private static final long MILLIS_PER_DAY = 86400l * 1000l;
 
-		if (split.length != 3) {
+	/*
+	 * Every chart adds a point per day, and every CSV line has a date or two,
+	 * so the days the data covers are all done once up front. That's from
+	 * the start of the pandemic to a year past today, which leaves room for
+	 * projections and a process that keeps running; any other day is just
+	 * done when it's asked for.
+	 */
+	private static final int FIRST_CACHED_DAY = (int) LocalDate.of(2020, 1, 1).toEpochDay();
+	private static final int LAST_CACHED_DAY = (int) LocalDate.now().plusYears(1).toEpochDay();
+	private static final Day[] days = new Day[LAST_CACHED_DAY - FIRST_CACHED_DAY + 1];
+	private static final String[] dates = new String[days.length];
+
+	static {
+		for (int day = FIRST_CACHED_DAY; day <= LAST_CACHED_DAY; day++) {
+			LocalDate date = LocalDate.ofEpochDay(day);
+			days[day - FIRST_CACHED_DAY] = new Day(date.getDayOfMonth(), date.getMonthValue(), date.getYear());
+			dates[day - FIRST_CACHED_DAY] = formatDate(date);
+		}
+	}
+
+	private static boolean isCached(int day) {
+		return day >= FIRST_CACHED_DAY && day <= LAST_CACHED_DAY;
+	}
+
+	/*
+	 * Reads digits from start up to the next separator (or the end).
+	 * 
+	 * Returns the number in the low 32 bits and the index it stopped at in
+	 * the high bits, to avoid allocating anything.
+	 */
+	private static long parseNumber(String date, int start) {
+		int number = 0, i = start;
+		for (; i < date.length(); i++) {
+			char c = date.charAt(i);
+			if (c == '-' || c == '/') {
+				break;
+			}
+			if (c < '0' || c > '9') {
+				throw new RuntimeException("Fail date: " + date);
+			}
+			number = number * 10 + (c - '0');
+		}
+		if (i == start || i - start > 4) {
 			throw new RuntimeException("Fail date: " + date);
 		}
+		return ((long) i << 32) | number;
+	}
 
-		int year, month, dayOfMonth;
+	/**
+	 * @param date
+	 *            YYYY-MM-DD, MM/DD/YYYY, or M-D-YYYY.
+	 * @return The day, as days since 1/1/1970.
+	 */
+	public static int dateToDay(String date) {
+		long first = parseNumber(date, 0);
+		int end1 = (int) (first >>> 32);
+		long second = parseNumber(date, end1 + 1);
+		int end2 = (int) (second >>> 32);
+		long third = parseNumber(date, end2 + 1);
+		int end3 = (int) (third >>> 32);
+		if (end3 != date.length()) {
+			throw new RuntimeException("Fail date: " + date);
+		}
 
-		if (split[0].length() == 4) {
+		int year, month, dayOfMonth;
+		if (end1 == 4) {
 			// YYYY-MM-DD
-			year = Integer.valueOf(split[0]);
-			month = Integer.valueOf(split[1]);
-			dayOfMonth = Integer.valueOf(split[2]);
-		} else if (split[2].length() == 4) {
+			year = (int) first;
+			month = (int) second;
+			dayOfMonth = (int) third;
+		} else if (end3 - end2 - 1 == 4) {
 			// MM-DD-YYYY
-			year = Integer.valueOf(split[2]);
-			month = Integer.valueOf(split[0]);
-			dayOfMonth = Integer.valueOf(split[1]);
+			year = (int) third;
+			month = (int) first;
+			dayOfMonth = (int) second;
 		} else {
-			return null;
+			throw new RuntimeException("Fail date: " + date);
 		}
-
-		Calendar cal = Calendar.getInstance();
-		cal.set(year, month - 1, dayOfMonth);
-		return cal;
+		return (int) LocalDate.of(year, month, dayOfMonth).toEpochDay();
 	}
 
-	private static final long MILLIS_PER_DAY = 86400l * 1000l;
-
-	public static int dateToDay(String date) {
-		return timeToDay(dateToTime(date));
+	public static Calendar dateToCalendar(String date) {
+		return dayToCalendar(dateToDay(date));
 	}
 
 	public static long dateToTime(String date) {
-		return dateToCalendar(date).getTimeInMillis();
+		return dayToTime(dateToDay(date));
 	}
 
 	public static int timeToDay(long time) {
@@ -76,11 +133,26 @@ public class CalendarUtils {
 		return Math.round(MILLIS_PER_DAY * day + MILLIS_PER_DAY / 2);
 	}
 
+	/*
+	 * A fractional day is rounded to the nearest one, same as its time.
+	 */
+	private static int roundDay(double day) {
+		return (int) Math.floorDiv(dayToTime(day), MILLIS_PER_DAY);
+	}
+
+	private static String formatDate(LocalDate date) {
+		return date.getMonthValue() + "/" + date.getDayOfMonth() + "/" + date.getYear();
+	}
+
+	/**
+	 * @return The day as M/D/YYYY.
+	 */
 	public static String dayToDate(double day) {
-		long time = dayToTime(day);
-		Calendar cal = Calendar.getInstance();
-		cal.setTimeInMillis(time);
-		return calendarToDate(cal);
+		int d = roundDay(day);
+		if (isCached(d)) {
+			return dates[d - FIRST_CACHED_DAY];
+		}
+		return formatDate(LocalDate.ofEpochDay(d));
 	}
 
 	public static String calendarToDate(Calendar cal) {
@@ -99,27 +171,42 @@ public class CalendarUtils {
 	}
 
 	public static java.util.Date dayToJavaDate(double day) {
-		return dayToCalendar(day).getTime();
+		return new java.util.Date(dayToTime(day));
 	}
 
 	public static java.util.Date dateToJavaDate(String date) {
-		return dayToCalendar(dateToDay(date)).getTime();
+		return dayToJavaDate(dateToDay(date));
 	}
 
 	public static String dayToFullDate(double day, char sep) {
-		Calendar cal = dayToCalendar(day);
+		LocalDate date = LocalDate.ofEpochDay(roundDay(day));
+		int month = date.getMonthValue(), dayOfMonth = date.getDayOfMonth();
 
-		return String.format("%d%c%02d%c%02d", cal.get(Calendar.YEAR), sep, cal.get(Calendar.MONTH) + 1, sep,
-				cal.get(Calendar.DAY_OF_MONTH));
+		StringBuilder sb = new StringBuilder(10);
+		sb.append(date.getYear()).append(sep);
+		if (month < 10) {
+			sb.append('0');
+		}
+		sb.append(month).append(sep);
+		if (dayOfMonth < 10) {
+			sb.append('0');
+		}
+		return sb.append(dayOfMonth).toString();
 	}
 
 	public static String dayToFullDate(double day) {
 		return dayToFullDate(day, '-');
 	}
 
+	/**
+	 * @return The JFreeChart day. These are shared, so don't change them.
+	 */
 	public static Day dayToDay(int day) {
-		Calendar cal = dayToCalendar(day);
-		return new Day(cal.getTime());
+		if (isCached(day)) {
+			return days[day - FIRST_CACHED_DAY];
+		}
+		LocalDate date = LocalDate.ofEpochDay(day);
+		return new Day(date.getDayOfMonth(), date.getMonthValue(), date.getYear());
 	}
 
 }
@@ -0,0 +1,29 @@
+package library;
+
+/**
+ * 64-bit FNV-1a style hashing, for fingerprinting what something was built
+ * from so that it can be skipped when nothing's changed.
+ *
+ * Start with START and mix in each value in turn. Order matters, and any
+ * value can be mixed in, but objects only contribute their 32-bit hashCode.
+ *
+ * @author jdorje@gmail.com
+ */
+public class Fingerprint {
+
+	public static final long START = 0xcbf29ce484222325L;
+
+	private static final long PRIME = 0x100000001b3L;
+
+	public static long mix(long hash, long value) {
+		return (hash ^ value) * PRIME;
+	}
+
+	public static long mix(long hash, double value) {
+		return mix(hash, Double.doubleToLongBits(value));
+	}
+
+	public static long mix(long hash, Object value) {
+		return mix(hash, value == null ? 0 : value.hashCode());
+	}
+}
@@ -1,9 +1,9 @@
 package library;
 
+import java.awt.Color;
 import java.awt.image.BufferedImage;
-import java.util.LinkedList;
-import java.util.concurrent.Future;
-import java.util.function.Function;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
 
 import com.madgag.gif.fmsware.AnimatedGifEncoder;
 
@@ -21,83 +21,193 @@ import com.madgag.gif.fmsware.AnimatedGifEncoder;
  * You should have received a copy of the GNU General Public License along with
  * this program. If not, see <https://www.gnu.org/licenses/>.
  * 
+ * -----
+ * 
+ * Writes an animated GIF as its frames come in, rather than holding them all
+ * until the end.
+ * 
+ * Frames are numbered in the order they're reserved, which is the order
+ * they'll be in the GIF, but they can be finished in any order (say, by
+ * different threads). A finished frame waits only until every frame before it
+ * is done, then it's written and let go. So the only frames held at once are
+ * the ones that finished early, not the whole animation.
+ * 
+ * Whichever thread finishes the next frame in line does the writing; anyone
+ * else just drops theirs off and goes on. Once finish() is called and every
+ * reserved frame is done, the file is closed.
+ * 
+ * Given the colors the frames are drawn with, it writes them with a
+ * PaletteGifEncoder instead of an AnimatedGifEncoder, which is much faster and
+ * smaller for charts.
+ * 
  * @author jdorje@gmail.com
  */
 public class GifMaker {
 
-	private final LinkedList<Object> frames = new LinkedList<>();
+	private static class Frame {
+		final BufferedImage image;
+		final int delay;
+
+		Frame(BufferedImage image, int delay) {
+			this.image = image;
+			this.delay = delay;
+		}
+	}
+
+	// a frame that failed; it's just left out
+	private static final Frame SKIPPED = new Frame(null, 0);
+
+	// one or the other
+	private final AnimatedGifEncoder gif;
+	private final PaletteGifEncoder paletteGif;
 	private final String fileName;
-	private final Integer delay;
-	private final Function<Integer, Integer> getDelay;
+	private final int delay;
+
+	private final HashMap<Integer, Frame> waiting = new HashMap<>();
+	private final CompletableFuture<Void> finished = new CompletableFuture<>();
+	private int reserved = 0, written = 0;
+	private boolean writing = false, finishing = false;
 
+	/**
+	 * @param delay
+	 *            Default delay for each frame, in ms.
+	 */
 	public GifMaker(String fileName, int delay) {
+		this(fileName, delay, (Color[]) null);
+	}
+
+	/**
+	 * @param delay
+	 *            Default delay for each frame, in ms.
+	 * @param colors
+	 *            The colors the frames are drawn with, for a palette shared
+	 *            by all of them; or null to quantize each frame by itself.
+	 */
+	public GifMaker(String fileName, int delay, Color... colors) {
+		if (!fileName.endsWith(".gif")) {
+			fileName = fileName + ".gif";
+		}
 		this.fileName = fileName;
 		this.delay = delay;
-		getDelay = null;
+		if (colors == null) {
+			gif = new AnimatedGifEncoder();
+			paletteGif = null;
+			gif.start(fileName);
+		} else {
+			gif = null;
+			paletteGif = new PaletteGifEncoder(colors);
+			paletteGif.start(fileName);
+		}
 	}
 
-	public GifMaker(String fileName, Function<Integer, Integer> getDelay) {
-		this.fileName = fileName;
-		this.delay = null;
-		this.getDelay = getDelay;
+	public String getFileName() {
+		return fileName;
 	}
 
 	/**
-	 * No thread checking is done directly, so it's necessary that this only be
-	 * called after all the frames are added.
-	 * 
-	 * @return filename
+	 * @return The index of the next frame, to be given to setFrame or
+	 *         skipFrame when it's done.
 	 */
-	public String build() {
-		AnimatedGifEncoder gif = new AnimatedGifEncoder();
-		String name = fileName;
-
-		if (!name.endsWith(".gif")) {
-			name = name + ".gif";
+	public synchronized int reserveFrame() {
+		if (finishing) {
+			throw new IllegalStateException("Frame reserved after finish on " + fileName);
 		}
-		gif.start(name);
+		return reserved++;
+	}
 
-		if (delay != null) {
-			gif.setDelay(delay);
+	public void setFrame(int index, BufferedImage image, int frameDelay) {
+		if (image == null) {
+			skipFrame(index);
+			return;
 		}
+		deliver(index, new Frame(image, frameDelay));
+	}
 
-		while (frames.size() > 0) {
-			Object frame = frames.pop();
+	public void setFrame(int index, BufferedImage image) {
+		setFrame(index, image, delay);
+	}
+
+	public void skipFrame(int index) {
+		deliver(index, SKIPPED);
+	}
+
+	public void addFrame(BufferedImage image, int frameDelay) {
+		setFrame(reserveFrame(), image, frameDelay);
+	}
+
+	public void addFrame(BufferedImage image) {
+		addFrame(image, delay);
+	}
+
+	private void deliver(int index, Frame frame) {
+		synchronized (this) {
+			if (index < written || index >= reserved || waiting.containsKey(index)) {
+				throw new IllegalStateException("Frame " + index + " delivered twice or never reserved on " + fileName);
+			}
+			waiting.put(index, frame);
+			if (writing) {
+				// whoever's writing will get to it
+				return;
+			}
+			writing = true;
+		}
+		write();
+	}
 
-			if (getDelay != null) {
-				int size = frames.size();
-				gif.setDelay(getDelay.apply(size));
+	/*
+	 * Writes frames as long as the next one is there. Only one thread is ever
+	 * in here, and it doesn't hold the lock while encoding.
+	 */
+	private void write() {
+		while (true) {
+			Frame frame;
+			synchronized (this) {
+				frame = waiting.remove(written);
+				if (frame == null) {
+					writing = false;
+					if (finishing && written == reserved && !finished.isDone()) {
+						if (gif != null) {
+							gif.finish();
+						} else {
+							paletteGif.finish();
+						}
+						finished.complete(null);
+					}
+					return;
+				}
+				written++;
 			}
-			BufferedImage bufferedImage;
-			if (frame instanceof Future) {
+			if (frame != SKIPPED) {
 				try {
-					bufferedImage = ((Future<BufferedImage>) frame).get();
+					if (gif != null) {
+						gif.setDelay(frame.delay);
+						gif.addFrame(frame.image);
+					} else {
+						paletteGif.setDelay(frame.delay);
+						paletteGif.addFrame(frame.image);
+					}
 				} catch (Exception e) {
 					e.printStackTrace();
-					continue;
 				}
-			} else {
-				bufferedImage = (BufferedImage) frame;
 			}
-			gif.addFrame(bufferedImage);
 		}
-
-		gif.finish();
-		return name;
-
-	}
-
-	public void addFrame(Future<BufferedImage> frame) {
-		frames.push(frame);
 	}
 
-	public void addFrame(BufferedImage frame) {
-		frames.push(frame);
-	}
-
-	public void addFrameIf(boolean ifClause, Future<BufferedImage> frame) {
-		if (ifClause) {
-			addFrame(frame);
+	/**
+	 * No more frames will be reserved. The file is closed as soon as all the
+	 * reserved ones are written, which might be right now.
+	 * 
+	 * @return A future completed once the file is closed.
+	 */
+	public CompletableFuture<Void> finish() {
+		synchronized (this) {
+			finishing = true;
+			if (writing) {
+				return finished;
+			}
+			writing = true;
 		}
+		write();
+		return finished;
 	}
 }
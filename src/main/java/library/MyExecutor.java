@@ -1,8 +1,10 @@
 package library;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -19,6 +21,21 @@ import java.util.concurrent.TimeUnit;
  * I might refine this more in future, perhaps even creating my own executor
  * service that can create threads based on the CPU usage.
  * 
+ * There are two ways to back the pools, picked with -Dexecutor=fixed or
+ * -Dexecutor=forkjoin (the default).
+ * 
+ * "fixed" is the old way: two fixed pools of half the processors each. Code
+ * that waits on other code (TaskGroup.complete inside a build task, say) just
+ * holds its thread while it waits, so a few levels of that can leave the
+ * pool with nothing running.
+ * 
+ * "forkjoin" puts the code on a ForkJoinPool with a thread per processor.
+ * Waiting through get() is a managed block, so the pool starts a spare thread
+ * to keep the cores busy while one is waiting, and lets it go after. The web
+ * pool runs each task on its own virtual thread if the JVM has them (21+), or
+ * else on a cached pool, so a slow download never keeps anything else from
+ * starting.
+ * 
  * @author jdorje@gmail.com
  */
 public class MyExecutor {
@@ -26,10 +43,61 @@ public class MyExecutor {
 	private static final int processors = Runtime.getRuntime().availableProcessors();
 	private static final int threads = Math.max(processors / 2, 1);
 
-	private static final ExecutorService webPool = Executors.newFixedThreadPool(threads);
-	private static final ExecutorService codePool = Executors.newFixedThreadPool(threads);
+	private static final boolean FORK_JOIN = !"fixed".equals(System.getProperty("executor"));
+
+	private static final ExecutorService webPool = FORK_JOIN ? newWebPool() : Executors.newFixedThreadPool(threads);
+	private static final ExecutorService codePool = FORK_JOIN
+			? new ForkJoinPool(processors, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true)
+			: Executors.newFixedThreadPool(threads);
 	private static final ScheduledExecutorService schedule = Executors.newSingleThreadScheduledExecutor();
 
+	/*
+	 * Virtual threads are only there on 21+, and this builds for 17, so it's
+	 * looked up.
+	 */
+	private static ExecutorService newWebPool() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	private static class FutureBlocker implements ForkJoinPool.ManagedBlocker {
+		private final Future<?> future;
+
+		FutureBlocker(Future<?> future) {
+			this.future = future;
+		}
+
+		@Override
+		public boolean block() throws InterruptedException {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				// get() below will throw it
+			}
+			return true;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			return future.isDone();
+		}
+	}
+
+	/**
+	 * Waits for the future, the same as future.get(). But if this is a code
+	 * pool thread, the pool gets to run something else on another thread in
+	 * the meantime, so code that waits on other code can't starve the pool.
+	 */
+	public static <T> T get(Future<T> future) throws InterruptedException, ExecutionException {
+		if (!future.isDone()) {
+			ForkJoinPool.managedBlock(new FutureBlocker(future));
+		}
+		return future.get();
+	}
+
 	static Runnable catchWrapper(Runnable command) {
 		return new Runnable() {
 			@Override
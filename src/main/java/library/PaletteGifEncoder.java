@@ -0,0 +1,454 @@
+package library;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <https://www.gnu.org/licenses/>.
+ * 
+ * -----
+ * 
+ * An animated GIF encoder for charts, which are mostly a handful of known
+ * colors and change only a little from one frame to the next.
+ * 
+ * AnimatedGifEncoder runs NeuQuant on every frame to pick a palette, then
+ * writes every frame in full. Here instead there's one palette for the whole
+ * GIF, made up front from the colors the charts are drawn in: each of them,
+ * their antialiased blends toward the white and light gray backgrounds, a gray
+ * ramp, and a coarse color cube. That leaves room for the most common colors
+ * in the first frame that still aren't close to anything (mostly where
+ * translucent bands overlap), picked once and then kept for the whole GIF.
+ * Each pixel just maps to the nearest palette color (cached, since there are
+ * only so many distinct colors in a chart).
+ * 
+ * Then each frame after the first only writes the rectangle that changed from
+ * the previous frame, with the unchanged pixels inside it transparent, so
+ * they compress to nearly nothing.
+ * 
+ * Frames must all be the same size.
+ * 
+ * @author jdorje@gmail.com
+ */
+public class PaletteGifEncoder {
+
+	private static final int TRANSPARENT = 255;
+	private static final int CACHE_SIZE = 1 << 16;
+
+	private final int[] palette = new int[256];
+	private int paletteSize;
+
+	// rgb -> palette index, open addressing; keys have bit 24 set if used
+	private final int[] cacheKeys = new int[CACHE_SIZE];
+	private final byte[] cacheIndexes = new byte[CACHE_SIZE];
+	private int cacheCount = 0;
+
+	private OutputStream out;
+	private int width, height;
+	private int delay = 0;
+	private byte[] previous, current, rect;
+	private int[] row;
+
+	/**
+	 * @param colors
+	 *            The colors the frames are drawn with.
+	 */
+	public PaletteGifEncoder(Color... colors) {
+		LinkedHashSet<Integer> set = new LinkedHashSet<>();
+		LinkedHashSet<Integer> keys = new LinkedHashSet<>();
+		keys.add(Color.white.getRGB() & 0xffffff);
+		keys.add(Color.black.getRGB() & 0xffffff);
+		keys.add(Color.lightGray.getRGB() & 0xffffff);
+		keys.add(Color.gray.getRGB() & 0xffffff);
+		keys.add(Color.darkGray.getRGB() & 0xffffff);
+		for (Color color : colors) {
+			keys.add(color.getRGB() & 0xffffff);
+		}
+		set.addAll(keys);
+		for (int gray = 0; gray < 256; gray += 16) {
+			set.add(gray * 0x010101);
+		}
+		set.add(0xffffff);
+		int[] backgrounds = { 0xffffff, Color.lightGray.getRGB() & 0xffffff };
+		for (double blend : new double[] { 0.5, 0.25, 0.75 }) {
+			for (int key : keys) {
+				for (int background : backgrounds) {
+					set.add(blend(key, background, blend));
+				}
+			}
+		}
+		for (int r = 0; r < 256; r += 127) {
+			for (int g = 0; g < 256; g += 127) {
+				for (int b = 0; b < 256; b += 127) {
+					set.add((Math.min(r, 255) << 16) | (Math.min(g, 255) << 8) | Math.min(b, 255));
+				}
+			}
+		}
+		for (int rgb : set) {
+			if (paletteSize == TRANSPARENT) {
+				break;
+			}
+			palette[paletteSize++] = rgb;
+		}
+	}
+
+	private static int distance(int rgb1, int rgb2) {
+		int dr = ((rgb1 >> 16) & 0xff) - ((rgb2 >> 16) & 0xff);
+		int dg = ((rgb1 >> 8) & 0xff) - ((rgb2 >> 8) & 0xff);
+		int db = (rgb1 & 0xff) - (rgb2 & 0xff);
+		return 3 * dr * dr + 4 * dg * dg + 2 * db * db;
+	}
+
+	/*
+	 * Fills the rest of the palette from the first frame: repeatedly takes
+	 * the color with the most total error (count times distance to the
+	 * nearest palette color so far).
+	 */
+	private void fillPalette(BufferedImage image) {
+		HashMap<Integer, int[]> counts = new HashMap<>();
+		int[] pixels = new int[width];
+		for (int y = 0; y < height; y++) {
+			image.getRGB(0, y, width, 1, pixels, 0, width);
+			for (int x = 0; x < width; x++) {
+				counts.computeIfAbsent(pixels[x] & 0xffffff, k -> new int[1])[0]++;
+			}
+		}
+		int n = counts.size();
+		int[] colors = new int[n], weights = new int[n];
+		long[] errors = new long[n];
+		int i = 0;
+		for (Map.Entry<Integer, int[]> entry : counts.entrySet()) {
+			colors[i] = entry.getKey();
+			weights[i] = entry.getValue()[0];
+			errors[i] = (long) weights[i] * distance(colors[i], palette[nearest(colors[i])]);
+			i++;
+		}
+		while (paletteSize < TRANSPARENT) {
+			int worst = -1;
+			for (i = 0; i < n; i++) {
+				if (errors[i] > 0 && (worst < 0 || errors[i] > errors[worst])) {
+					worst = i;
+				}
+			}
+			if (worst < 0) {
+				break;
+			}
+			int added = colors[worst];
+			palette[paletteSize++] = added;
+			for (i = 0; i < n; i++) {
+				errors[i] = Math.min(errors[i], (long) weights[i] * distance(colors[i], added));
+			}
+		}
+	}
+
+	private static int blend(int rgb, int background, double fraction) {
+		int r = (int) Math.round(((rgb >> 16) & 0xff) * fraction + ((background >> 16) & 0xff) * (1 - fraction));
+		int g = (int) Math.round(((rgb >> 8) & 0xff) * fraction + ((background >> 8) & 0xff) * (1 - fraction));
+		int b = (int) Math.round((rgb & 0xff) * fraction + (background & 0xff) * (1 - fraction));
+		return (r << 16) | (g << 8) | b;
+	}
+
+	private int nearest(int rgb) {
+		int best = 0, bestDistance = Integer.MAX_VALUE;
+		for (int i = 0; i < paletteSize; i++) {
+			int distance = distance(rgb, palette[i]);
+			if (distance < bestDistance) {
+				best = i;
+				bestDistance = distance;
+				if (distance == 0) {
+					break;
+				}
+			}
+		}
+		return best;
+	}
+
+	private int index(int rgb) {
+		rgb &= 0xffffff;
+		int key = rgb | 0x1000000;
+		int slot = (rgb * 0x9E3779B1) >>> 16;
+		while (true) {
+			if (cacheKeys[slot] == key) {
+				return cacheIndexes[slot] & 0xff;
+			}
+			if (cacheKeys[slot] == 0) {
+				break;
+			}
+			slot = (slot + 1) & (CACHE_SIZE - 1);
+		}
+		if (cacheCount > CACHE_SIZE * 3 / 4) {
+			Arrays.fill(cacheKeys, 0);
+			cacheCount = 0;
+			return index(rgb);
+		}
+		int index = nearest(rgb);
+		cacheKeys[slot] = key;
+		cacheIndexes[slot] = (byte) index;
+		cacheCount++;
+		return index;
+	}
+
+	public boolean start(String fileName) {
+		try {
+			out = new BufferedOutputStream(new FileOutputStream(fileName));
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * @param ms
+	 *            Delay for the frames after this, in ms.
+	 */
+	public void setDelay(int ms) {
+		delay = Math.round(ms / 10.0f);
+	}
+
+	private void writeShort(int value) throws IOException {
+		out.write(value & 0xff);
+		out.write((value >> 8) & 0xff);
+	}
+
+	private void writeHeader() throws IOException {
+		out.write("GIF89a".getBytes());
+		writeShort(width);
+		writeShort(height);
+		// global color table of 256, 8 bits of color resolution
+		out.write(0xf7);
+		out.write(0);
+		out.write(0);
+		for (int i = 0; i < 256; i++) {
+			int rgb = palette[i];
+			out.write((rgb >> 16) & 0xff);
+			out.write((rgb >> 8) & 0xff);
+			out.write(rgb & 0xff);
+		}
+		// loop forever
+		out.write(0x21);
+		out.write(0xff);
+		out.write(11);
+		out.write("NETSCAPE2.0".getBytes());
+		out.write(3);
+		out.write(1);
+		writeShort(0);
+		out.write(0);
+	}
+
+	public boolean addFrame(BufferedImage image) {
+		if (out == null || image == null) {
+			return false;
+		}
+		try {
+			boolean first = previous == null;
+			if (first) {
+				width = image.getWidth();
+				height = image.getHeight();
+				previous = new byte[width * height];
+				current = new byte[width * height];
+				rect = new byte[width * height];
+				row = new int[width];
+				fillPalette(image);
+				writeHeader();
+			} else if (image.getWidth() != width || image.getHeight() != height) {
+				throw new IllegalArgumentException("Frame is " + image.getWidth() + "x" + image.getHeight()
+						+ " but the GIF is " + width + "x" + height);
+			}
+
+			// map to the palette and find what changed
+			int left = width, right = -1, top = height, bottom = -1;
+			int lastRgb = 0, lastIndex = index(0);
+			for (int y = 0; y < height; y++) {
+				image.getRGB(0, y, width, 1, row, 0, width);
+				int offset = y * width;
+				for (int x = 0; x < width; x++) {
+					int rgb = row[x];
+					if (rgb != lastRgb) {
+						lastRgb = rgb;
+						lastIndex = index(rgb);
+					}
+					current[offset + x] = (byte) lastIndex;
+					if (first || current[offset + x] != previous[offset + x]) {
+						left = Math.min(left, x);
+						right = Math.max(right, x);
+						top = Math.min(top, y);
+						bottom = Math.max(bottom, y);
+					}
+				}
+			}
+			if (right < 0) {
+				// nothing changed, but the frame is still needed for its delay
+				left = right = top = bottom = 0;
+			}
+			int w = right - left + 1, h = bottom - top + 1;
+			int n = 0;
+			for (int y = top; y <= bottom; y++) {
+				int offset = y * width;
+				for (int x = left; x <= right; x++) {
+					byte index = current[offset + x];
+					rect[n++] = (!first && index == previous[offset + x]) ? (byte) TRANSPARENT : index;
+				}
+			}
+			byte[] swap = previous;
+			previous = current;
+			current = swap;
+
+			// graphic control: keep the previous frame underneath, transparency
+			out.write(0x21);
+			out.write(0xf9);
+			out.write(4);
+			out.write((1 << 2) | (first ? 0 : 1));
+			writeShort(delay);
+			out.write(TRANSPARENT);
+			out.write(0);
+
+			// image descriptor, using the global palette
+			out.write(0x2c);
+			writeShort(left);
+			writeShort(top);
+			writeShort(w);
+			writeShort(h);
+			out.write(0);
+
+			out.write(8);
+			new Lzw(out).encode(rect, n);
+			out.write(0);
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	public boolean finish() {
+		if (out == null) {
+			return false;
+		}
+		try {
+			out.write(0x3b);
+			out.close();
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		} finally {
+			out = null;
+		}
+	}
+
+	/*
+	 * GIF's variable-length LZW, 8-bit pixels and codes up to 12 bits, written
+	 * in sub-blocks of up to 255 bytes.
+	 */
+	private static class Lzw {
+		private static final int CLEAR = 256, END = 257, MAX_CODE = 4096;
+		private static final int HASH_SIZE = 5003;
+
+		private final OutputStream out;
+		private final int[] hashKeys = new int[HASH_SIZE];
+		private final int[] hashCodes = new int[HASH_SIZE];
+		private final byte[] block = new byte[255];
+		private int blockSize = 0;
+		private int bits = 0, bitCount = 0;
+		private int codeSize = 9, next = END + 1;
+		private boolean clearing = false;
+
+		Lzw(OutputStream out) {
+			this.out = out;
+			Arrays.fill(hashKeys, -1);
+		}
+
+		private void writeByte(int b) throws IOException {
+			block[blockSize++] = (byte) b;
+			if (blockSize == 255) {
+				flushBlock();
+			}
+		}
+
+		private void flushBlock() throws IOException {
+			if (blockSize > 0) {
+				out.write(blockSize);
+				out.write(block, 0, blockSize);
+				blockSize = 0;
+			}
+		}
+
+		private void output(int code) throws IOException {
+			bits |= code << bitCount;
+			bitCount += codeSize;
+			while (bitCount >= 8) {
+				writeByte(bits & 0xff);
+				bits >>>= 8;
+				bitCount -= 8;
+			}
+			// the decoder widens its codes one code behind us
+			if (clearing) {
+				codeSize = 9;
+				clearing = false;
+			} else if (next >= (1 << codeSize) && codeSize < 12) {
+				codeSize++;
+			}
+		}
+
+		void encode(byte[] pixels, int length) throws IOException {
+			output(CLEAR);
+			int prefix = pixels[0] & 0xff;
+			for (int i = 1; i < length; i++) {
+				int c = pixels[i] & 0xff;
+				int key = (prefix << 8) | c;
+				int slot = (key * 31 + c) % HASH_SIZE;
+				if (slot < 0) {
+					slot += HASH_SIZE;
+				}
+				boolean found = false;
+				while (hashKeys[slot] != -1) {
+					if (hashKeys[slot] == key) {
+						found = true;
+						break;
+					}
+					slot = slot == 0 ? HASH_SIZE - 1 : slot - 1;
+				}
+				if (found) {
+					prefix = hashCodes[slot];
+					continue;
+				}
+				output(prefix);
+				prefix = c;
+				if (next < MAX_CODE) {
+					hashKeys[slot] = key;
+					hashCodes[slot] = next++;
+				} else {
+					Arrays.fill(hashKeys, -1);
+					next = END + 1;
+					clearing = true;
+					output(CLEAR);
+				}
+			}
+			output(prefix);
+			output(END);
+			if (bitCount > 0) {
+				writeByte(bits & 0xff);
+			}
+			flushBlock();
+		}
+	}
+}
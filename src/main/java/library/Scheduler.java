@@ -0,0 +1,245 @@
+package library;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/**
+ * Runs a set of tasks on the code pool, in a better order than first come
+ * first served.
+ * 
+ * Each task has a priority and a cost estimate, and can depend on other tasks.
+ * A task is only started once everything it depends on is done, so something
+ * several tasks need can be computed once up front instead of by whichever of
+ * them gets there first (with the rest waiting on it). Of the tasks that are
+ * ready, the highest priority goes first; within a priority, the one with the
+ * longest chain of work still hanging off it goes first, so long tasks don't
+ * start last and make everything wait on them at the end.
+ * 
+ * The estimates are in ms. If costs from a previous run were loaded, the time
+ * each task actually took then is used instead.
+ * 
+ * @author jdorje@gmail.com
+ */
+public class Scheduler {
+
+	public static final int NORMAL = 0, HIGH = 1;
+
+	public class Task {
+		private final String name;
+		private final Runnable code;
+		private final long cost;
+		private final int sequence;
+		private final ArrayList<Task> dependencies = new ArrayList<>();
+		private final ArrayList<Task> dependents = new ArrayList<>();
+		private int priority;
+		private long rank; // cost of this plus the longest chain after it
+		private int waitingOn = 0;
+		private boolean ready = false, done = false;
+		private long nanos, finishedNanos;
+
+		private Task(String name, int priority, long cost, Runnable code, int sequence) {
+			this.name = name;
+			this.priority = priority;
+			this.cost = cost;
+			this.rank = cost;
+			this.code = code;
+			this.sequence = sequence;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	private final PriorityQueue<Task> ready = new PriorityQueue<>((t1, t2) -> {
+		if (t1.priority != t2.priority) {
+			return Integer.compare(t2.priority, t1.priority);
+		}
+		if (t1.rank != t2.rank) {
+			return Long.compare(t2.rank, t1.rank);
+		}
+		return Integer.compare(t1.sequence, t2.sequence);
+	});
+
+	private final HashMap<String, Long> previousCosts = new HashMap<>();
+	private final HashMap<String, Long> costs = new HashMap<>();
+	private final ArrayList<Task> finished = new ArrayList<>();
+	private final TaskGroup<Void> group;
+	private int tasks = 0;
+	private long started = 0;
+
+	public Scheduler(String name) {
+		group = new TaskGroup<>(name);
+	}
+
+	/**
+	 * Adds a task. It starts as soon as its dependencies are done and it's the
+	 * best of what's ready.
+	 * 
+	 * @param name
+	 *            Names should be unique, since they're what costs are saved
+	 *            under.
+	 * @param estimate
+	 *            Roughly how long it'll take, in ms.
+	 */
+	public synchronized Task add(String name, int priority, long estimate, Runnable code, Task... dependencies) {
+		Long previous = previousCosts.get(name);
+		Task task = new Task(name, priority, previous == null ? estimate : previous, code, tasks++);
+		if (started == 0) {
+			started = System.nanoTime();
+		}
+		for (Task dependency : dependencies) {
+			if (!dependency.done) {
+				task.waitingOn++;
+				task.dependencies.add(dependency);
+				dependency.dependents.add(task);
+				promote(dependency, task.priority, task.rank);
+			}
+		}
+		if (task.waitingOn == 0) {
+			makeReady(task);
+		}
+		return task;
+	}
+
+	/*
+	 * A dependency is at least as urgent as what's waiting on it, and has at
+	 * least as much work after it.
+	 */
+	private void promote(Task task, int priority, long rankAfter) {
+		if (task.done || (task.priority >= priority && task.rank >= task.cost + rankAfter)) {
+			return;
+		}
+		boolean queued = task.ready && ready.remove(task);
+		task.priority = Math.max(task.priority, priority);
+		task.rank = Math.max(task.rank, task.cost + rankAfter);
+		if (queued) {
+			ready.add(task);
+		}
+		// tasks are only added after their dependencies, so no cycles
+		for (Task dependency : task.dependencies) {
+			promote(dependency, task.priority, task.rank);
+		}
+	}
+
+	private void makeReady(Task task) {
+		task.ready = true;
+		ready.add(task);
+		// each runner takes whatever's best when it actually starts
+		group.execute(this::runNext);
+	}
+
+	private void runNext() {
+		Task task;
+		synchronized (this) {
+			task = ready.poll();
+		}
+		if (task == null) {
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			task.code.run();
+		} catch (Exception e) {
+			System.out.println("Fail on " + task.name);
+			e.printStackTrace();
+		}
+		long nanos = System.nanoTime() - start;
+		synchronized (this) {
+			task.nanos = nanos;
+			task.finishedNanos = System.nanoTime();
+			task.done = true;
+			costs.put(task.name, Math.max(nanos / 1000000, 1));
+			finished.add(task);
+			for (Task dependent : task.dependents) {
+				if (--dependent.waitingOn == 0) {
+					makeReady(dependent);
+				}
+			}
+			task.dependencies.clear();
+		}
+	}
+
+	/**
+	 * @return The number of tasks added.
+	 */
+	public synchronized int getExecutions() {
+		return tasks;
+	}
+
+	/**
+	 * Waits until every task that's been added is done. This is only called
+	 * once, after everything's been added.
+	 */
+	public void complete() {
+		group.complete();
+	}
+
+	/**
+	 * Prints the slowest few tasks, and how long it took for all the high
+	 * priority ones to be done.
+	 */
+	public synchronized void report(int count) {
+		group.report();
+		ArrayList<Task> slowest = new ArrayList<>(finished);
+		slowest.sort((t1, t2) -> Long.compare(t2.nanos, t1.nanos));
+		for (int i = 0; i < count && i < slowest.size(); i++) {
+			Task task = slowest.get(i);
+			System.out.println("\t" + task.name + " : " + task.nanos / 1000000 + " ms");
+		}
+		long highDone = 0;
+		for (Task task : finished) {
+			if (task.priority >= HIGH) {
+				highDone = Math.max(highDone, task.finishedNanos - started);
+			}
+		}
+		if (highDone > 0) {
+			System.out.println("High priority tasks done in " + highDone / 1000000 + " ms.");
+		}
+	}
+
+	public synchronized void loadCosts(String fileName) {
+		File file = new File(fileName);
+		if (!file.exists()) {
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String name = in.readUTF();
+				previousCosts.put(name, in.readLong());
+			}
+		} catch (IOException e) {
+			System.out.println("Failed to read task costs; using estimates.");
+			previousCosts.clear();
+		}
+	}
+
+	/**
+	 * Saves how long each task took, for the next run's loadCosts.
+	 */
+	public synchronized void saveCosts(String fileName) {
+		HashMap<String, Long> all = new HashMap<>(previousCosts);
+		all.putAll(costs);
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(fileName)))) {
+			out.writeInt(all.size());
+			for (String name : all.keySet()) {
+				out.writeUTF(name);
+				out.writeLong(all.get(name));
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			new File(fileName).delete();
+		}
+	}
+}
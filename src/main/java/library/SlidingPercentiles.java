@@ -0,0 +1,97 @@
+package library;
+
+import java.util.Arrays;
+
+/**
+ * Percentiles of a window of values that slides along: values are added and
+ * removed one at a time and the window is always kept sorted, so getting a
+ * percentile is just an array lookup.
+ * 
+ * Each add or remove is a binary search plus one small array shift. For the
+ * few hundred values the charts use that's far cheaper than sorting the whole
+ * window for every point, and nothing is allocated after the constructor.
+ * 
+ * Percentiles are computed exactly the way commons-math's
+ * DescriptiveStatistics.getPercentile does, so switching between them doesn't
+ * change any numbers.
+ * 
+ * Not thread safe.
+ * 
+ * @author jdorje@gmail.com
+ */
+public class SlidingPercentiles {
+
+	private final double[] sorted;
+	private int size = 0;
+
+	public SlidingPercentiles(int capacity) {
+		sorted = new double[capacity];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Adds a value to the window.
+	 * 
+	 * @param value
+	 *            The value, which can't be NaN.
+	 */
+	public void add(double value) {
+		if (size == sorted.length) {
+			throw new RuntimeException("Window is full at " + size + " values.");
+		}
+		int index = Arrays.binarySearch(sorted, 0, size, value);
+		if (index < 0) {
+			index = -index - 1;
+		}
+		System.arraycopy(sorted, index, sorted, index + 1, size - index);
+		sorted[index] = value;
+		size++;
+	}
+
+	/**
+	 * Removes one copy of a value that was added before.
+	 */
+	public void remove(double value) {
+		int index = Arrays.binarySearch(sorted, 0, size, value);
+		if (index < 0) {
+			throw new RuntimeException("Value " + value + " isn't in the window.");
+		}
+		System.arraycopy(sorted, index + 1, sorted, index, size - index - 1);
+		size--;
+	}
+
+	/**
+	 * @param percentile
+	 *            From 0 (exclusive) to 100.
+	 * @return The percentile of the values in the window, or NaN if there
+	 *         aren't any.
+	 */
+	public double getPercentile(double percentile) {
+		if (size == 0) {
+			return Double.NaN;
+		}
+		if (size == 1) {
+			return sorted[0];
+		}
+		double position = (percentile / 100) * (size + 1);
+		double floor = Math.floor(position);
+		int intPosition = (int) floor;
+		double dif = position - floor;
+		if (position < 1) {
+			return sorted[0];
+		}
+		if (position >= size) {
+			return sorted[size - 1];
+		}
+		double lower = sorted[intPosition - 1];
+		double upper = sorted[intPosition];
+		return lower + dif * (upper - lower);
+	}
+}
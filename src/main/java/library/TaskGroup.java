@@ -0,0 +1,275 @@
+package library;
+
+import java.util.ArrayList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Runs some things asynchronously on the code pool, then waits on them.
+ * 
+ * Tasks can add more tasks to the group while they run; the group is done
+ * once it's been closed and everything in it has finished. Nothing needs to
+ * sit on a thread waiting for that: whenDone() gives a future that completes
+ * right then. complete() waits on it, but as a managed block, so waiting from
+ * inside another task doesn't tie up the pool.
+ * 
+ * Results can be taken in the order they finish, not the order they were
+ * submitted, so one slow task doesn't hold up handling the rest.
+ * 
+ * A failure is printed as soon as it happens. In a fail-fast group it also
+ * cancels everything in the group that hasn't started yet, and complete()
+ * throws it. Otherwise the rest keep going and complete() just says how many
+ * failed.
+ * 
+ * @author jdorje@gmail.com
+ */
+public class TaskGroup<V> {
+
+	private final String name;
+	private final boolean failFast;
+	private final long startNanos = System.nanoTime();
+
+	private final ArrayList<CompletableFuture<V>> running = new ArrayList<>();
+	private final BlockingQueue<CompletableFuture<V>> finished = new LinkedBlockingQueue<>();
+	private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+	// starts at one for the group itself being open
+	private int pending = 1, untaken = 0, executions = 0, failures = 0;
+	private Throwable failure;
+	private long busyNanos = 0, slowestNanos = 0, doneNanos = 0;
+
+	public TaskGroup(String name) {
+		this(name, false);
+	}
+
+	/**
+	 * @param failFast
+	 *            If any task fails, cancel the ones that haven't started and
+	 *            have complete() throw.
+	 */
+	public TaskGroup(String name, boolean failFast) {
+		this.name = name;
+		this.failFast = failFast;
+	}
+
+	/**
+	 * Start executing the given code as soon as there's a thread for it.
+	 * 
+	 * @return A future for the result, which is also handed out by take().
+	 */
+	public CompletableFuture<V> submit(Callable<V> func) {
+		CompletableFuture<V> future = new CompletableFuture<>();
+		synchronized (this) {
+			if (pending == 0) {
+				throw new IllegalStateException("Task added to finished group " + name);
+			}
+			if (failFast && failure != null) {
+				future.cancel(false);
+				return future;
+			}
+			pending++;
+			untaken++;
+			executions++;
+			running.add(future);
+		}
+		MyExecutor.executeCode(() -> run(func, future));
+		return future;
+	}
+
+	/**
+	 * Start executing the given code as soon as there's a thread for it.
+	 */
+	public CompletableFuture<V> execute(Runnable func) {
+		return submit(() -> {
+			func.run();
+			return null;
+		});
+	}
+
+	private void run(Callable<V> func, CompletableFuture<V> future) {
+		long start = System.nanoTime();
+		V value = null;
+		Throwable thrown = null;
+		if (!future.isDone()) {
+			try {
+				value = func.call();
+			} catch (Throwable e) {
+				thrown = e;
+			}
+		}
+		long nanos = System.nanoTime() - start;
+
+		ArrayList<CompletableFuture<V>> cancel = null;
+		synchronized (this) {
+			busyNanos += nanos;
+			slowestNanos = Math.max(slowestNanos, nanos);
+			running.remove(future);
+			if (thrown != null) {
+				failures++;
+				if (failure == null) {
+					failure = thrown;
+					if (failFast) {
+						cancel = new ArrayList<>(running);
+					}
+				}
+			}
+		}
+		if (thrown != null) {
+			System.out.println("Fail in " + name);
+			thrown.printStackTrace();
+			future.completeExceptionally(thrown);
+		} else {
+			future.complete(value);
+		}
+		if (cancel != null) {
+			// the ones already running will finish; the rest won't start
+			for (CompletableFuture<V> sibling : cancel) {
+				sibling.cancel(false);
+			}
+		}
+		finished.add(future);
+		release();
+	}
+
+	private void release() {
+		boolean last;
+		synchronized (this) {
+			last = --pending == 0;
+			if (last) {
+				doneNanos = System.nanoTime() - startNanos;
+			}
+		}
+		if (!last) {
+			return;
+		}
+		if (failFast && failure != null) {
+			done.completeExceptionally(failure);
+		} else {
+			done.complete(null);
+		}
+	}
+
+	/**
+	 * Says no more tasks will be added from outside the group (tasks in it can
+	 * still add more). This can only be done once.
+	 * 
+	 * @return The same future as whenDone().
+	 */
+	public CompletableFuture<Void> close() {
+		release();
+		return done;
+	}
+
+	/**
+	 * @return A future completed once the group is closed and every task in
+	 *         it is done; exceptionally, in a fail-fast group that had a
+	 *         failure.
+	 */
+	public CompletableFuture<Void> whenDone() {
+		return done;
+	}
+
+	/**
+	 * Closes the group and waits until all code that has been executed is
+	 * completed.
+	 */
+	public void complete() {
+		close();
+		try {
+			MyExecutor.get(done);
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Fail in " + name, e.getCause());
+		}
+		if (failures > 0) {
+			System.out.println(name + ": " + failures + " of " + executions + " tasks failed.");
+		}
+	}
+
+	/**
+	 * Waits until the next task finishes, and returns its result, in the order
+	 * they finish. Null results are skipped, and so are failed tasks unless
+	 * the group is fail-fast, in which case this throws. Returns null once
+	 * every result has been taken.
+	 */
+	public V take() {
+		while (true) {
+			synchronized (this) {
+				if (untaken == 0) {
+					return null;
+				}
+				untaken--;
+			}
+			CompletableFuture<V> future = finished.poll();
+			if (future == null) {
+				QueueBlocker blocker = new QueueBlocker();
+				try {
+					ForkJoinPool.managedBlock(blocker);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				future = blocker.item;
+			}
+			if (future.isCompletedExceptionally()) {
+				if (failFast) {
+					synchronized (this) {
+						throw new RuntimeException("Fail in " + name, failure);
+					}
+				}
+				continue;
+			}
+			V value = future.join();
+			if (value != null) {
+				return value;
+			}
+		}
+	}
+
+	private class QueueBlocker implements ForkJoinPool.ManagedBlocker {
+		CompletableFuture<V> item;
+
+		@Override
+		public boolean block() throws InterruptedException {
+			if (item == null) {
+				item = finished.take();
+			}
+			return true;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			return item != null || (item = finished.poll()) != null;
+		}
+	}
+
+	/**
+	 * @return The number of tasks whose results haven't been taken yet,
+	 *         whether or not they've finished.
+	 */
+	public synchronized int getUntaken() {
+		return untaken;
+	}
+
+	/**
+	 * @return The number of tasks added.
+	 */
+	public synchronized int getExecutions() {
+		return executions;
+	}
+
+	/**
+	 * Prints how long the group took, and how much of that was spent in its
+	 * tasks.
+	 */
+	public synchronized void report() {
+		long wall = doneNanos == 0 ? System.nanoTime() - startNanos : doneNanos;
+		System.out.println(name + ": " + executions + " tasks in " + wall / 1000000 + " ms, "
+				+ busyNanos / 1000000 + " ms busy, slowest " + slowestNanos / 1000000 + " ms"
+				+ (failures == 0 ? "." : ", " + failures + " failed."));
+	}
+}
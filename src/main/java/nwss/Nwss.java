@@ -13,10 +13,11 @@ import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 
-import charts.Chart;
+import charts.ChartManifest;
+import charts.ChartPipeline;
 import charts.ChartSewage;
 import covid.CalendarUtils;
-import library.ASync;
+import library.TaskGroup;
 import library.GitUpdater;
 import variants.Aliases;
 import variants.LEnum;
@@ -53,6 +54,10 @@ public class Nwss {
 	private sewage.All all = new sewage.All("United States");
 	private sewage.Geo geo = new sewage.Geo(37.8921116, -106.0125575);
 
+	public static final String REFRESH = System.getProperty("java.io.tmpdir") + "\\" + FOLDER + "\\"
+			+ "refresh.dat";
+	private final sewage.Refresh refresh = new sewage.Refresh(REFRESH);
+
 	// private Fips fips;
 	private Regions regionList = new Regions();
 
@@ -235,7 +240,7 @@ public class Nwss {
 	public void read() {
 
 		long time = System.currentTimeMillis();
-		ASync<Chart> build = new ASync<>();
+		TaskGroup<Void> build = new TaskGroup<>("Read");
 		build.execute(() -> {
 			new GitUpdater(GIT_LOCATION).update();
 			build.execute(() -> Aliases.build());
@@ -264,6 +269,7 @@ public class Nwss {
 		});
 
 		build.complete();
+		build.report();
 
 		System.out.println("Read stuff in " + (System.currentTimeMillis() - time) / 1000 + "s.");
 		time = System.currentTimeMillis();
@@ -271,39 +277,54 @@ public class Nwss {
 		all.build(plants.values());
 
 		// JFC this is tedious
+		sewage.Rollup rollup = new sewage.Rollup();
 		plants.forEach((plantId, sewage) -> {
 			String state = sewage.getState();
 			if (state != null) {
 				String region = regionList.getRegion(state);
-				getRegionSewage(region).includeSewage(sewage, 1.0);
-				getStateSewage(state).includeSewage(sewage, 1.0);
+				rollup.include(getRegionSewage(region), sewage, 1.0);
+				rollup.include(getStateSewage(state), sewage, 1.0);
 				String c = sewage.getCounties();
 				if (c != null) {
 					String[] countyNames = c.split(",");
 					for (String county : countyNames) {
 						sewage.County cSew = getCountySewage(county, state);
-						cSew.includeSewage(sewage, 1.0 / countyNames.length);
-						cSew.addChild(sewage);
+						rollup.include(cSew, sewage, 1.0 / countyNames.length);
+						rollup.addChild(cSew, sewage);
 					}
 				}
 			}
-			geo.includeSewage(sewage, 1.0);
+			rollup.include(geo, sewage, 1.0);
 		});
 
-		regions.values().forEach(sewage -> all.addChild(sewage));
+		regions.values().forEach(sewage -> rollup.addChild(all, sewage));
 		states.forEach((stateId, sewage) -> {
 			String r = regionList.getRegion(stateId);
 			sewage.Multi rSew = getRegionSewage(r);
-			rSew.addChild(sewage);
+			rollup.addChild(rSew, sewage);
 		});
 		counties.forEach((countyId, sewage) -> {
 			sewage.State sSew = getStateSewage(sewage.getState());
-			sSew.addChild(sewage);
+			rollup.addChild(sSew, sewage);
 		});
+		rollup.build();
+
+		// only what's changed since the last build needs charts again
+		plants.values().forEach(sewage -> refresh.checkPlant(sewage));
+		plants.values().forEach(sewage -> rollup.track(all, sewage));
+		rollup.checkDirty(refresh);
+		refresh.report();
 
 		System.out.println("Built combos in " + (System.currentTimeMillis() - time) / 1000 + "s.");
 	}
 
+	/*
+	 * Builds the charts, and once they're all written marks them up to date.
+	 */
+	private void createSewage(sewage.Abstract sewage, Integer maxChildren) {
+		ChartSewage.createSewage(sewage, maxChildren).thenRun(() -> refresh.built(sewage));
+	}
+
 	public void build() {
 		long time = System.currentTimeMillis();
 		ChartSewage.mkdirs();
@@ -312,7 +333,7 @@ public class Nwss {
 		System.out.println("Built dirs in " + (System.currentTimeMillis() - time) / 1000 + "s.");
 		time = System.currentTimeMillis();
 
-		ASync<Chart> build = new ASync<>();
+		TaskGroup<Void> build = new TaskGroup<>("Sewage charts");
 
 		// build.execute(() -> ChartSewage.createSewage(geo));
 		if (variants != null) {
@@ -328,12 +349,23 @@ public class Nwss {
 				}
 			});
 		}
-		build.execute(() -> ChartSewage.createSewage(all, null));
-		plants.forEach((id, sewage) -> build.execute(() -> ChartSewage.createSewage(sewage, null)));
-		counties.forEach((id, sewage) -> build.execute(() -> ChartSewage.createSewage(sewage, null)));
-		states.forEach((id, sewage) -> build.execute(() -> ChartSewage.createSewage(sewage, 5)));
-		regions.forEach((id, sewage) -> build.execute(() -> ChartSewage.createSewage(sewage, null)));
+		if (all.isDirty()) {
+			build.execute(() -> createSewage(all, null));
+		}
+		plants.values().stream().filter(sewage -> sewage.isDirty())
+				.forEach(sewage -> build.execute(() -> createSewage(sewage, null)));
+		counties.values().stream().filter(sewage -> sewage.isDirty())
+				.forEach(sewage -> build.execute(() -> createSewage(sewage, null)));
+		states.values().stream().filter(sewage -> sewage.isDirty())
+				.forEach(sewage -> build.execute(() -> createSewage(sewage, 5)));
+		regions.values().stream().filter(sewage -> sewage.isDirty())
+				.forEach(sewage -> build.execute(() -> createSewage(sewage, null)));
 		build.complete();
+		build.report();
+		ChartPipeline.flush();
+		ChartPipeline.report();
+		ChartManifest.save();
+		refresh.save();
 		System.out.println("Built charts " + (System.currentTimeMillis() - time) / 1000 + "s.");
 		time = System.currentTimeMillis();
 		library.OpenImage.open();
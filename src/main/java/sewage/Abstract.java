@@ -2,18 +2,17 @@ package sewage;
 
 import java.awt.Color;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.LinkedList;
 
 import org.apache.commons.math3.stat.regression.SimpleRegression;
 import org.jfree.chart.plot.ValueMarker;
 import org.jfree.chart.ui.TextAnchor;
-import org.jfree.data.time.TimeSeries;
 
+import charts.ArrayDataset;
 import charts.Charts;
 import covid.CalendarUtils;
 import covid.DailyTracker;
-import nwss.DaySewage;
 
 public abstract class Abstract extends DailyTracker {
 
@@ -23,7 +22,20 @@ public abstract class Abstract extends DailyTracker {
 	 */
 	private Integer population;
 
-	private final HashMap<Integer, DaySewage> entries = new HashMap<>();
+	/*
+	 * Each day's numbers, in arrays indexed from dayOffset (which is at or
+	 * before getFirstDay()). A day with no data has NaN sewage.
+	 * 
+	 * For a plant the sewage is just the value and the pops aren't used. For a
+	 * multi it's the total of each plant's sewage times its effective pop, so
+	 * the day's sewage is that over effPop; realPop is the plain total.
+	 */
+	private int dayOffset = 0;
+	private double[] sewageTot = new double[0], effPop = new double[0], realPop = new double[0];
+	private boolean weighted = false;
+
+	// whether its charts need building; see Refresh
+	private boolean dirty = true;
 
 	public abstract String getTSName();
 
@@ -108,12 +120,12 @@ public abstract class Abstract extends DailyTracker {
 
 	}
 
-	public synchronized TimeSeries makeTimeSeries(String name, boolean yearlyAverage) {
+	public synchronized ArrayDataset.Series makeTimeSeries(String name, boolean yearlyAverage) {
 		build();
 		if (name == null) {
 			name = getTSName();
 		}
-		TimeSeries series = new TimeSeries(name);
+		ArrayDataset.Series series = new ArrayDataset.Series(name);
 		int today = CalendarUtils.timeToDay(System.currentTimeMillis());
 		Integer popo = getPopulation();
 		for (int day = getFirstDay(); day <= today; day++) {
@@ -121,30 +133,30 @@ public abstract class Abstract extends DailyTracker {
 			if (yearlyAverage) {
 				number = 0;
 				for (int day2 = day; day2 > day - 365; day2--) {
-					DaySewage entry = getEntry(day2);
-					if (entry != null) {
-						number += entry.getSewage();
+					double s = getSewage(day2);
+					if (!Double.isNaN(s)) {
+						number += s;
 					}
 				}
 				number /= 365.0;
 			} else {
-				DaySewage entry = getEntry(day);
-				if (entry == null) {
+				double s = getSewage(day);
+				if (Double.isNaN(s)) {
 					continue;
 				}
 
-				Double pop = entry.getPop();
+				Double pop = getPop(day);
 				if (pop != null && popo != null && pop < popo / 4.0 && day > getLastDay() - 21) {
 					break;
 				}
 
-				number = entry.getSewage();
+				number = s;
 				number *= getNormalizer();
 			}
 			if (number <= 0) {
 				number = 1E-6;
 			}
-			series.add(CalendarUtils.dayToDay(day), number);
+			series.addDay(day, number);
 		}
 		return series;
 	}
@@ -165,14 +177,14 @@ public abstract class Abstract extends DailyTracker {
 	}
 
 	public synchronized Double getNormalized(int day) {
-		DaySewage entry = getEntry(day);
-		if (entry == null) {
+		double s = getSewage(day);
+		if (Double.isNaN(s)) {
 			return null;
 		}
-		return entry.getSewage() * getNormalizer();
+		return s * getNormalizer();
 	}
 
-	public synchronized TimeSeries makeFitSeries(int numDays) {
+	public synchronized ArrayDataset.Series makeFitSeries(int numDays) {
 		build();
 		final SimpleRegression fit = new SimpleRegression();
 		Double confidence = null;
@@ -187,12 +199,11 @@ public abstract class Abstract extends DailyTracker {
 		}
 
 		for (int day = endDay; day >= startDay; day--) {
-			DaySewage entry = getEntry(day);
-			if (entry == null) {
+			double number = getSewage(day);
+			if (Double.isNaN(number)) {
 				continue;
 			}
 
-			double number = entry.getSewage();
 			number *= getNormalizer();
 			double val = Math.log(number);
 			fit.addData(day, val);
@@ -210,10 +221,10 @@ public abstract class Abstract extends DailyTracker {
 
 		try {
 			int today = CalendarUtils.timeToDay(System.currentTimeMillis());
-			TimeSeries series = new TimeSeries(
+			ArrayDataset.Series series = new ArrayDataset.Series(
 					String.format("%s (%s, today=%.1f)", "Fit", slopeToWeekly(fit), Math.exp(fit.predict(today))));
-			series.add(CalendarUtils.dayToDay(startDay), Math.exp(fit.predict(startDay)));
-			series.add(CalendarUtils.dayToDay(today), Math.exp(fit.predict(today)));
+			series.addDay(startDay, Math.exp(fit.predict(startDay)));
+			series.addDay(today, Math.exp(fit.predict(today)));
 			return series;
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -232,7 +243,7 @@ public abstract class Abstract extends DailyTracker {
 			ValueMarker marker = new ValueMarker(time);
 			marker.setPaint(inflection.peak ? Color.red : Color.green);
 			if (inflection.peak) {
-				double val = entries.get(inflection.day).getSewage();
+				double val = getSewage(inflection.day);
 				marker.setLabel(String.format("%s %.1f", CalendarUtils.dayToDate(inflection.day), val));
 			}
 			marker.setStroke(Charts.stroke);
@@ -253,42 +264,159 @@ public abstract class Abstract extends DailyTracker {
 	}
 
 	public Double getSewageNormalized(int day) {
-		DaySewage entry;
+		double s;
 		double n;
 		synchronized (this) {
-			entry = entries.get(day);
+			s = getSewage(day);
 			n = getNormalizer();
 		}
-		if (entry == null) {
+		if (Double.isNaN(s)) {
 			return null;
 		}
-		return entry.getSewage() * n;
+		return s * n;
+	}
+
+	private int index(int day) {
+		int i = day - dayOffset;
+		return i >= 0 && i < sewageTot.length ? i : -1;
+	}
+
+	/*
+	 * Makes sure the arrays cover the day, growing them with room to spare.
+	 */
+	private int ensureDay(int day) {
+		int i = index(day);
+		if (i >= 0) {
+			return i;
+		}
+		int first = day, last = day;
+		if (sewageTot.length > 0) {
+			first = Math.min(first, dayOffset);
+			last = Math.max(last, dayOffset + sewageTot.length - 1);
+			int spare = Math.max((last - first + 1) / 2, 16);
+			if (first < dayOffset) {
+				first -= spare;
+			} else {
+				last += spare;
+			}
+		}
+		int length = last - first + 1, shift = sewageTot.length == 0 ? 0 : dayOffset - first;
+		double[] newSewage = new double[length], newEffPop = new double[length], newRealPop = new double[length];
+		Arrays.fill(newSewage, Double.NaN);
+		System.arraycopy(sewageTot, 0, newSewage, shift, sewageTot.length);
+		System.arraycopy(effPop, 0, newEffPop, shift, effPop.length);
+		System.arraycopy(realPop, 0, newRealPop, shift, realPop.length);
+		sewageTot = newSewage;
+		effPop = newEffPop;
+		realPop = newRealPop;
+		dayOffset = first;
+		return day - dayOffset;
+	}
+
+	private double sewageAt(int i) {
+		double s = sewageTot[i];
+		if (!weighted || Double.isNaN(s)) {
+			return s;
+		}
+		if (effPop[i] == 0.0) {
+			return 1;
+		}
+		return s / effPop[i];
 	}
 
 	public void addEntry(int day, double value) {
-		DaySewage entry = new DaySewage(value);
 		synchronized (this) {
-			entries.put(day, entry);
+			int i = ensureDay(day);
+			sewageTot[i] = value;
 		}
 		includeDay(day);
 	}
 
-	public synchronized DaySewage getOrCreateMultiEntry(int day) {
-		DaySewage ds = getEntry(day);
-		if (ds == null) {
-			ds = new DaySewage();
-			entries.put(day, ds);
-			includeDay(day);
+	/**
+	 * Adds a run of days, starting at firstDay, into this one's weighted
+	 * totals. A NaN sewage means that day isn't included.
+	 * 
+	 * @param sewage
+	 *            Each day's sewage times its effective pop.
+	 * @return The highest real pop of any of the days, after adding.
+	 */
+	protected double addWeightedDays(int firstDay, double[] sewage, double[] ePop, double[] dayPop) {
+		double highestPop = 0;
+		int first = Integer.MAX_VALUE, last = Integer.MIN_VALUE;
+		synchronized (this) {
+			weighted = true;
+			for (int k = 0; k < sewage.length; k++) {
+				if (Double.isNaN(sewage[k])) {
+					continue;
+				}
+				int day = firstDay + k;
+				int i = ensureDay(day);
+				if (Double.isNaN(sewageTot[i])) {
+					sewageTot[i] = 0;
+				}
+				sewageTot[i] += sewage[k];
+				effPop[i] += ePop[k];
+				realPop[i] += dayPop[k];
+				highestPop = Math.max(highestPop, realPop[i]);
+				first = Math.min(first, day);
+				last = Math.max(last, day);
+			}
+		}
+		if (first <= last) {
+			includeDay(first);
+			includeDay(last);
+		}
+		return highestPop;
+	}
+
+	public synchronized boolean hasEntry(int day) {
+		return index(day) >= 0 && !Double.isNaN(sewageTot[index(day)]);
+	}
+
+	/**
+	 * @return The day's sewage, or NaN if there isn't any.
+	 */
+	public synchronized double getSewage(int day) {
+		int i = index(day);
+		return i < 0 ? Double.NaN : sewageAt(i);
+	}
+
+	/**
+	 * @return The day's total population, or null if there isn't one.
+	 */
+	public synchronized Double getPop(int day) {
+		int i = index(day);
+		if (!weighted || i < 0 || Double.isNaN(sewageTot[i])) {
+			return null;
 		}
-		return ds;
+		return realPop[i];
 	}
 
-	public synchronized DaySewage getEntry(int day) {
-		return entries.get(day);
+	/**
+	 * @return Each day's sewage from first through last, NaN where there
+	 *         isn't any.
+	 */
+	public synchronized double[] getSewageDays(int first, int last) {
+		double[] days = new double[Math.max(last - first + 1, 0)];
+		for (int k = 0; k < days.length; k++) {
+			int i = index(first + k);
+			days[k] = i < 0 ? Double.NaN : sewageAt(i);
+		}
+		return days;
 	}
 
 	public synchronized void clear() {
-		entries.clear();
+		Arrays.fill(sewageTot, Double.NaN);
+		Arrays.fill(effPop, 0);
+		Arrays.fill(realPop, 0);
+	}
+
+	public synchronized boolean isDirty() {
+		return dirty;
+	}
+
+	public synchronized void setDirty(boolean dirty) {
+		this.dirty = dirty;
 	}
 
 	public synchronized Integer getPopulation() {
@@ -302,20 +430,24 @@ public abstract class Abstract extends DailyTracker {
 	public synchronized int getNextZero(int startDay) {
 		int lastDay = getLastDay();
 		for (int day = startDay; day <= lastDay; day++) {
-			DaySewage ds = entries.get(day);
-			if (ds == null || ds.getSewage() <= 0) {
+			int i = index(day);
+			if (i < 0 || !(sewageAt(i) > 0)) {
 				return day;
 			}
 		}
 		return lastDay + 1;
 	}
 
-	public double getTotalSewage(int first, int last) {
+	public synchronized double getTotalSewage(int first, int last) {
 		double totalSewage = 0.0;
-		for (int day = first; day <= last; day++) {
-			DaySewage ds = getEntry(day);
-			if (ds != null) {
-				totalSewage += ds.getSewage();
+		if (first > last) {
+			return 0.0;
+		}
+		int from = Math.max(first - dayOffset, 0), to = Math.min(last - dayOffset, sewageTot.length - 1);
+		for (int i = from; i <= to; i++) {
+			double s = sewageAt(i);
+			if (!Double.isNaN(s)) {
+				totalSewage += s;
 			}
 		}
 		return totalSewage;
@@ -325,18 +457,19 @@ public abstract class Abstract extends DailyTracker {
 		return getTotalSewage(getFirstDay(), getLastDay());
 	}
 
-	public Double getHighestSewage(int first, int last) {
-		Double highestSewage = null;
-		for (int day = first; day <= last; day++) {
-			DaySewage ds = getEntry(day);
-			if (ds != null) {
-				double s = ds.getSewage();
-				if (highestSewage == null || s > highestSewage) {
-					highestSewage = s;
-				}
+	public synchronized Double getHighestSewage(int first, int last) {
+		double highestSewage = Double.NaN;
+		if (first > last) {
+			return null;
+		}
+		int from = Math.max(first - dayOffset, 0), to = Math.min(last - dayOffset, sewageTot.length - 1);
+		for (int i = from; i <= to; i++) {
+			double s = sewageAt(i);
+			if (s > highestSewage || Double.isNaN(highestSewage)) {
+				highestSewage = s;
 			}
 		}
-		return highestSewage;
+		return Double.isNaN(highestSewage) ? null : highestSewage;
 	}
 
 }
@@ -1,5 +1,13 @@
 package sewage;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -42,6 +50,61 @@ public class All extends Multi {
 		plants.forEach(p -> includeSewage(p, 1.0));
 	}
 
+	/*
+	 * Anderson acceleration gets to the same tolerance in far fewer loops; the
+	 * plain loop is still there to compare against.
+	 */
+	private static final boolean ACCELERATE = true;
+	private static final int ACCELERATION_DEPTH = 5;
+
+	/*
+	 * Each run starts from the last run's normalizers, which a day's new data
+	 * barely changes.
+	 */
+	public static final String NORMALIZERS = System.getProperty("java.io.tmpdir") + "\\" + nwss.Nwss.FOLDER
+			+ "\\normalizers.dat";
+
+	private void loadNormalizers() {
+		File file = new File(NORMALIZERS);
+		if (!file.exists()) {
+			return;
+		}
+		HashMap<String, Double> saved = new HashMap<>();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String id = in.readUTF();
+				saved.put(id, in.readDouble());
+			}
+		} catch (IOException e) {
+			System.out.println("Failed to read normalizers; starting from scratch.");
+			return;
+		}
+		int warm = 0;
+		for (Plant p : plants) {
+			Double normalizer = saved.get(p.id);
+			if (normalizer != null && normalizer > 0 && !normalizer.isInfinite()) {
+				p.setNormalizer(normalizer);
+				warm++;
+			}
+		}
+		System.out.println("Warm start for " + warm + " of " + plants.size() + " plants.");
+	}
+
+	private void saveNormalizers() {
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(NORMALIZERS)))) {
+			out.writeInt(plants.size());
+			for (Plant p : plants) {
+				out.writeUTF(p.id);
+				out.writeDouble(p.getNormalizer());
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			new File(NORMALIZERS).delete();
+		}
+	}
+
 	/*
 	 * CDC numbers claim to be normalized, but the scales differ by up to 100.
 	 * This makes averaging nigh on impossible, big problem. So I just normalize
@@ -50,39 +113,21 @@ public class All extends Multi {
 	 * everywhere will have around the same amount of covid.
 	 */
 	private void normalize() {
-		HashMap<Plant, Double> oldNormalizers = new HashMap<>();
+		loadNormalizers();
 		long time = System.currentTimeMillis();
+		Normalization normalization = new Normalization(plants, peakStart);
 		int i;
-		for (i = 0; i < 2000; i++) {
-			oldNormalizers.clear();
-			plants.forEach(p -> oldNormalizers.put(p, p.getNormalizer()));
-
-			include();
-			plants.forEach(p -> p.buildNormalizer(this));
-
-			include();
-			double renorm = getHighestSewage(peakStart, getLastDay()) / SCALE_PEAK_RENORMALIZER;
-			plants.forEach(p -> p.renorm(renorm));
-
-			double normDiff = 0;
-			Plant normPlant = null;
-
-			for (Plant p : plants) {
-				double d = Math.abs(Math.log(p.getNormalizer() / oldNormalizers.get(p)));
-				if (d > normDiff) {
-					normDiff = d;
-					normPlant = p;
-				}
-			}
-
-			if (normDiff < 1E-9 || normPlant == null) {
-				break;
-			}
+		if (ACCELERATE) {
+			i = normalization.iterateAccelerated(2000, 1E-9, ACCELERATION_DEPTH);
+		} else {
+			i = normalization.iterate(2000, 1E-9);
 		}
+		normalization.apply();
 
 		time = System.currentTimeMillis() - time;
 
 		System.out.println("Looped normalization " + i + " times in " + time + " ms.");
+		saveNormalizers();
 	}
 
 	public void build(Collection<Plant> thePlants) {
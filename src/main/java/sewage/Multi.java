@@ -1,8 +1,8 @@
 package sewage;
 
 import java.util.ArrayList;
-
-import nwss.DaySewage;
+import java.util.Arrays;
+import java.util.Collection;
 
 public abstract class Multi extends Abstract {
 
@@ -33,52 +33,121 @@ public abstract class Multi extends Abstract {
 		if (getTotalSewage() <= 0) {
 			return;
 		}
-		if (getEntry(getFirstDay()).getSewage() > All.SCALE_PEAK_RENORMALIZER) {
-			while (getEntry(getFirstDay()).getSewage() > getEntry(getFirstDay() + 1).getSewage()) {
+		if (getSewage(getFirstDay()) > All.SCALE_PEAK_RENORMALIZER) {
+			while (getSewage(getFirstDay()) > getSewage(getFirstDay() + 1)) {
 				bumpFirstDay();
 			}
 		}
 	}
 
-	public void includeSewage(Plant sewage, double popMultiplier) {
+	/*
+	 * A run of days, weighted the way includeSewage adds them in: sewage is
+	 * each day's normalized sewage times its effective pop, NaN where there
+	 * isn't any.
+	 */
+	static class WeightedDays {
+		final int firstDay;
+		final double[] sewage, ePop, dayPop;
+
+		WeightedDays(int firstDay, int lastDay) {
+			this.firstDay = firstDay;
+			int length = Math.max(lastDay - firstDay + 1, 0);
+			sewage = new double[length];
+			ePop = new double[length];
+			dayPop = new double[length];
+			Arrays.fill(sewage, Double.NaN);
+		}
+
+		int getLastDay() {
+			return firstDay + sewage.length - 1;
+		}
+
+		/*
+		 * Sums other's days, which have to be within these, into these.
+		 */
+		void add(WeightedDays other, double popMultiplier) {
+			int offset = other.firstDay - firstDay;
+			for (int k = 0; k < other.sewage.length; k++) {
+				double s = other.sewage[k];
+				if (Double.isNaN(s)) {
+					continue;
+				}
+				int i = offset + k;
+				sewage[i] = (Double.isNaN(sewage[i]) ? 0 : sewage[i]) + s * popMultiplier;
+				ePop[i] += other.ePop[k] * popMultiplier;
+				dayPop[i] += other.dayPop[k] * popMultiplier;
+			}
+		}
+	}
+
+	/*
+	 * The plant's days as includeSewage would add them, or null if it
+	 * wouldn't.
+	 */
+	static WeightedDays weigh(Plant sewage, double popMultiplier) {
 		if (sewage.numDays() <= 1) {
-			return;
+			return null;
 		}
 		Integer pop = sewage.getPopulation();
 		if (pop == null) {
 			// new Exception("Uhhh no pop on " + sewage.id).printStackTrace();
-			return;
-		}
-		synchronized (this) {
-			numPlants++;
+			return null;
 		}
 		int sFirstDay = sewage.getFirstDay(), sLastDay = sewage.getLastDay();
-		int lastZero = sFirstDay - 1, nextZero = sewage.getNextZero(sFirstDay);
+		WeightedDays weighted = new WeightedDays(sFirstDay, sLastDay);
+		double[] days = sewage.getSewageDays(sFirstDay, sLastDay);
+		int lastZero = sFirstDay - 1, nextZero = nextZero(days, sFirstDay, sFirstDay);
 		double norm = sewage.getNormalizer();
 		for (int day = sFirstDay; day <= sLastDay; day++) {
-			DaySewage ds1 = sewage.getEntry(day);
-			if (ds1 == null) {
+			int k = day - sFirstDay;
+			if (Double.isNaN(days[k])) {
 				lastZero = day;
 				continue;
 			}
 
-			if (ds1.getSewage() == 0.0) {
-				// lastZero = day;
-			}
-			DaySewage ds2 = getOrCreateMultiEntry(day);
-
 			if (day > nextZero) {
-				nextZero = sewage.getNextZero(day);
+				nextZero = nextZero(days, sFirstDay, day);
 			}
 			double startMultiplier = Math.min(Math.pow((day - lastZero) / 182.0, 2.0), 1.0);
 			double endMultiplier = Math.min(Math.pow((nextZero - day) / 14.0, 2.0), 1.0);
-			ds2.addDay(ds1, norm, pop * popMultiplier, startMultiplier * endMultiplier);
+			weighted.dayPop[k] = pop * popMultiplier;
+			weighted.ePop[k] = weighted.dayPop[k] * (startMultiplier * endMultiplier);
+			weighted.sewage[k] = weighted.ePop[k] * (days[k] * norm);
+		}
+		return weighted;
+	}
+
+	public void includeSewage(Plant sewage, double popMultiplier) {
+		WeightedDays days = weigh(sewage, popMultiplier);
+		if (days != null) {
+			include(days, 1);
+		}
+	}
+
+	/*
+	 * Adds in days that are already weighted, summed over some number of
+	 * plants. It's one lock for the lot, not one per day.
+	 */
+	void include(WeightedDays days, int plants) {
+		synchronized (this) {
+			numPlants += plants;
+		}
+		int highestPop = (int) Math.round(addWeightedDays(days.firstDay, days.sewage, days.ePop, days.dayPop));
+		synchronized (this) {
+			setPopulation(Math.max(getPopulation(), highestPop));
+		}
+	}
 
-			int dayPop = (int) Math.round(ds2.getPop());
-			synchronized (this) {
-				setPopulation(Math.max(getPopulation(), dayPop));
+	/*
+	 * Same as getNextZero, on a plant's days starting at firstDay.
+	 */
+	static int nextZero(double[] days, int firstDay, int startDay) {
+		for (int day = startDay; day < firstDay + days.length; day++) {
+			if (!(days[day - firstDay] > 0)) {
+				return day;
 			}
 		}
+		return firstDay + days.length;
 	}
 
 	public void addChild(Abstract child) {
@@ -88,6 +157,16 @@ public abstract class Multi extends Abstract {
 		}
 	}
 
+	/**
+	 * Adds all the children at once, so they're only sorted once.
+	 */
+	public void addChildren(Collection<? extends Abstract> newChildren) {
+		synchronized (children) {
+			children.addAll(newChildren);
+			children.sort((c1, c2) -> -Integer.compare(c1.getPopulation(), c2.getPopulation()));
+		}
+	}
+
 	public ArrayList<Abstract> getChildren(Integer maxChildren) {
 		if (maxChildren == null) {
 			return new ArrayList<>(children);
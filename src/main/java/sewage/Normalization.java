@@ -0,0 +1,441 @@
+package sewage;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The All.normalize loop, done on arrays instead of rebuilding the nationwide
+ * numbers each time.
+ * 
+ * Everything that doesn't depend on the normalizers is worked out once up
+ * front: each plant's per-day weighting (population times the ramps around
+ * its gaps) times its sewage, the total weighting on each day, and which days
+ * go into each plant's own normalizer. After that the nationwide average is
+ * just a weighted sum of the plants' rows, and each plant's new normalizer a
+ * masked sum of that average, so every pass of the loop is a couple of tight
+ * loops over plain double[]s.
+ * 
+ * The rows are dense, one per plant, each covering just that plant's days (so
+ * it's a plants by days matrix without all the zeros around the edges).
+ * 
+ * @author jdorje@gmail.com
+ */
+class Normalization {
+
+	private final Plant[] plants;
+	private final int firstDay, numDays;
+	private final boolean[] contributes;
+
+	/*
+	 * Row p starts at rowStart[p] and has rowLength[p] entries, for the days
+	 * starting at rowFirst[p].
+	 */
+	private final int[] rowStart, rowFirst, rowLength;
+	private final double[] weighted; // weighting * raw sewage
+	private final double[] mask; // 1 if the day goes into the plant's normalizer
+
+	private final double[] effPop; // per day, the total weighting
+	private final boolean[] hasDay;
+	private final double[] ours; // per plant, its raw sewage over the masked days
+	private final int peakFirst, peakLast;
+
+	final double[] normalizers;
+	private final double[] sums, sewage;
+
+	Normalization(List<Plant> plantList, int peakStart) {
+		plants = plantList.toArray(new Plant[0]);
+		int numPlants = plants.length;
+		contributes = new boolean[numPlants];
+		normalizers = new double[numPlants];
+		ours = new double[numPlants];
+
+		// the days the nationwide numbers will have, same as Multi.includeSewage
+		int first = Integer.MAX_VALUE, last = Integer.MIN_VALUE;
+		for (int p = 0; p < numPlants; p++) {
+			Plant plant = plants[p];
+			normalizers[p] = plant.getNormalizer();
+			contributes[p] = plant.numDays() > 1 && plant.getPopulation() != null;
+			if (contributes[p]) {
+				first = Math.min(first, plant.getFirstDay());
+				last = Math.max(last, plant.getLastDay());
+			}
+		}
+		firstDay = first;
+		numDays = Math.max(last - first + 1, 0);
+		effPop = new double[numDays];
+		hasDay = new boolean[numDays];
+		sums = new double[numDays];
+		sewage = new double[numDays];
+		peakFirst = Math.max(peakStart - firstDay, 0);
+		peakLast = numDays - 1;
+
+		rowStart = new int[numPlants];
+		rowFirst = new int[numPlants];
+		rowLength = new int[numPlants];
+		int size = 0;
+		for (int p = 0; p < numPlants; p++) {
+			int from = Math.max(plants[p].getFirstDay(), firstDay);
+			int to = Math.min(plants[p].getLastDay(), firstDay + numDays - 1);
+			rowStart[p] = size;
+			rowFirst[p] = from;
+			rowLength[p] = plants[p].hasDays() ? Math.max(to - from + 1, 0) : 0;
+			size += rowLength[p];
+		}
+		weighted = new double[size];
+		mask = new double[size];
+
+		for (int p = 0; p < numPlants; p++) {
+			if (contributes[p]) {
+				buildWeighting(p);
+			}
+		}
+		for (int p = 0; p < numPlants; p++) {
+			buildMask(p);
+		}
+	}
+
+	/*
+	 * The weighting from Multi.includeSewage, which only depends on where the
+	 * plant's gaps and zeros are.
+	 */
+	private void buildWeighting(int p) {
+		Plant plant = plants[p];
+		double pop = plant.getPopulation();
+		int sFirstDay = plant.getFirstDay(), sLastDay = plant.getLastDay();
+		double[] days = plant.getSewageDays(sFirstDay, sLastDay);
+		int lastZero = sFirstDay - 1, nextZero = Multi.nextZero(days, sFirstDay, sFirstDay);
+		for (int day = sFirstDay; day <= sLastDay; day++) {
+			double s = days[day - sFirstDay];
+			if (Double.isNaN(s)) {
+				lastZero = day;
+				continue;
+			}
+			if (day > nextZero) {
+				nextZero = Multi.nextZero(days, sFirstDay, day);
+			}
+			double startMultiplier = Math.min(Math.pow((day - lastZero) / 182.0, 2.0), 1.0);
+			double endMultiplier = Math.min(Math.pow((nextZero - day) / 14.0, 2.0), 1.0);
+			double ePop = pop * (startMultiplier * endMultiplier);
+			weighted[rowStart[p] + day - rowFirst[p]] = ePop * s;
+			effPop[day - firstDay] += ePop;
+			hasDay[day - firstDay] = true;
+		}
+	}
+
+	/*
+	 * The days Plant.buildNormalizer would use: ones both the plant and the
+	 * nationwide numbers have, not counting the plant's last day.
+	 */
+	private void buildMask(int p) {
+		Plant plant = plants[p];
+		int lastDay = plant.getLastDay();
+		double[] days = plant.getSewageDays(rowFirst[p], rowFirst[p] + rowLength[p] - 1);
+		for (int k = 0; k < rowLength[p]; k++) {
+			int day = rowFirst[p] + k;
+			if (day >= lastDay || Double.isNaN(days[k]) || !hasDay[day - firstDay]) {
+				continue;
+			}
+			mask[rowStart[p] + k] = 1;
+			ours[p] += days[k];
+		}
+	}
+
+	/*
+	 * The nationwide average for each day, given the normalizers.
+	 */
+	private void include() {
+		Arrays.fill(sums, 0);
+		for (int p = 0; p < plants.length; p++) {
+			if (!contributes[p]) {
+				continue;
+			}
+			double norm = normalizers[p];
+			int start = rowStart[p], offset = rowFirst[p] - firstDay, length = rowLength[p];
+			for (int k = 0; k < length; k++) {
+				sums[offset + k] += norm * weighted[start + k];
+			}
+		}
+		for (int d = 0; d < numDays; d++) {
+			sewage[d] = effPop[d] == 0.0 ? 1 : sums[d] / effPop[d];
+		}
+	}
+
+	private void buildNormalizers() {
+		for (int p = 0; p < plants.length; p++) {
+			int start = rowStart[p], offset = rowFirst[p] - firstDay, length = rowLength[p];
+			double base = 0;
+			for (int k = 0; k < length; k++) {
+				base += mask[start + k] * sewage[offset + k];
+			}
+			if (base == 0 || ours[p] == 0) {
+				continue;
+			}
+			normalizers[p] = base / ours[p];
+			if (normalizers[p] < 0 || base < 0 || ours[p] < 0) {
+				new Exception("Uh oh big fail.").printStackTrace();
+			}
+		}
+	}
+
+	private double getHighestSewage() {
+		double highest = Double.NEGATIVE_INFINITY;
+		for (int d = peakFirst; d <= peakLast; d++) {
+			if (hasDay[d] && sewage[d] > highest) {
+				highest = sewage[d];
+			}
+		}
+		return highest;
+	}
+
+	/*
+	 * One pass of the loop: new normalizers from the average the current ones
+	 * give, then all scaled so the peak is SCALE_PEAK_RENORMALIZER. Leaves
+	 * sewage as the average the new ones give.
+	 * 
+	 * A plant with no days to normalize against (one day of data, say) just
+	 * keeps its normalizer. It used to get scaled with the rest, but the scale
+	 * settles on a factor that isn't 1, so those plants' normalizers shrank
+	 * every loop forever and the loop never converged.
+	 */
+	private void step() {
+		buildNormalizers();
+
+		include();
+		double renorm = getHighestSewage() / All.SCALE_PEAK_RENORMALIZER;
+		for (int p = 0; p < plants.length; p++) {
+			if (ours[p] != 0) {
+				normalizers[p] /= renorm;
+			}
+		}
+		// the average is linear in the normalizers, except for unweighted days
+		for (int d = 0; d < numDays; d++) {
+			sewage[d] = effPop[d] == 0.0 ? 1 : sewage[d] / renorm;
+		}
+	}
+
+	/*
+	 * The residual is the biggest change in any normalizer, in log terms. Only
+	 * the first few and then every power of two are printed.
+	 */
+	private static void logResidual(int loop, double residual) {
+		if ((loop & (loop - 1)) == 0) {
+			System.out.println(String.format("\tLoop %d: residual %.3g", loop, residual));
+		}
+	}
+
+	/**
+	 * Runs the loop until no normalizer changes by more than the tolerance (in
+	 * log terms), or maxLoops.
+	 * 
+	 * @return The number of loops.
+	 */
+	int iterate(int maxLoops, double tolerance) {
+		if (numDays == 0) {
+			return 0;
+		}
+		double[] oldNormalizers = new double[plants.length];
+		include();
+		int i;
+		for (i = 0; i < maxLoops; i++) {
+			System.arraycopy(normalizers, 0, oldNormalizers, 0, plants.length);
+
+			step();
+
+			double normDiff = 0;
+			for (int p = 0; p < plants.length; p++) {
+				if (ours[p] == 0) {
+					continue;
+				}
+				double d = Math.abs(Math.log(normalizers[p] / oldNormalizers[p]));
+				if (d > normDiff) {
+					normDiff = d;
+				}
+			}
+			logResidual(i, normDiff);
+
+			if (normDiff < tolerance) {
+				break;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * The same as iterate, but with Anderson acceleration: rather than just
+	 * taking the next pass's normalizers, each loop takes the mix of the last
+	 * few passes' that best cancels out their changes. The plain loop creeps
+	 * toward the answer, since each plant's normalizer only moves part of the
+	 * way per pass; this gets to the same tolerance in a small fraction of
+	 * the loops.
+	 * 
+	 * It works on the logs of the normalizers, which is what the tolerance is
+	 * on. If a mixed step makes things much worse the history is thrown out
+	 * and it goes back to plain passes until it's built up again. If there's
+	 * no log to take, it finishes with the plain loop.
+	 * 
+	 * @param depth
+	 *            How many previous passes to mix.
+	 * @return The number of loops.
+	 */
+	int iterateAccelerated(int maxLoops, double tolerance, int depth) {
+		if (numDays == 0) {
+			return 0;
+		}
+		int numPlants = plants.length;
+		double[] x = new double[numPlants], g = new double[numPlants], f = new double[numPlants];
+		double[] gOld = new double[numPlants], fOld = new double[numPlants];
+		// ring buffers of the differences between successive passes
+		double[][] dG = new double[depth][numPlants], dF = new double[depth][numPlants];
+		int stored = 0, next = 0;
+		double lastResidual = Double.MAX_VALUE;
+
+		for (int p = 0; p < numPlants; p++) {
+			x[p] = Math.log(normalizers[p]);
+		}
+		include();
+		int i;
+		for (i = 0; i < maxLoops; i++) {
+			step();
+
+			double residual = 0;
+			boolean finite = true;
+			for (int p = 0; p < numPlants; p++) {
+				g[p] = Math.log(normalizers[p]);
+				f[p] = g[p] - x[p];
+				double d = Math.abs(f[p]);
+				if (Double.isNaN(d) || Double.isInfinite(d)) {
+					finite = false;
+				} else if (d > residual) {
+					residual = d;
+				}
+			}
+			logResidual(i, finite ? residual : Double.NaN);
+
+			if (!finite) {
+				/*
+				 * Some normalizer went to zero or below (from bad data, as it
+				 * can in the plain loop), so there's no log to mix. The plain
+				 * loop carries on from this pass just as it would have.
+				 */
+				System.out.println("Can't accelerate normalization; going on with the plain loop.");
+				return i + 1 + iterate(maxLoops - i - 1, tolerance);
+			}
+
+			if (residual < tolerance) {
+				// normalizers are the last pass's, same as the plain loop
+				break;
+			}
+
+			if (residual > 2 * lastResidual) {
+				// a bad mix; go back to the last good pass and start over
+				stored = 0;
+				lastResidual = Double.MAX_VALUE;
+				System.arraycopy(gOld, 0, x, 0, numPlants);
+				for (int p = 0; p < numPlants; p++) {
+					normalizers[p] = Math.exp(x[p]);
+				}
+				include();
+				continue;
+			}
+			if (i > 0) {
+				for (int p = 0; p < numPlants; p++) {
+					dG[next][p] = g[p] - gOld[p];
+					dF[next][p] = f[p] - fOld[p];
+				}
+				next = (next + 1) % depth;
+				stored = Math.min(stored + 1, depth);
+			}
+			lastResidual = residual;
+			System.arraycopy(g, 0, gOld, 0, numPlants);
+			System.arraycopy(f, 0, fOld, 0, numPlants);
+
+			double[] gamma = stored == 0 ? null : mix(dF, stored, f);
+			if (gamma == null) {
+				stored = 0;
+				System.arraycopy(g, 0, x, 0, numPlants);
+			} else {
+				for (int p = 0; p < numPlants; p++) {
+					double xp = g[p];
+					for (int j = 0; j < stored; j++) {
+						xp -= gamma[j] * dG[j][p];
+					}
+					x[p] = xp;
+				}
+			}
+
+			for (int p = 0; p < numPlants; p++) {
+				normalizers[p] = Math.exp(x[p]);
+			}
+			include();
+		}
+		return i;
+	}
+
+	/*
+	 * Least squares for the gamma minimizing |f - dF * gamma|, through the
+	 * (slightly damped) normal equations, which are only stored x stored.
+	 * Null if they're singular.
+	 */
+	private static double[] mix(double[][] dF, int stored, double[] f) {
+		double[][] a = new double[stored][stored + 1];
+		double trace = 0;
+		for (int j = 0; j < stored; j++) {
+			for (int k = 0; k <= j; k++) {
+				double dot = 0;
+				for (int p = 0; p < f.length; p++) {
+					dot += dF[j][p] * dF[k][p];
+				}
+				a[j][k] = a[k][j] = dot;
+			}
+			trace += a[j][j];
+			double dot = 0;
+			for (int p = 0; p < f.length; p++) {
+				dot += dF[j][p] * f[p];
+			}
+			a[j][stored] = dot;
+		}
+		for (int j = 0; j < stored; j++) {
+			a[j][j] += 1E-10 * trace;
+		}
+
+		// Gaussian elimination with partial pivoting
+		for (int col = 0; col < stored; col++) {
+			int pivot = col;
+			for (int row = col + 1; row < stored; row++) {
+				if (Math.abs(a[row][col]) > Math.abs(a[pivot][col])) {
+					pivot = row;
+				}
+			}
+			if (!(Math.abs(a[pivot][col]) > 1E-300)) {
+				return null;
+			}
+			double[] swap = a[col];
+			a[col] = a[pivot];
+			a[pivot] = swap;
+			for (int row = col + 1; row < stored; row++) {
+				double factor = a[row][col] / a[col][col];
+				for (int k = col; k <= stored; k++) {
+					a[row][k] -= factor * a[col][k];
+				}
+			}
+		}
+		double[] gamma = new double[stored];
+		for (int row = stored - 1; row >= 0; row--) {
+			double v = a[row][stored];
+			for (int k = row + 1; k < stored; k++) {
+				v -= a[row][k] * gamma[k];
+			}
+			gamma[row] = v / a[row][row];
+		}
+		return gamma;
+	}
+
+	/**
+	 * Gives each plant its normalizer.
+	 */
+	void apply() {
+		for (int p = 0; p < plants.length; p++) {
+			plants[p].setNormalizer(normalizers[p]);
+		}
+	}
+}
@@ -1,6 +1,6 @@
 package sewage;
 
-import nwss.DaySewage;
+import library.Fingerprint;
 
 public class Plant extends Abstract {
 
@@ -103,16 +103,34 @@ public class Plant extends Abstract {
 		return lon;
 	}
 
+	/**
+	 * @return A hash of everything read for this plant: its days and what's
+	 *         known about it.
+	 */
+	public synchronized long getDataFingerprint() {
+		int firstDay = getFirstDay(), lastDay = getLastDay();
+		long hash = Fingerprint.mix(Fingerprint.START, firstDay);
+		for (double s : getSewageDays(firstDay, lastDay)) {
+			hash = Fingerprint.mix(hash, s);
+		}
+		hash = Fingerprint.mix(hash, getPopulation());
+		hash = Fingerprint.mix(hash, plantId);
+		hash = Fingerprint.mix(hash, state);
+		hash = Fingerprint.mix(hash, counties);
+		hash = Fingerprint.mix(hash, smoothing);
+		return hash;
+	}
+
 	public void buildNormalizer(All baseline) {
 		double ours = 0, base = 0;
 		int firstDay = getFirstDay(), lastDay = getLastDay();
 		for (int day = firstDay; day < lastDay; day++) {
-			DaySewage ds1 = getEntry(day), ds2 = baseline.getEntry(day);
-			if (ds1 == null || ds2 == null) {
+			double s1 = getSewage(day), s2 = baseline.getSewage(day);
+			if (Double.isNaN(s1) || Double.isNaN(s2)) {
 				continue;
 			}
-			ours += ds1.getSewage();
-			base += ds2.getSewage();
+			ours += s1;
+			base += s2;
 		}
 
 		if (base == 0 || ours == 0) {
@@ -131,6 +149,10 @@ public class Plant extends Abstract {
 		return normalizer;
 	}
 
+	synchronized void setNormalizer(double normalizer) {
+		this.normalizer = normalizer;
+	}
+
 	public synchronized void renorm(double factor) {
 		normalizer /= factor;
 	}
@@ -0,0 +1,169 @@
+package sewage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import covid.CalendarUtils;
+import library.Fingerprint;
+
+/**
+ * Works out which plants and places have changed since the last time their
+ * charts were built, so only those need building again.
+ * 
+ * A plant is dirty if anything read for it changed (its days, population,
+ * counties, and so on) or its normalizer moved enough to show, in the chart
+ * or in its legend. A place is dirty if any plant that goes into it is, or the
+ * set of plants and children it's made from changed. That way dirtiness goes
+ * all the way up: plant to county to state to region to nationwide.
+ * 
+ * The charts run through today, so on a new day everything is dirty; the
+ * savings are for the CDC data updating again later the same day. Anything
+ * new, or anything when there's no saved state, is dirty too. Delete the file
+ * to rebuild everything.
+ * 
+ * A dirty plant or place's new state is only kept once its charts are
+ * written, so if any of them fail it's still dirty next time.
+ * 
+ * @author jdorje@gmail.com
+ */
+public class Refresh {
+
+	private static final int VERSION = 2;
+
+	/*
+	 * Normalizers closer than this are drawn the same, to within a pixel. The
+	 * plant's legend shows its normalizer too, so that's part of the
+	 * fingerprint: a move that changes the legend always makes it dirty.
+	 */
+	private static final double NORMALIZER_TOLERANCE = 1E-3;
+
+	private static class State {
+		final long fingerprint;
+		final double normalizer;
+
+		State(long fingerprint, double normalizer) {
+			this.fingerprint = fingerprint;
+			this.normalizer = normalizer;
+		}
+	}
+
+	private final String fileName;
+	private final int today = CalendarUtils.timeToDay(System.currentTimeMillis());
+	private final HashMap<String, State> previous = new HashMap<>();
+	private final HashMap<String, State> current = new HashMap<>();
+	// dirty, and waiting for the charts to be written
+	private final HashMap<String, State> pending = new HashMap<>();
+	private int checked = 0, dirty = 0;
+
+	public Refresh(String fileName) {
+		this.fileName = fileName;
+		load();
+	}
+
+	private void load() {
+		File file = new File(fileName);
+		if (!file.exists()) {
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != VERSION || in.readInt() != today) {
+				return;
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String key = in.readUTF();
+				previous.put(key, new State(in.readLong(), in.readDouble()));
+			}
+		} catch (IOException e) {
+			System.out.println("Failed to read sewage refresh state; all sewage charts will be rebuilt.");
+			previous.clear();
+		}
+	}
+
+	private synchronized boolean check(Abstract sewage, State state, boolean dirtyAnyway) {
+		String key = sewage.getChartFilename();
+		State old = previous.get(key);
+		boolean isDirty = dirtyAnyway || old == null || old.fingerprint != state.fingerprint
+				|| !(Math.abs(Math.log(state.normalizer / old.normalizer)) < NORMALIZER_TOLERANCE);
+		// if it isn't redrawn, what's drawn is still the old one
+		if (isDirty) {
+			pending.put(key, state);
+		} else {
+			current.put(key, old);
+		}
+		sewage.setDirty(isDirty);
+		checked++;
+		if (isDirty) {
+			dirty++;
+		}
+		return isDirty;
+	}
+
+	/**
+	 * Marks the plant dirty or not. Its normalizer has to be final.
+	 */
+	public boolean checkPlant(Plant plant) {
+		long fingerprint = Fingerprint.mix(plant.getDataFingerprint(), plant.getTSName());
+		return check(plant, new State(fingerprint, plant.getNormalizer()), false);
+	}
+
+	/**
+	 * Marks a place dirty or not.
+	 * 
+	 * @param makeup
+	 *            A hash of what it's made from (which plants, how much of
+	 *            each, and its children).
+	 * @param anyDirty
+	 *            If anything it's made from is dirty.
+	 */
+	public boolean checkMulti(Multi multi, long makeup, boolean anyDirty) {
+		return check(multi, new State(makeup, 1.0), anyDirty);
+	}
+
+	/**
+	 * The charts for this dirty plant or place have all been written, so its
+	 * new state can be saved.
+	 */
+	public synchronized void built(Abstract sewage) {
+		String key = sewage.getChartFilename();
+		State state = pending.remove(key);
+		if (state != null) {
+			current.put(key, state);
+		}
+	}
+
+	public synchronized void report() {
+		System.out.println("Sewage refresh: " + dirty + " of " + checked + " changed"
+				+ (previous.isEmpty() ? " (no saved state)." : "."));
+	}
+
+	/**
+	 * Saves what was checked, for next time. Call this once the charts are
+	 * built. Anything still pending had a chart fail, so it's left out and
+	 * will be dirty next time.
+	 */
+	public synchronized void save() {
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(fileName)))) {
+			out.writeInt(VERSION);
+			out.writeInt(today);
+			out.writeInt(current.size());
+			for (Map.Entry<String, State> entry : current.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeLong(entry.getValue().fingerprint);
+				out.writeDouble(entry.getValue().normalizer);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			new File(fileName).delete();
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package sewage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import library.Fingerprint;
+import library.TaskGroup;
+
+/**
+ * Builds the sums for a whole hierarchy of Multis at once: every county,
+ * state, region, and so on that plants go into.
+ *
+ * Calling includeSewage for each plant and each place it goes into weighs the
+ * plant's days all over again every time, and takes turns on each Multi's
+ * lock, so it can only really run one plant at a time. Here the places and
+ * children are just noted down, then build() weighs each plant once and sums
+ * each Multi's plants in parallel. A Multi with a lot of plants is split into
+ * chunks, each summed into its own partial days, so the only time the Multi
+ * itself is locked is when a chunk's partial is added in.
+ *
+ * Children are added at the end, so each Multi's list is sorted once.
+ *
+ * @author jdorje@gmail.com
+ */
+public class Rollup {
+
+	private static final int CHUNK = 64;
+
+	private static class Member {
+		final int plant;
+		final double popMultiplier;
+
+		Member(int plant, double popMultiplier) {
+			this.plant = plant;
+			this.popMultiplier = popMultiplier;
+		}
+	}
+
+	private final HashMap<Plant, Integer> plantIndex = new HashMap<>();
+	private final ArrayList<Plant> plants = new ArrayList<>();
+	private final LinkedHashMap<Multi, ArrayList<Member>> members = new LinkedHashMap<>();
+	private final LinkedHashMap<Multi, ArrayList<Abstract>> children = new LinkedHashMap<>();
+	private final LinkedHashMap<Multi, ArrayList<Plant>> tracked = new LinkedHashMap<>();
+
+	/**
+	 * The plant will be included in the Multi, as with includeSewage.
+	 */
+	public synchronized void include(Multi multi, Plant plant, double popMultiplier) {
+		Integer index = plantIndex.get(plant);
+		if (index == null) {
+			index = plants.size();
+			plants.add(plant);
+			plantIndex.put(plant, index);
+		}
+		members.computeIfAbsent(multi, m -> new ArrayList<>()).add(new Member(index, popMultiplier));
+	}
+
+	/**
+	 * The child will be added to the Multi, as with addChild.
+	 */
+	public synchronized void addChild(Multi multi, Abstract child) {
+		children.computeIfAbsent(multi, m -> new ArrayList<>()).add(child);
+	}
+
+	public synchronized void build() {
+		// each plant's days are weighted once, however many places it goes
+		Multi.WeightedDays[] weighted = new Multi.WeightedDays[plants.size()];
+		TaskGroup<Void> weigh = new TaskGroup<>("Weigh plants", true);
+		for (int start = 0; start < plants.size(); start += CHUNK) {
+			int from = start, to = Math.min(start + CHUNK, plants.size());
+			weigh.execute(() -> {
+				for (int p = from; p < to; p++) {
+					weighted[p] = Multi.weigh(plants.get(p), 1.0);
+				}
+			});
+		}
+		weigh.complete();
+
+		TaskGroup<Void> sum = new TaskGroup<>("Roll up", true);
+		members.forEach((multi, list) -> {
+			for (int start = 0; start < list.size(); start += CHUNK) {
+				List<Member> chunk = list.subList(start, Math.min(start + CHUNK, list.size()));
+				sum.execute(() -> sum(multi, chunk, weighted));
+			}
+		});
+		sum.complete();
+		sum.report();
+
+		// populations are all final now, so the sort is right
+		children.forEach((multi, list) -> multi.addChildren(list));
+	}
+
+	/**
+	 * The plant's already in the Multi some other way, but its charts depend on
+	 * it, so it counts toward the Multi being dirty.
+	 */
+	public synchronized void track(Multi multi, Plant plant) {
+		tracked.computeIfAbsent(multi, m -> new ArrayList<>()).add(plant);
+	}
+
+	/**
+	 * Marks each Multi dirty or not, after the plants have been. A Multi is
+	 * dirty if any plant or child in it is, so children are done first.
+	 */
+	public synchronized void checkDirty(Refresh refresh) {
+		HashMap<Multi, Boolean> done = new HashMap<>();
+		members.keySet().forEach(multi -> checkDirty(refresh, multi, done));
+		tracked.keySet().forEach(multi -> checkDirty(refresh, multi, done));
+		children.keySet().forEach(multi -> checkDirty(refresh, multi, done));
+	}
+
+	private boolean checkDirty(Refresh refresh, Multi multi, HashMap<Multi, Boolean> done) {
+		Boolean isDirty = done.get(multi);
+		if (isDirty != null) {
+			return isDirty;
+		}
+		// what it's made of: which plants, how much of each, and its children
+		long makeup = 0;
+		boolean anyDirty = false;
+		for (Member member : members.getOrDefault(multi, new ArrayList<>())) {
+			Plant plant = plants.get(member.plant);
+			makeup = Fingerprint.mix(makeup, plant.getChartFilename());
+			makeup = Fingerprint.mix(makeup, member.popMultiplier);
+			anyDirty |= plant.isDirty();
+		}
+		for (Plant plant : tracked.getOrDefault(multi, new ArrayList<>())) {
+			makeup = Fingerprint.mix(makeup, plant.getChartFilename());
+			anyDirty |= plant.isDirty();
+		}
+		for (Abstract child : children.getOrDefault(multi, new ArrayList<>())) {
+			makeup = Fingerprint.mix(makeup, child.getChartFilename());
+			if (child instanceof Multi) {
+				anyDirty |= checkDirty(refresh, (Multi) child, done);
+			} else {
+				anyDirty |= child.isDirty();
+			}
+		}
+		isDirty = refresh.checkMulti(multi, makeup, anyDirty);
+		done.put(multi, isDirty);
+		return isDirty;
+	}
+
+	private static void sum(Multi multi, List<Member> chunk, Multi.WeightedDays[] weighted) {
+		int first = Integer.MAX_VALUE, last = Integer.MIN_VALUE, count = 0;
+		for (Member member : chunk) {
+			Multi.WeightedDays days = weighted[member.plant];
+			if (days != null) {
+				first = Math.min(first, days.firstDay);
+				last = Math.max(last, days.getLastDay());
+				count++;
+			}
+		}
+		if (count == 0) {
+			return;
+		}
+		Multi.WeightedDays partial = new Multi.WeightedDays(first, last);
+		for (Member member : chunk) {
+			Multi.WeightedDays days = weighted[member.plant];
+			if (days != null) {
+				partial.add(days, member.popMultiplier);
+			}
+		}
+		multi.include(partial, count);
+	}
+}
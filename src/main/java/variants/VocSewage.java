@@ -9,7 +9,6 @@ import org.apache.commons.math3.stat.regression.SimpleRegression;
 import org.jfree.data.time.TimeSeries;
 
 import covid.CalendarUtils;
-import nwss.DaySewage;
 import sewage.All;
 
 public class VocSewage {
@@ -188,13 +187,12 @@ public class VocSewage {
 		 * Continue to go backwards SO LONG AS it makes the slope lower.
 		 */
 		for (int day = lastInflection - 1; day >= getFirstDay(); day--) {
-			DaySewage entry;
-			entry = sewage.getEntry(day);
-			if (entry == null) {
+			double daySewage = sewage.getSewage(day);
+			if (Double.isNaN(daySewage)) {
 				continue;
 			}
 
-			double number = entry.getSewage();
+			double number = daySewage;
 			number *= sewage.getNormalizer();
 			number *= variant.getPrevalence(day);
 			if (number <= MINIMUM) {
@@ -218,13 +216,12 @@ public class VocSewage {
 			fitStartDay = findFitStartDay(variant);
 		}
 		for (int day = fitStartDay; day <= getLastDay(); day++) {
-			DaySewage entry;
-			entry = sewage.getEntry(day);
-			if (entry == null) {
+			double daySewage = sewage.getSewage(day);
+			if (Double.isNaN(daySewage)) {
 				continue;
 			}
 
-			double number = entry.getSewage();
+			double number = daySewage;
 			number *= sewage.getNormalizer();
 			number *= variant.getPrevalence(day);
 			if (number <= MINIMUM) {
@@ -432,15 +429,14 @@ public class VocSewage {
 			series.add(CalendarUtils.dayToDay(day), 100 * Math.exp(fit.predict(day)) / getCollectiveFit(day));
 		}
 		for (int day = Math.max(getFirstDay(), getFirstDay()); day <= getLastDay(); day++) {
-			DaySewage entry;
-			entry = sewage.getEntry(day);
-			if (entry == null) {
+			double daySewage = sewage.getSewage(day);
+			if (Double.isNaN(daySewage)) {
 				continue;
 			}
 
-			// Double pop = entry.getPop();
+			// Double pop = sewage.getPop(day);
 
-			double number = entry.getSewage();
+			double number = daySewage;
 			number *= sewage.getNormalizer();
 			number *= variant.getPrevalence(day);
 			if (number <= MINIMUM) {
@@ -448,7 +444,7 @@ public class VocSewage {
 				continue;
 			}
 
-			series.add(CalendarUtils.dayToDay(day), 100 * number / entry.getSewage());
+			series.add(CalendarUtils.dayToDay(day), 100 * number / daySewage);
 		}
 		if (fit != null) {
 			/* For relative we can go past the model last day */
@@ -466,13 +462,12 @@ public class VocSewage {
 			series.add(CalendarUtils.dayToDay(day), 100.0 * getCollectiveFit(strain, day) / getCollectiveFit(day));
 		}
 		for (int day = Math.max(getFirstDay(), getFirstDay()); day <= getLastDay(); day++) {
-			DaySewage entry;
-			entry = sewage.getEntry(day);
-			if (entry == null) {
+			double daySewage = sewage.getSewage(day);
+			if (Double.isNaN(daySewage)) {
 				continue;
 			}
 
-			// Double pop = entry.getPop();
+			// Double pop = sewage.getPop(day);
 
 			double number = getPrevalence(strain, day);
 			number *= 100.0;
@@ -520,15 +515,14 @@ public class VocSewage {
 			series.add(CalendarUtils.dayToDay(day), Math.exp(fit.predict(day)));
 		}
 		for (int day = Math.max(getFirstDay(), getFirstDay()); day <= getLastDay(); day++) {
-			DaySewage entry;
-			entry = sewage.getEntry(day);
-			if (entry == null) {
+			double daySewage = sewage.getSewage(day);
+			if (Double.isNaN(daySewage)) {
 				continue;
 			}
 
-			// Double pop = entry.getPop();
+			// Double pop = sewage.getPop(day);
 
-			double number = entry.getSewage();
+			double number = daySewage;
 			number *= sewage.getNormalizer();
 			number *= variant.getPrevalence(day);
 			if (number <= MINIMUM) {
@@ -571,18 +565,17 @@ public class VocSewage {
 			series.add(CalendarUtils.dayToDay(day), getCollectiveFit(strain, day));
 		}
 		for (int day = Math.max(getFirstDay(), getFirstDay()); day <= getLastDay(); day++) {
-			DaySewage entry;
-			entry = sewage.getEntry(day);
-			if (entry == null) {
+			double daySewage = sewage.getSewage(day);
+			if (Double.isNaN(daySewage)) {
 				continue;
 			}
 
-			// Double pop = entry.getPop();
+			// Double pop = sewage.getPop(day);
 
 			double number = getPrevalence(strain, day);
 
 			number *= sewage.getNormalizer();
-			number *= entry.getSewage();
+			number *= daySewage;
 			if (number <= MINIMUM) {
 				// fit data before or after will fill for it
 				continue;